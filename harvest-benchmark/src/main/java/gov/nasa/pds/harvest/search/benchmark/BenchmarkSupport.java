@@ -0,0 +1,183 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import gov.nasa.pds.harvest.search.HarvestSearchLauncher;
+import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractorConfig;
+import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.policy.Namespace;
+import gov.nasa.pds.harvest.search.policy.Policy;
+import gov.nasa.pds.harvest.search.policy.PolicyReader;
+import gov.nasa.pds.harvest.search.util.PDSNamespaceContext;
+import gov.nasa.pds.harvest.search.util.XMLExtractor;
+import gov.nasa.pds.registry.model.ExtrinsicObject;
+import gov.nasa.pds.registry.model.Slot;
+
+/**
+ * Sets up the harvest tool the way the launcher does, for the benchmarks.
+ */
+public class BenchmarkSupport {
+  /** The example policy, as packaged with the benchmarks. */
+  private static final String POLICY =
+      "harvest/examples/harvest-policy-master.xml";
+
+  /** The search configuration of observational products. */
+  private static final String SEARCH_CONFIG =
+      "search/defaults/pds/pds4/observational.xml";
+
+  private BenchmarkSupport() {
+  }
+
+  /**
+   * Turns logging off, so that the benchmarks measure the code rather than
+   * the console.
+   */
+  public static void quietLogging() {
+    Logger.getLogger("").setLevel(Level.OFF);
+  }
+
+  /**
+   * Creates a temporary directory.
+   *
+   * @param prefix The prefix of the directory name.
+   *
+   * @return The directory.
+   *
+   * @throws IOException If the directory could not be created.
+   */
+  public static File createDirectory(String prefix) throws IOException {
+    return Files.createTempDirectory("harvest-" + prefix).toFile();
+  }
+
+  /**
+   * Deletes a temporary directory and everything in it.
+   *
+   * @param directory The directory.
+   */
+  public static void delete(File directory) {
+    FileUtils.deleteQuietly(directory);
+  }
+
+  /**
+   * Loads the example policy merged with the global policy, and sets up
+   * the namespaces of the XML extractor from it.
+   *
+   * @return The policy.
+   *
+   * @throws Exception If a policy could not be read.
+   */
+  public static Policy loadPolicy() throws Exception {
+    Policy policy = PolicyReader.unmarshall(
+        BenchmarkSupport.class.getResource(POLICY));
+    Policy globalPolicy = PolicyReader.unmarshall(
+        HarvestSearchLauncher.class.getResource("global-policy.xml"));
+    policy.getCandidates().getNamespace().addAll(
+        globalPolicy.getCandidates().getNamespace());
+    policy.getCandidates().getProductMetadata().addAll(
+        globalPolicy.getCandidates().getProductMetadata());
+    policy.getReferences().getReferenceTypeMap().addAll(
+        globalPolicy.getReferences().getReferenceTypeMap());
+    policy.getFileTypes().getFileTypeMap().addAll(
+        globalPolicy.getFileTypes().getFileTypeMap());
+
+    List<Namespace> namespaces = policy.getCandidates().getNamespace();
+    for (Namespace namespace : namespaces) {
+      if (namespace.isDefault()) {
+        XMLExtractor.setDefaultNamespace(namespace.getUri());
+        break;
+      }
+    }
+    if (!namespaces.isEmpty()) {
+      XMLExtractor.setNamespaceContext(new PDSNamespaceContext(namespaces));
+    }
+    return policy;
+  }
+
+  /**
+   * Creates the metadata extractor configuration of a policy.
+   *
+   * @param policy The policy.
+   *
+   * @return The configuration.
+   */
+  public static Pds4MetExtractorConfig createMetExtractorConfig(
+      Policy policy) {
+    return new Pds4MetExtractorConfig(
+        policy.getCandidates().getProductMetadata(), policy.getReferences());
+  }
+
+  /**
+   * Writes the search configuration of observational products to a
+   * directory.
+   *
+   * @param directory The directory.
+   *
+   * @throws IOException If the configuration could not be written.
+   */
+  public static void writeSearchConfig(File directory) throws IOException {
+    InputStream in = BenchmarkSupport.class.getResourceAsStream(
+        SEARCH_CONFIG);
+    try {
+      Files.copy(in, new File(directory, "observational.xml").toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Creates the registry object of a product from its metadata, the way
+   * the search document action does.
+   *
+   * @param metadata The metadata of the product.
+   *
+   * @return The registry object.
+   */
+  public static ExtrinsicObject createProduct(Metadata metadata) {
+    ExtrinsicObject product = new ExtrinsicObject();
+    Set<Slot> slots = new HashSet<Slot>();
+    for (Metadata.Entry entry : metadata.getEntries()) {
+      String key = entry.getKey();
+      if (key.equals(Constants.REFERENCES)
+          || key.equals(Constants.INCLUDE_PATHS)
+          || key.equals(Constants.SLOT_METADATA)
+          || key.equals("file_ref")) {
+        continue;
+      }
+      if (key.equals(Constants.LOGICAL_ID)) {
+        product.setLid(entry.getValue());
+      } else if (key.equals(Constants.PRODUCT_VERSION)) {
+        slots.add(new Slot(Constants.PRODUCT_VERSION, Arrays.asList(
+            entry.getValue())));
+      } else if (key.equals(Constants.OBJECT_TYPE)) {
+        product.setObjectType(entry.getValue());
+      } else if (key.equals(Constants.TITLE)) {
+        product.setName(entry.getValue());
+      } else if (key.startsWith(Constants.SLOT_METADATA)) {
+        slots.add(new Slot(entry.getName(),
+            new ArrayList<String>(entry.getValues())));
+      } else if (key.startsWith("file_ref")) {
+        slots.add(new Slot(key.replace("/", "_"),
+            new ArrayList<String>(entry.getValues())));
+      } else {
+        slots.add(new Slot(key, new ArrayList<String>(entry.getValues())));
+      }
+    }
+    product.setSlots(slots);
+    return product;
+  }
+}
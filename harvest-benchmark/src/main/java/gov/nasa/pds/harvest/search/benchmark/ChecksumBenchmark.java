@@ -0,0 +1,161 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nasa.pds.harvest.search.file.ChecksumManifest;
+import gov.nasa.pds.harvest.search.file.ChecksumManifestIndex;
+import gov.nasa.pds.harvest.search.file.MD5Checksum;
+
+/**
+ * Benchmarks the MD5 checksum of data files and the reading of checksum
+ * manifests.
+ * <p>
+ * The data files are read through the page cache, so the checksum
+ * benchmarks measure the digest rather than the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+  /**
+   * A data file to checksum.
+   */
+  @State(Scope.Benchmark)
+  public static class DataFile {
+    @Param({"65536", "16777216"})
+    public int size;
+
+    private File directory;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+      BenchmarkSupport.quietLogging();
+      directory = BenchmarkSupport.createDirectory("checksum");
+      file = new File(directory, "data.dat");
+      byte[] block = new byte[64 * 1024];
+      new Random(size).nextBytes(block);
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        for (int written = 0; written < size; written += block.length) {
+          raf.write(block, 0, Math.min(block.length, size - written));
+        }
+      } finally {
+        raf.close();
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      BenchmarkSupport.delete(directory);
+    }
+  }
+
+  /**
+   * A checksum manifest.
+   */
+  public abstract static class ManifestFile {
+    @Param({"100000", "1000000"})
+    public int lines;
+
+    File directory;
+
+    File manifest;
+
+    ChecksumManifest reader;
+
+    @Setup
+    public void setUp() throws IOException {
+      BenchmarkSupport.quietLogging();
+      directory = BenchmarkSupport.createDirectory("manifest");
+      manifest = new File(directory, "manifest.txt");
+      Random random = new Random(lines);
+      BufferedWriter writer = new BufferedWriter(new FileWriter(manifest));
+      try {
+        for (int i = 0; i < lines; i++) {
+          writer.write(String.format("%016x%016x  data/orbit_%04d/file_%08d.dat",
+              random.nextLong(), random.nextLong(), i / 1000, i));
+          writer.newLine();
+        }
+      } finally {
+        writer.close();
+      }
+      reader = new ChecksumManifest(directory.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+      BenchmarkSupport.delete(directory);
+    }
+  }
+
+  /**
+   * A checksum manifest that is read from scratch every time.
+   */
+  @State(Scope.Benchmark)
+  public static class Manifest extends ManifestFile {
+    /**
+     * Removes the index written by the previous read.
+     */
+    @Setup(Level.Invocation)
+    public void removeIndex() {
+      new File(manifest.getPath() + ".idx").delete();
+    }
+  }
+
+  /**
+   * A checksum manifest whose index is kept from the first read.
+   */
+  @State(Scope.Benchmark)
+  public static class IndexedManifest extends ManifestFile {
+  }
+
+  /**
+   * Computes the checksum of a data file.
+   */
+  @Benchmark
+  public String md5(DataFile data) throws Exception {
+    return MD5Checksum.getMD5Checksum(data.file.getPath());
+  }
+
+  /**
+   * Reads a checksum manifest that has no index yet.
+   */
+  @Benchmark
+  public ChecksumManifestIndex readManifest(Manifest manifest)
+      throws Exception {
+    return manifest.reader.read(manifest.manifest);
+  }
+
+  /**
+   * Reads a checksum manifest through the index left by an earlier read.
+   */
+  @Benchmark
+  public ChecksumManifestIndex readIndexedManifest(IndexedManifest manifest)
+      throws Exception {
+    return manifest.reader.read(manifest.manifest);
+  }
+}
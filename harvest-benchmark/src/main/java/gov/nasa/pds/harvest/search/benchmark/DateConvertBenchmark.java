@@ -0,0 +1,46 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nasa.pds.search.core.util.PDSDateConvert;
+
+/**
+ * Benchmarks the conversion of PDS dates to Solr dates, for each of the
+ * common PDS date formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateConvertBenchmark {
+  @Param({"2020-01-01T12:34:56.789Z", "2020-001T12:34:56.1234",
+      "2020-01-01T12:34", "2020-01-01", "2020-001", "2020", "UNK"})
+  public String value;
+
+  @Setup
+  public void setUp() {
+    BenchmarkSupport.quietLogging();
+  }
+
+  /**
+   * Converts a start time.
+   */
+  @Benchmark
+  public String convert() throws Exception {
+    return PDSDateConvert.convert("start_date_time", value);
+  }
+}
@@ -0,0 +1,134 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractor;
+import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
+import gov.nasa.pds.harvest.search.util.XMLExtractor;
+import net.sf.saxon.tree.tiny.TinyElementImpl;
+
+/**
+ * Benchmarks label parsing, XPath evaluation and metadata extraction on
+ * small, large and xinclude labels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabelBenchmark {
+  @Param({"SMALL", "LARGE", "XINCLUDE"})
+  public LabelGenerator.Kind kind;
+
+  private File directory;
+
+  private File label;
+
+  private XMLExtractor parsed;
+
+  private ParsedLabel parsedLabel;
+
+  private Pds4MetExtractor metExtractor;
+
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkSupport.quietLogging();
+    metExtractor = new Pds4MetExtractor(
+        BenchmarkSupport.createMetExtractorConfig(
+        BenchmarkSupport.loadPolicy()));
+    directory = BenchmarkSupport.createDirectory("labels");
+    label = LabelGenerator.write(kind, directory, "label");
+    parsed = new XMLExtractor();
+    parsed.parse(label);
+    parsedLabel = new ParsedLabel(label);
+    parsedLabel.getExtractor();
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkSupport.delete(directory);
+  }
+
+  /**
+   * Parses the label.
+   */
+  @Benchmark
+  public Object parse() throws Exception {
+    XMLExtractor extractor = new XMLExtractor();
+    extractor.parse(label);
+    return extractor.getDocNode();
+  }
+
+  /**
+   * Evaluates the core XPath expressions on the parsed label.
+   */
+  @Benchmark
+  public void query(Blackhole blackhole) throws Exception {
+    query(parsed, blackhole);
+  }
+
+  /**
+   * Parses the label and evaluates the core XPath expressions.
+   */
+  @Benchmark
+  public void parseAndQuery(Blackhole blackhole) throws Exception {
+    XMLExtractor extractor = new XMLExtractor();
+    extractor.parse(label);
+    query(extractor, blackhole);
+  }
+
+  /**
+   * Extracts the metadata from the parsed label.
+   */
+  @Benchmark
+  public Metadata extractMetadata() throws Exception {
+    return metExtractor.extractMetadata(parsedLabel);
+  }
+
+  /**
+   * Parses the label and extracts its metadata, as the crawler does.
+   */
+  @Benchmark
+  public Metadata parseAndExtractMetadata() throws Exception {
+    return metExtractor.extractMetadata(new ParsedLabel(label));
+  }
+
+  private static void query(XMLExtractor extractor, Blackhole blackhole)
+      throws Exception {
+    blackhole.consume(extractor.getValueFromDoc(
+        Constants.coreXpathsMap.get(Constants.PRODUCT_CLASS)));
+    blackhole.consume(extractor.getValueFromDoc(
+        Constants.coreXpathsMap.get(Constants.LOGICAL_ID)));
+    blackhole.consume(extractor.getValueFromDoc(
+        Constants.coreXpathsMap.get(Constants.PRODUCT_VERSION)));
+    blackhole.consume(extractor.getValueFromDoc(
+        Constants.coreXpathsMap.get(Constants.TITLE)));
+    blackhole.consume(extractor.getNodesFromDoc(
+        Constants.coreXpathsMap.get(Constants.REFERENCES)));
+    List<TinyElementImpl> fileObjects = extractor.getNodesFromDoc(
+        Constants.coreXpathsMap.get(Constants.FILE_OBJECTS));
+    for (TinyElementImpl fileObject : fileObjects) {
+      blackhole.consume(extractor.getValueFromItem("file_name", fileObject));
+    }
+    blackhole.consume(extractor.getAttributeValuesFromDoc("//@xml:base"));
+  }
+}
@@ -0,0 +1,258 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generates PDS4 observational labels for the benchmarks.
+ * <p>
+ * A small label has a single table. A large label has many File_Area
+ * elements, each with an image and a table. An xinclude label pulls each
+ * of its File_Area elements in from a fragment file of its own, the way
+ * some missions share areas across their labels.
+ */
+public class LabelGenerator {
+  /** The PDS4 namespace. */
+  public static final String PDS_NAMESPACE = "http://pds.nasa.gov/pds4/pds/v1";
+
+  /** The XInclude namespace. */
+  private static final String XI_NAMESPACE = "http://www.w3.org/2001/XInclude";
+
+  /** Kinds of labels. */
+  public enum Kind {
+    /** One File_Area with a small table. */
+    SMALL(1, 1, 8),
+
+    /** Many File_Areas with images and tables. */
+    LARGE(200, 20, 24),
+
+    /** File_Areas pulled in from fragment files. */
+    XINCLUDE(50, 5, 16);
+
+    private final int fileAreas;
+    private final int references;
+    private final int fields;
+
+    Kind(int fileAreas, int references, int fields) {
+      this.fileAreas = fileAreas;
+      this.references = references;
+      this.fields = fields;
+    }
+  }
+
+  private LabelGenerator() {
+  }
+
+  /**
+   * Writes a label, along with its fragment files, to the given directory.
+   *
+   * @param kind The kind of label.
+   * @param directory The directory.
+   * @param name The base name of the label.
+   *
+   * @return The label file.
+   *
+   * @throws IOException If the label could not be written.
+   */
+  public static File write(Kind kind, File directory, String name)
+      throws IOException {
+    String lid = "urn:nasa:pds:benchmark:data:" + name;
+    StringBuilder label = new StringBuilder();
+    label.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    label.append("<Product_Observational xmlns=\"").append(PDS_NAMESPACE)
+        .append("\"");
+    if (kind == Kind.XINCLUDE) {
+      label.append(" xmlns:xi=\"").append(XI_NAMESPACE).append("\"");
+    }
+    label.append(">\n");
+    appendIdentificationArea(label, lid, name);
+    appendObservationArea(label);
+    appendReferenceList(label, kind.references);
+    for (int i = 0; i < kind.fileAreas; i++) {
+      String fileName = name + "_" + i;
+      if (kind == Kind.XINCLUDE) {
+        StringBuilder fragment = new StringBuilder();
+        fragment.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        appendFileArea(fragment, fileName, kind.fields, true);
+        writeFile(new File(directory, fileName + "_area.xml"), fragment);
+        label.append("  <xi:include href=\"").append(fileName)
+            .append("_area.xml\"/>\n");
+      } else {
+        appendFileArea(label, fileName, kind.fields, false);
+      }
+    }
+    label.append("</Product_Observational>\n");
+    File file = new File(directory, name + ".xml");
+    writeFile(file, label);
+    return file;
+  }
+
+  private static void appendIdentificationArea(StringBuilder label,
+      String lid, String name) {
+    label.append("  <Identification_Area>\n");
+    label.append("    <logical_identifier>").append(lid)
+        .append("</logical_identifier>\n");
+    label.append("    <version_id>1.0</version_id>\n");
+    label.append("    <title>Benchmark observation ").append(name)
+        .append("</title>\n");
+    label.append("    <information_model_version>1.11.0.0"
+        + "</information_model_version>\n");
+    label.append("    <product_class>Product_Observational</product_class>\n");
+    label.append("    <Alias_List>\n");
+    label.append("      <Alias>\n");
+    label.append("        <alternate_id>").append(name.toUpperCase())
+        .append("</alternate_id>\n");
+    label.append("      </Alias>\n");
+    label.append("    </Alias_List>\n");
+    label.append("    <Citation_Information>\n");
+    label.append("      <author_list>Doe, J.; Roe, R.</author_list>\n");
+    label.append("      <publication_year>2020</publication_year>\n");
+    label.append("      <keyword>benchmark</keyword>\n");
+    label.append("      <description>Generated label used to measure the "
+        + "harvest tool.</description>\n");
+    label.append("    </Citation_Information>\n");
+    label.append("    <Modification_History>\n");
+    label.append("      <Modification_Detail>\n");
+    label.append("        <modification_date>2020-01-01</modification_date>\n");
+    label.append("        <version_id>1.0</version_id>\n");
+    label.append("        <description>Initial version.</description>\n");
+    label.append("      </Modification_Detail>\n");
+    label.append("    </Modification_History>\n");
+    label.append("  </Identification_Area>\n");
+  }
+
+  private static void appendObservationArea(StringBuilder label) {
+    label.append("  <Observation_Area>\n");
+    label.append("    <Time_Coordinates>\n");
+    label.append("      <start_date_time>2020-01-01T00:00:00.000Z"
+        + "</start_date_time>\n");
+    label.append("      <stop_date_time>2020-001T01:30:00.1234Z"
+        + "</stop_date_time>\n");
+    label.append("    </Time_Coordinates>\n");
+    label.append("    <Primary_Result_Summary>\n");
+    label.append("      <purpose>Science</purpose>\n");
+    label.append("      <processing_level>Calibrated</processing_level>\n");
+    label.append("    </Primary_Result_Summary>\n");
+    label.append("    <Investigation_Area>\n");
+    label.append("      <name>Benchmark Mission</name>\n");
+    label.append("      <type>Mission</type>\n");
+    label.append("      <Internal_Reference>\n");
+    label.append("        <lid_reference>urn:nasa:pds:context:investigation:"
+        + "mission.benchmark</lid_reference>\n");
+    label.append("        <reference_type>data_to_investigation"
+        + "</reference_type>\n");
+    label.append("      </Internal_Reference>\n");
+    label.append("    </Investigation_Area>\n");
+    label.append("    <Observing_System>\n");
+    label.append("      <Observing_System_Component>\n");
+    label.append("        <name>Benchmark Spacecraft</name>\n");
+    label.append("        <type>Spacecraft</type>\n");
+    label.append("      </Observing_System_Component>\n");
+    label.append("      <Observing_System_Component>\n");
+    label.append("        <name>Benchmark Camera</name>\n");
+    label.append("        <type>Instrument</type>\n");
+    label.append("      </Observing_System_Component>\n");
+    label.append("    </Observing_System>\n");
+    label.append("    <Target_Identification>\n");
+    label.append("      <name>Mars</name>\n");
+    label.append("      <type>Planet</type>\n");
+    label.append("    </Target_Identification>\n");
+    label.append("  </Observation_Area>\n");
+  }
+
+  private static void appendReferenceList(StringBuilder label,
+      int references) {
+    label.append("  <Reference_List>\n");
+    for (int i = 0; i < references; i++) {
+      label.append("    <Internal_Reference>\n");
+      label.append("      <lidvid_reference>urn:nasa:pds:benchmark:document:"
+          + "doc_").append(i).append("::1.0</lidvid_reference>\n");
+      label.append("      <reference_type>data_to_document"
+          + "</reference_type>\n");
+      label.append("    </Internal_Reference>\n");
+    }
+    label.append("  </Reference_List>\n");
+  }
+
+  private static void appendFileArea(StringBuilder label, String fileName,
+      int fields, boolean root) {
+    label.append("  <File_Area_Observational");
+    if (root) {
+      label.append(" xmlns=\"").append(PDS_NAMESPACE).append("\"");
+    }
+    label.append(">\n");
+    label.append("    <File>\n");
+    label.append("      <file_name>").append(fileName)
+        .append(".dat</file_name>\n");
+    label.append("      <creation_date_time>2020-01-02T03:04:05"
+        + "</creation_date_time>\n");
+    label.append("      <file_size unit=\"byte\">").append(4096 + fields * 16)
+        .append("</file_size>\n");
+    label.append("      <md5_checksum>0123456789abcdef0123456789abcdef"
+        + "</md5_checksum>\n");
+    label.append("    </File>\n");
+    if (fields > 8) {
+      label.append("    <Array_2D_Image>\n");
+      label.append("      <offset unit=\"byte\">0</offset>\n");
+      label.append("      <axes>2</axes>\n");
+      label.append("      <axis_index_order>Last Index Fastest"
+          + "</axis_index_order>\n");
+      label.append("      <Element_Array>\n");
+      label.append("        <data_type>UnsignedByte</data_type>\n");
+      label.append("      </Element_Array>\n");
+      label.append("      <Axis_Array>\n");
+      label.append("        <axis_name>Line</axis_name>\n");
+      label.append("        <elements>64</elements>\n");
+      label.append("        <sequence_number>1</sequence_number>\n");
+      label.append("      </Axis_Array>\n");
+      label.append("      <Axis_Array>\n");
+      label.append("        <axis_name>Sample</axis_name>\n");
+      label.append("        <elements>64</elements>\n");
+      label.append("        <sequence_number>2</sequence_number>\n");
+      label.append("      </Axis_Array>\n");
+      label.append("    </Array_2D_Image>\n");
+    }
+    label.append("    <Table_Character>\n");
+    label.append("      <offset unit=\"byte\">4096</offset>\n");
+    label.append("      <records>1</records>\n");
+    label.append("      <record_delimiter>Carriage-Return Line-Feed"
+        + "</record_delimiter>\n");
+    label.append("      <Record_Character>\n");
+    label.append("        <fields>").append(fields).append("</fields>\n");
+    label.append("        <groups>0</groups>\n");
+    label.append("        <record_length unit=\"byte\">")
+        .append(fields * 16).append("</record_length>\n");
+    for (int i = 0; i < fields; i++) {
+      label.append("        <Field_Character>\n");
+      label.append("          <name>FIELD_").append(i).append("</name>\n");
+      label.append("          <field_number>").append(i + 1)
+          .append("</field_number>\n");
+      label.append("          <field_location unit=\"byte\">")
+          .append(i * 16 + 1).append("</field_location>\n");
+      label.append("          <data_type>ASCII_Real</data_type>\n");
+      label.append("          <field_length unit=\"byte\">15"
+          + "</field_length>\n");
+      label.append("          <description>Value ").append(i)
+          .append(" of the record.</description>\n");
+      label.append("        </Field_Character>\n");
+    }
+    label.append("      </Record_Character>\n");
+    label.append("    </Table_Character>\n");
+    label.append("  </File_Area_Observational>\n");
+  }
+
+  private static void writeFile(File file, CharSequence content)
+      throws IOException {
+    Writer writer = new OutputStreamWriter(
+        Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8);
+    try {
+      writer.append(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractor;
+import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.registry.model.ExtrinsicObject;
+import gov.nasa.pds.registry.model.Slot;
+
+/**
+ * Benchmarks filling the metadata of a product the way the metadata
+ * extractor does, then turning it into the registry object of the product,
+ * with the flat metadata and with the tree of groups it replaced.
+ * <p>
+ * Run with "-prof gc" to compare the memory allocated per product, shown
+ * as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+  @Param({"SMALL", "LARGE"})
+  public LabelGenerator.Kind kind;
+
+  private File directory;
+
+  private String lid;
+
+  private String version;
+
+  private String title;
+
+  private String objectType;
+
+  private List<Slot> slots;
+
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkSupport.quietLogging();
+    directory = BenchmarkSupport.createDirectory("metadata");
+    Pds4MetExtractor metExtractor = new Pds4MetExtractor(
+        BenchmarkSupport.createMetExtractorConfig(
+        BenchmarkSupport.loadPolicy()));
+    Metadata metadata = metExtractor.extractMetadata(
+        LabelGenerator.write(kind, directory, "label"));
+    lid = metadata.getMetadata(Constants.LOGICAL_ID);
+    version = metadata.getMetadata(Constants.PRODUCT_VERSION);
+    title = metadata.getMetadata(Constants.TITLE);
+    objectType = metadata.getMetadata(Constants.OBJECT_TYPE);
+    slots = new ArrayList<Slot>();
+    for (Metadata.Entry entry : metadata.getEntries()) {
+      if (Constants.SLOT_METADATA.equals(entry.getGroup())) {
+        slots.add(new Slot(entry.getName(),
+            new ArrayList<String>(entry.getValues())));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkSupport.delete(directory);
+  }
+
+  /**
+   * Fills the flat metadata and creates the registry object from it.
+   */
+  @Benchmark
+  public ExtrinsicObject flat() {
+    Metadata metadata = new Metadata();
+    metadata.addMetadata(Constants.LOGICAL_ID, lid);
+    metadata.addMetadata(Constants.PRODUCT_VERSION, version);
+    metadata.addMetadata(Constants.TITLE, title);
+    metadata.addMetadata(Constants.OBJECT_TYPE, objectType);
+    metadata.addMetadata(Constants.SLOT_METADATA, slots);
+    return BenchmarkSupport.createProduct(metadata);
+  }
+
+  /**
+   * Fills the tree of groups and creates the registry object from it, the
+   * way the search document action did.
+   */
+  @Benchmark
+  public ExtrinsicObject tree() {
+    TreeMetadata metadata = new TreeMetadata();
+    metadata.addMetadata(Constants.LOGICAL_ID, lid);
+    metadata.addMetadata(Constants.PRODUCT_VERSION, version);
+    metadata.addMetadata(Constants.TITLE, title);
+    metadata.addMetadata(Constants.OBJECT_TYPE, objectType);
+    metadata.addMetadata(Constants.SLOT_METADATA, slots);
+
+    ExtrinsicObject product = new ExtrinsicObject();
+    Set<Slot> productSlots = new HashSet<Slot>();
+    for (String key : metadata.getAllKeys()) {
+      if (key.equals(Constants.LOGICAL_ID)) {
+        product.setLid(metadata.getMetadata(key));
+      } else if (key.equals(Constants.PRODUCT_VERSION)) {
+        productSlots.add(new Slot(key, Arrays.asList(
+            metadata.getMetadata(key))));
+      } else if (key.equals(Constants.OBJECT_TYPE)) {
+        product.setObjectType(metadata.getMetadata(key));
+      } else if (key.equals(Constants.TITLE)) {
+        product.setName(metadata.getMetadata(key));
+      } else if (key.startsWith(Constants.SLOT_METADATA)) {
+        productSlots.add(new Slot(key.split("/")[1],
+            metadata.getAllMetadata(key)));
+      } else {
+        List<String> values = new ArrayList<String>();
+        if (metadata.isMultiValued(key)) {
+          values.addAll(metadata.getAllMetadata(key));
+        } else {
+          values.add(metadata.getMetadata(key));
+        }
+        productSlots.add(new Slot(key, values));
+      }
+    }
+    product.setSlots(productSlots);
+    return product;
+  }
+}
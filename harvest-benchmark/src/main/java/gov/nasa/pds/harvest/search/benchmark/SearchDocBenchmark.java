@@ -0,0 +1,145 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractor;
+import gov.nasa.pds.harvest.search.doc.SearchDocGenerator;
+import gov.nasa.pds.harvest.search.doc.SearchDocState;
+import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.DocWriter;
+import gov.nasa.pds.registry.model.ExtrinsicObject;
+
+/**
+ * Benchmarks the generation and writing of search documents.
+ * <p>
+ * The documents are written to a temporary directory that is emptied
+ * after every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchDocBenchmark {
+  /** Documents per segment file, as in the search document generator. */
+  private static final int DOCS_PER_FILE = 1000;
+
+  @Param({"SMALL", "LARGE"})
+  public LabelGenerator.Kind kind;
+
+  private File directory;
+
+  private File outputDirectory;
+
+  private SearchDocGenerator generator;
+
+  private ExtrinsicObject product;
+
+  private Metadata metadata;
+
+  private SearchDocState state;
+
+  private Map<String, List<String>> fieldMap;
+
+  private Map<String, String> typeMap;
+
+  private DocWriter writer;
+
+  private int numWritten;
+
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkSupport.quietLogging();
+    directory = BenchmarkSupport.createDirectory("searchdocs");
+    File configDirectory = new File(directory, "config");
+    configDirectory.mkdir();
+    BenchmarkSupport.writeSearchConfig(configDirectory);
+    outputDirectory = new File(directory, "output");
+    outputDirectory.mkdir();
+
+    Pds4MetExtractor metExtractor = new Pds4MetExtractor(
+        BenchmarkSupport.createMetExtractorConfig(
+        BenchmarkSupport.loadPolicy()));
+    metadata = metExtractor.extractMetadata(
+        LabelGenerator.write(kind, directory, "label"));
+    product = BenchmarkSupport.createProduct(metadata);
+    generator = new SearchDocGenerator(configDirectory, outputDirectory);
+
+    // A document of the same shape as the observational configuration,
+    // with a date field that needs converting
+    fieldMap = new HashMap<String, List<String>>();
+    typeMap = new HashMap<String, String>();
+    for (int i = 0; i < 40; i++) {
+      String name = "field_" + i;
+      List<String> values = new ArrayList<String>();
+      for (int j = 0; j <= i % 3; j++) {
+        values.add("Value " + j + " of " + name + " & <more>");
+      }
+      fieldMap.put(name, values);
+      typeMap.put(name, "string");
+    }
+    fieldMap.put("start_time", Arrays.asList("2020-001T01:30:00.1234Z"));
+    typeMap.put("start_time", "date");
+    fieldMap.put("resclass", Arrays.asList("resclass"));
+    typeMap.put("resclass", "string");
+  }
+
+  @Setup(Level.Iteration)
+  public void openOutput() {
+    state = new SearchDocState();
+    writer = new DocWriter(outputDirectory);
+    numWritten = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void clearOutput() throws Exception {
+    state.closeWriter();
+    writer.close();
+    for (File file : outputDirectory.listFiles()) {
+      file.delete();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkSupport.delete(directory);
+  }
+
+  /**
+   * Generates the search document of the product.
+   */
+  @Benchmark
+  public void generate() throws Exception {
+    generator.generate(product, metadata, state);
+  }
+
+  /**
+   * Writes a document with 40 fields.
+   */
+  @Benchmark
+  public void write() throws Exception {
+    writer.write(fieldMap, numWritten++ / DOCS_PER_FILE, "Benchmark",
+        typeMap);
+  }
+}
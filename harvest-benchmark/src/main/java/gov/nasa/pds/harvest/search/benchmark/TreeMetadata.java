@@ -0,0 +1,115 @@
+package gov.nasa.pds.harvest.search.benchmark;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import gov.nasa.pds.registry.model.ExtrinsicObject;
+import gov.nasa.pds.registry.model.Slot;
+
+/**
+ * The metadata as it was held before it was made flat, in a tree of
+ * groups that each key is split into on every call. Only the calls the
+ * crawler makes for a product are kept, so that the metadata benchmark can
+ * compare the two.
+ */
+public class TreeMetadata {
+  private final Group root;
+
+  public TreeMetadata() {
+    this.root = new Group("root");
+  }
+
+  public void addMetadata(String key, String value) {
+    getGroup(key, true).values.add(value);
+  }
+
+  public void addMetadata(String key, List<?> values) {
+    for (Object value : values) {
+      if (value instanceof Slot) {
+        Slot slot = (Slot) value;
+        addMetadata(key + "/" + slot.getName(), slot.getValues());
+      } else if (value instanceof String) {
+        getGroup(key, true).values.add((String) value);
+      } else if (value instanceof ExtrinsicObject) {
+        addMetadata(key, new ArrayList<Slot>(
+            ((ExtrinsicObject) value).getSlots()));
+      }
+    }
+  }
+
+  public String getMetadata(String key) {
+    Group group = getGroup(key, false);
+    if (group == null || group.values.isEmpty()) {
+      return null;
+    }
+    return group.values.get(0);
+  }
+
+  public List<String> getAllMetadata(String key) {
+    Group group = getGroup(key, false);
+    return group == null ? null : new Vector<String>(group.values);
+  }
+
+  public boolean isMultiValued(String key) {
+    Group group = getGroup(key, false);
+    return group != null && group.values.size() > 1;
+  }
+
+  public List<String> getAllKeys() {
+    return getAllKeys(root);
+  }
+
+  private List<String> getAllKeys(Group group) {
+    Vector<String> keys = new Vector<String>();
+    for (Group child : new Vector<Group>(group.children.values())) {
+      if (!child.values.isEmpty()) {
+        keys.add(child.getFullPath());
+      }
+      keys.addAll(getAllKeys(child));
+    }
+    return keys;
+  }
+
+  private Group getGroup(String key, boolean create) {
+    StringTokenizer tokenizer = new StringTokenizer(key, "/");
+    Group group = root;
+    while (tokenizer.hasMoreTokens()) {
+      String name = tokenizer.nextToken();
+      Group child = group.children.get(name);
+      if (child == null) {
+        if (!create) {
+          return null;
+        }
+        child = new Group(name);
+        child.parent = group;
+        group.children.put(name, child);
+      }
+      group = child;
+    }
+    return group;
+  }
+
+  private static class Group {
+    private final String name;
+    private final List<String> values;
+    private final Map<String, Group> children;
+    private Group parent;
+
+    Group(String name) {
+      this.name = name;
+      this.values = new Vector<String>();
+      this.children = new Hashtable<String, Group>();
+    }
+
+    String getFullPath() {
+      if (parent != null && parent.parent != null) {
+        return parent.getFullPath() + "/" + name;
+      }
+      return name;
+    }
+  }
+}
@@ -28,6 +28,7 @@ import gov.nasa.pds.harvest.search.commandline.options.Flag;
 import gov.nasa.pds.harvest.search.commandline.options.InvalidOptionException;
 import gov.nasa.pds.harvest.search.constants.Constants;
 import gov.nasa.pds.harvest.search.logging.formatter.HarvestFormatter;
+import gov.nasa.pds.harvest.search.logging.handler.AsyncLogHandler;
 import gov.nasa.pds.harvest.search.logging.handler.HarvestFileHandler;
 import gov.nasa.pds.harvest.search.logging.handler.HarvestStreamHandler;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.ConnectionException;
@@ -39,6 +40,7 @@ import gov.nasa.pds.harvest.search.policy.Namespace;
 import gov.nasa.pds.harvest.search.policy.Pds3Directory;
 import gov.nasa.pds.harvest.search.policy.Policy;
 import gov.nasa.pds.harvest.search.policy.PolicyReader;
+import gov.nasa.pds.harvest.search.stats.MetricsExporter;
 import gov.nasa.pds.harvest.search.target.TargetType;
 import gov.nasa.pds.harvest.search.util.PDSNamespaceContext;
 import gov.nasa.pds.harvest.search.util.SolrManager;
@@ -82,6 +84,12 @@ public class HarvestSearchLauncher {
 	 */
 	private int daemonPort;
 
+	/** The number of threads to crawl the target directories with. */
+	private int numThreads;
+
+	/** The file holding the state of previous harvests. */
+	private File stateFile;
+
 	/** List of targets specified on the command line. */
 	private List<File> targets;
 
@@ -117,6 +125,8 @@ public class HarvestSearchLauncher {
 		logFile = null;
 		waitInterval = -1;
 		daemonPort = -1;
+		numThreads = -1;
+		stateFile = null;
 		targets = new ArrayList<File>();
 		regExps = new ArrayList<String>();
 		excludeSubDirs = new ArrayList<String>();
@@ -192,6 +202,20 @@ public class HarvestSearchLauncher {
 				} catch (NumberFormatException n) {
 					throw new Exception(n.getMessage());
 				}
+			} else if (o.getOpt().equals(Flag.THREADS.getShortName())) {
+				try {
+					numThreads = Integer.parseInt(o.getValue());
+				} catch (NumberFormatException n) {
+					throw new Exception(n.getMessage());
+				}
+				if (numThreads < 1) {
+					throw new InvalidOptionException("Number of threads must be at least 1: " + numThreads);
+				}
+			} else if (o.getOpt().equals(Flag.STATE.getShortName())) {
+				stateFile = new File(o.getValue());
+				if (stateFile.isDirectory()) {
+					throw new InvalidOptionException("State file is a directory: " + stateFile);
+				}
 			} else if (o.getOpt().equals(Flag.ISPDS3DIR.getShortName())) {
 				isPDS3Directory = true;
 			} else if (o.getOpt().equals(Flag.VERBOSE.getShortName())) {
@@ -353,10 +377,17 @@ public class HarvestSearchLauncher {
 		for (int i = 0; i < logger.getHandlers().length; i++) {
 			logger.removeHandler(handler[i]);
 		}
+		// Log on a thread of its own unless told otherwise, so that a slow
+		// log does not hold up the crawl
+		boolean async = Boolean.parseBoolean(System.getProperty(AsyncLogHandler.ASYNC_PROP, "true"));
 		if (logFile != null) {
-			logger.addHandler(new HarvestFileHandler(logFile, severityLevel, new HarvestFormatter()));
+			logger.addHandler(async
+					? new AsyncLogHandler(logFile, severityLevel, new HarvestFormatter())
+					: new HarvestFileHandler(logFile, severityLevel, new HarvestFormatter()));
 		} else {
-			logger.addHandler(new HarvestStreamHandler(System.out, severityLevel, new HarvestFormatter()));
+			logger.addHandler(async
+					? new AsyncLogHandler(System.out, severityLevel, new HarvestFormatter())
+					: new HarvestStreamHandler(System.out, severityLevel, new HarvestFormatter()));
 		}
 	}
 
@@ -413,6 +444,12 @@ public class HarvestSearchLauncher {
 			harvester.setDaemonPort(daemonPort);
 			harvester.setWaitInterval(waitInterval);
 		}
+		if (numThreads != -1) {
+			harvester.setNumThreads(numThreads);
+		}
+		if (stateFile != null) {
+			harvester.setStateFile(stateFile);
+		}
 	
 		Directory directories = new Directory();
 		Pds3Directory pds3Dir = new Pds3Directory();
@@ -434,6 +471,7 @@ public class HarvestSearchLauncher {
 			}
 			directories.setFileFilter(fileFilter);
 			directories.setDirectoryFilter(dirFilter);
+			directories.setThreads(policy.getDirectories().getThreads());
 		}
 		// Any targets specified on the command line will overwrite any targets
 		// specified in the policy file.
@@ -572,6 +610,7 @@ public class HarvestSearchLauncher {
 			
 			// Init resources
 			SolrManager.init(searchUrl);
+			MetricsExporter.start();
 			
 			Policy policy = PolicyReader.unmarshall(this.policy);
 			Policy globalPolicy = PolicyReader.unmarshall(this.globalPolicy);
@@ -598,9 +637,19 @@ public class HarvestSearchLauncher {
 		} 
 		finally 
 		{
-		    // Cleanup
+		    // Cleanup. Queued Solr documents are sent before the log is closed
+			// so that any failures make it into the report.
+			try
+			{
+				SolrManager.destroy();
+			}
+			catch (Exception e)
+			{
+				log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+						"Failed to commit documents to the search service: " + e.getMessage()));
+			}
+			MetricsExporter.stop();
 			closeHandlers();
-			SolrManager.destroy();
 		}
 	}
 
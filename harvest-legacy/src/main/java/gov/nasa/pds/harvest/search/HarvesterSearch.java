@@ -4,23 +4,30 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.logging.Logger;
+import gov.nasa.pds.harvest.search.crawler.BundleCrawler;
 import gov.nasa.pds.harvest.search.crawler.CollectionCrawler;
+import gov.nasa.pds.harvest.search.crawler.DirectoryWatcher;
 import gov.nasa.pds.harvest.search.crawler.PDSProductCrawler;
 import gov.nasa.pds.harvest.search.crawler.actions.CreateAccessUrlsAction;
 import gov.nasa.pds.harvest.search.crawler.actions.CreateSearchDocAction;
 import gov.nasa.pds.harvest.search.crawler.actions.FileObjectRegistrationAction;
 import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractorConfig;
 import gov.nasa.pds.harvest.search.doc.SearchDocState;
+import gov.nasa.pds.harvest.search.file.ChecksumCache;
 import gov.nasa.pds.harvest.search.file.ChecksumManifest;
+import gov.nasa.pds.harvest.search.file.FileStateStore;
 import gov.nasa.pds.harvest.search.ingest.SearchIngester;
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.crawler.CrawlerAction;
+import gov.nasa.pds.harvest.search.oodt.crawler.IngestStatusJournal;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.ConnectionException;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.CrawlerActionException;
 import gov.nasa.pds.harvest.search.policy.Manifest;
 import gov.nasa.pds.harvest.search.policy.Policy;
+import gov.nasa.pds.harvest.search.util.LabelHeader;
 import gov.nasa.pds.search.core.exception.SearchCoreException;
 import gov.nasa.pds.search.core.exception.SearchCoreFatalException;
 
@@ -31,6 +38,8 @@ import gov.nasa.pds.search.core.exception.SearchCoreFatalException;
  *
  */
 public class HarvesterSearch {
+  /** Logger object. */
+  private static Logger log = Logger.getLogger(HarvesterSearch.class.getName());
 
   /**
    * The port number to use for the daemon if running Harvest in continuous mode.
@@ -42,6 +51,21 @@ public class HarvesterSearch {
    */
   private int waitInterval;
 
+  /**
+   * The number of threads to crawl directories and the collections of bundles with. Overrides the
+   * value in the policy when set.
+   */
+  private int numThreads;
+
+  /** The file holding the state of previous harvests. */
+  private File stateFile;
+
+  /**
+   * Time in milliseconds to wait for a pass in progress to finish when
+   * stopping continuous mode.
+   */
+  private static final long SHUTDOWN_WAIT = 60000;
+
   /** CrawlerAction that performs file object registration. */
   private FileObjectRegistrationAction fileObjectRegistrationAction;
 
@@ -67,6 +91,8 @@ public class HarvesterSearch {
       throws Exception {
     this.daemonPort = -1;
     this.waitInterval = -1;
+    this.numThreads = -1;
+    this.stateFile = null;
     this.fileObjectRegistrationAction = new FileObjectRegistrationAction();
     this.configDir = configDir;
     this.outputDir = outputDir;
@@ -93,6 +119,43 @@ public class HarvesterSearch {
     this.waitInterval = interval;
   }
 
+  /**
+   * Sets the number of threads to crawl directories and the collections of
+   * bundles with.
+   *
+   * @param numThreads The number of threads.
+   */
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Sets the file holding the state of previous harvests. Labels in the
+   * target directories that have not changed since they were last harvested
+   * successfully are skipped.
+   *
+   * @param stateFile The state file.
+   */
+  public void setStateFile(File stateFile) {
+    this.stateFile = stateFile;
+  }
+
+  /**
+   * Determines whether a label is a bundle label.
+   *
+   * @param label The label file.
+   *
+   * @return true if the root element of the label is a Product_Bundle.
+   */
+  private boolean isBundle(File label) {
+    try {
+      return "Product_Bundle".equals(LabelHeader.scan(label).getRootElement());
+    } catch (Exception e) {
+      // Left to the collection crawler to report
+      return false;
+    }
+  }
+
   /**
    * Get the default crawler actions.
    *
@@ -133,9 +196,6 @@ public class HarvesterSearch {
 
     CreateSearchDocAction createSearchDoc =
         new CreateSearchDocAction(configDir, outputDir, this.searchDocState);
-    if (crawler instanceof CollectionCrawler) {
-      createSearchDoc.setCacheCollection(true);
-    }
     ca.add(createSearchDoc);
     return ca;
   }
@@ -155,12 +215,11 @@ public class HarvesterSearch {
   public void harvest(Policy policy) throws IOException, ConnectionException, SearchCoreException,
       SearchCoreFatalException, CrawlerActionException {
     boolean doCrawlerPersistance = false;
-    Map<File, String> checksums = new HashMap<File, String>();
     if (policy.getChecksums().getManifest() != null) {
       Manifest manifest = policy.getChecksums().getManifest();
       ChecksumManifest cm = new ChecksumManifest(manifest.getBasePath());
-      checksums.putAll(cm.read(new File(manifest.getValue())));
-      fileObjectRegistrationAction.setChecksumManifest(checksums);
+      fileObjectRegistrationAction.setChecksumManifest(
+          cm.read(new File(manifest.getValue())));
     }
     if (waitInterval != -1 && daemonPort != -1) {
       doCrawlerPersistance = true;
@@ -168,10 +227,26 @@ public class HarvesterSearch {
     Pds4MetExtractorConfig pds4MetExtractorConfig = new Pds4MetExtractorConfig(
         policy.getCandidates().getProductMetadata(), policy.getReferences());
     List<PDSProductCrawler> crawlers = new ArrayList<PDSProductCrawler>();
+    List<PDSProductCrawler> directoryCrawlers = new ArrayList<PDSProductCrawler>();
+    FileStateStore stateStore = null;
+    if (stateFile != null) {
+      stateStore = new FileStateStore(stateFile);
+      log.log(new ToolsLogRecord(ToolsLevel.INFO, "Loaded the state of "
+          + stateStore.size() + " previously harvested labels.", stateFile));
+    }
 
-    // Crawl collections
+    // Crawl collections. When the policy asks for it, a bundle label in the
+    // list has its member collections crawled concurrently.
+    boolean expandBundles = policy.getCollections().isExpandBundles();
     for (String collection : policy.getCollections().getFile()) {
-      CollectionCrawler cc = new CollectionCrawler(pds4MetExtractorConfig);
+      CollectionCrawler cc = null;
+      if (expandBundles && isBundle(new File(collection))) {
+        cc = new BundleCrawler(pds4MetExtractorConfig);
+        cc.setNumThreads(numThreads != -1 ? numThreads
+            : policy.getDirectories().getThreads());
+      } else {
+        cc = new CollectionCrawler(pds4MetExtractorConfig);
+      }
       cc.setProductPath(collection);
 
       crawlers.add(cc);
@@ -180,6 +255,11 @@ public class HarvesterSearch {
     for (String directory : policy.getDirectories().getPath()) {
       PDSProductCrawler pc = new PDSProductCrawler(pds4MetExtractorConfig);
       pc.setProductPath(directory);
+      pc.setNumThreads(numThreads != -1 ? numThreads : policy.getDirectories().getThreads());
+      // Only directory crawls skip unchanged labels. Collections are always
+      // crawled since their inventories are needed by the products.
+      pc.setStateStore(stateStore);
+      pc.setInPersistanceMode(doCrawlerPersistance);
       if (policy.getDirectories().getFileFilter() != null) {
         pc.setFileFilter(policy.getDirectories().getFileFilter());
       }
@@ -187,6 +267,7 @@ public class HarvesterSearch {
         pc.setDirectoryFilter(policy.getDirectories().getDirectoryFilter());
       }
       crawlers.add(pc);
+      directoryCrawlers.add(pc);
     }
     // Crawl a PDS3 directory
     // for (String directory : policy.getPds3Directories().getPath()) {
@@ -216,15 +297,62 @@ public class HarvesterSearch {
     // }
 
 
-    // Perform crawl while looping through the crawler list if
-    // crawler persistance is disabled.
-    for (PDSProductCrawler crawler : crawlers) {
-      crawler.addActions(getDefaultCrawlerActions(policy, crawler));
-      crawler.setSearchUrl(searchUrl);
-      crawler.setIngester(ingester);
-      crawler.setCounter(this.searchDocState);
-      // crawler.setSearchDocGenerator(new SearchDocGenerator(configDir, outputDir));
-      crawler.crawl();
+    // Write the outcome of each product to a journal when asked to, rather
+    // than only counting them
+    IngestStatusJournal journal = null;
+    String journalFile = System.getProperty(IngestStatusJournal.FILE_PROP);
+    if (journalFile != null) {
+      journal = new IngestStatusJournal(new File(journalFile));
+    }
+    try {
+      // Perform crawl while looping through the crawler list if
+      // crawler persistance is disabled.
+      for (PDSProductCrawler crawler : crawlers) {
+        crawler.addActions(getDefaultCrawlerActions(policy, crawler));
+        crawler.setSearchUrl(searchUrl);
+        crawler.setIngester(ingester);
+        crawler.setCounter(this.searchDocState);
+        if (journal != null) {
+          crawler.setIngestStatusSink(journal);
+        }
+        // crawler.setSearchDocGenerator(new SearchDocGenerator(configDir, outputDir));
+        crawler.crawl();
+      }
+      if (stateStore != null) {
+        stateStore.save();
+      }
+      try {
+        ChecksumCache.getInstance().save();
+      } catch (IOException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+            "Cannot save the checksum cache: " + e.getMessage()));
+      }
+      // Keep harvesting new and modified files in the target directories
+      // until the tool is stopped.
+      if (doCrawlerPersistance && !directoryCrawlers.isEmpty()) {
+        final DirectoryWatcher watcher = new DirectoryWatcher(directoryCrawlers,
+            waitInterval);
+        watcher.setStateStore(stateStore);
+        final Thread harvestThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          public void run() {
+            watcher.stop();
+            try {
+              harvestThread.join(SHUTDOWN_WAIT);
+            } catch (InterruptedException e) {
+              // Exit anyway
+            }
+          }
+        });
+        watcher.watch();
+      }
+    } finally {
+      this.searchDocState.getIndex().close();
+      if (journal != null) {
+        journal.close();
+        log.log(new ToolsLogRecord(ToolsLevel.INFO, "Wrote the ingest status of "
+            + journal.getTotal() + " product(s) to the journal.", journal.getFile()));
+      }
     }
 
   }
@@ -64,12 +64,22 @@ public enum Flag {
   PORT("P", "port", "number", int.class, "Specify a port number to use "
       + "if running the tool in persistance mode."),
   
+  /** Flag to specify the file holding the state of previous harvests. */
+  STATE("s", "state-file", "file", String.class, "Specify a file to "
+      + "record the state of the harvested labels in. Labels that have not "
+      + "changed since they were last harvested successfully are skipped."),
+
   /** Flag to specify the target directory to harvest from
    */
   TARGET("t", "target", "dir", String.class, true, "Specify one or more target directories "
       + "containing the data files you would like to load. This will overwrite whatever "
 	  + "paths are specified in the input policy."),
 
+  /** Flag to specify the number of threads to crawl with. */
+  THREADS("T", "threads", "number", int.class, "Specify the number of "
+      + "threads to use when crawling the target directories. The default "
+      + "is 1."),
+
   /** Flag to specify the wait time in between crawls. */
   WAIT("w", "wait", "seconds", int.class, "Specify the wait time in "
       + "seconds in between crawls if running in persistance mode."),
@@ -223,6 +233,8 @@ public enum Flag {
     options.addOption(new ToolsOption(LOG));
     options.addOption(new ToolsOption(PORT));
     options.addOption(new ToolsOption(WAIT));
+    options.addOption(new ToolsOption(THREADS));
+    options.addOption(new ToolsOption(STATE));
   }
 
   /**
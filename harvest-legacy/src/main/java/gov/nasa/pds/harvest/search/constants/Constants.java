@@ -3,12 +3,12 @@ package gov.nasa.pds.harvest.search.constants;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import gov.nasa.pds.harvest.search.util.LidVid;
-import gov.nasa.pds.registry.model.ExtrinsicObject;
 
 /**
  * Class that holds constants used in Harvest.
@@ -159,13 +159,16 @@ public class Constants {
 
   public static final String URN_ILLEGAL_CHARACTERS = "[%/\\\\?#\"&<>\\[\\]^`\\{\\|\\}~]";
 
-  public static List<LidVid> nonPrimaryMembers = new ArrayList<LidVid>();
+  // The members and collections below are filled in while the
+  // collections of a bundle are registered concurrently. The collections
+  // are held as canonical files.
+  public static List<LidVid> nonPrimaryMembers =
+      Collections.synchronizedList(new ArrayList<LidVid>());
 
-  public static List<File> collections = new ArrayList<File>();
+  public static Set<File> collections = Collections.newSetFromMap(
+      new ConcurrentHashMap<File, Boolean>());
 
   public static final int DEFAULT_BATCH_MODE = 50;
 
   public static final int TITLE_MAX_LENGTH = 255;
-  
-  public static Map<String, ExtrinsicObject> collectionMap = new LinkedHashMap<String, ExtrinsicObject>();
 }
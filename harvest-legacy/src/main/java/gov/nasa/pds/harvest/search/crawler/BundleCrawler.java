@@ -1,8 +1,18 @@
 package gov.nasa.pds.harvest.search.crawler;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Logger;
 import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractorConfig;
+import gov.nasa.pds.harvest.search.inventory.InventoryBatch;
 import gov.nasa.pds.harvest.search.inventory.InventoryEntry;
 import gov.nasa.pds.harvest.search.inventory.InventoryReader;
 import gov.nasa.pds.harvest.search.inventory.InventoryReaderException;
@@ -10,9 +20,17 @@ import gov.nasa.pds.harvest.search.inventory.InventoryXMLReader;
 import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.crawler.CrawlerActionRepo;
+import gov.nasa.pds.harvest.search.util.LabelHeader;
+import gov.nasa.pds.harvest.search.util.LidVid;
 
 /**
  * A crawler class for a PDS Bundle file.
+ * <p>
+ * The member collections of the bundle are looked up among the labels in
+ * the bundle directory and the directories right below it, which is where
+ * a PDS4 bundle keeps its collection labels. When crawling with more than
+ * one thread, the collections are crawled concurrently on a work-stealing
+ * pool, so that a few large collections do not hold up the rest.
  *
  * @author mcayanan
  *
@@ -21,6 +39,12 @@ public class BundleCrawler extends CollectionCrawler {
   /** Logger object. */
   private static Logger log = Logger.getLogger(BundleCrawler.class.getName());
 
+  /** Number of inventory entries read at a time. */
+  private static final int BATCH_SIZE = 256;
+
+  /** Root element of a collection label. */
+  private static final String COLLECTION_ROOT = "Product_Collection";
+
   /**
    * Constructor.
    *
@@ -33,39 +57,194 @@ public class BundleCrawler extends CollectionCrawler {
 
   /**
    * Crawl a PDS4 bundle file. The bundle will be registered first, then
-   * the method will proceed to crawling the collection file it points to.
+   * the method will proceed to crawling the collection files it points to.
    *
    * @param bundle The PDS4 bundle file.
-   *
-   * @throws InventoryReaderException
    */
   public void crawl(File bundle) {
     //Load crawlerActions first before crawling
     CrawlerActionRepo repo = new CrawlerActionRepo();
     repo.loadActions(getActions());
     setActionRepo(repo);
-    if (bundle.canRead()) {
-      handleFile(bundle);
-    } else {
-      log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Unreadable target: "
-          + bundle));
+    try {
+      if (bundle.canRead()) {
+        handleFile(bundle);
+      } else {
+        log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Unreadable target: "
+            + bundle));
+        return;
+      }
+      List<File> collections = findCollections(bundle);
+      int numThreads = Math.min(getNumThreads(), collections.size());
+      if (numThreads > 1) {
+        crawlConcurrently(collections, numThreads);
+      } else {
+        for (File collection : collections) {
+          crawlCollection(collection);
+        }
+      }
+    } finally {
+      closeSearchDocs();
     }
+  }
+
+  /**
+   * Finds the collection labels of the members of a bundle.
+   *
+   * @param bundle The PDS4 bundle file.
+   *
+   * @return The collection labels, in the order of the bundle members.
+   */
+  private List<File> findCollections(File bundle) {
+    Set<File> collections = new LinkedHashSet<File>();
+    Map<String, File> labels = null;
     try {
       InventoryReader reader = new InventoryXMLReader(bundle);
-      for (InventoryEntry entry = new InventoryEntry(); entry != null;) {
-        if (!entry.isEmpty()) {
-          super.crawl(entry.getFile());
+      for (InventoryBatch batch = reader.getNextBatch(BATCH_SIZE);
+          batch != null; batch = reader.getNextBatch(BATCH_SIZE)) {
+        for (int i = 0; i < batch.size(); i++) {
+          InventoryEntry entry = batch.getEntry(i);
+          if (entry.getFile() != null) {
+            collections.add(canonical(entry.getFile()));
+            continue;
+          }
+          if (labels == null) {
+            labels = indexCollectionLabels(bundle.getParentFile());
+          }
+          String identifier = entry.getIdentifier().trim();
+          File collection = labels.get(identifier);
+          if (collection != null) {
+            collections.add(canonical(collection));
+          } else if (entry.getMemberStatus() != null
+              && "Secondary".equalsIgnoreCase(
+              entry.getMemberStatus().trim())) {
+            log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+                "Secondary member not found in the bundle directory: "
+                + identifier, bundle));
+          } else {
+            log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+                "Could not find the collection label of member: "
+                + identifier, bundle));
+          }
         }
-        try {
-          entry = reader.getNext();
-        } catch (InventoryReaderException ir) {
-          log.log(new ToolsLogRecord(ToolsLevel.SEVERE, ir.getMessage(),
-              bundle));
+        if (batch.getError() != null) {
+          log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+              batch.getError().getMessage(), bundle));
         }
       }
     } catch (InventoryReaderException e) {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, e.getMessage(),
           bundle));
     }
+    return new ArrayList<File>(collections);
+  }
+
+  /**
+   * Indexes the collection labels in a bundle directory and the
+   * directories right below it by their LID and LIDVID. A LID maps to the
+   * latest version found.
+   *
+   * @param directory The bundle directory.
+   *
+   * @return The collection labels, by LID and LIDVID.
+   */
+  private Map<String, File> indexCollectionLabels(File directory) {
+    Map<String, File> labels = new HashMap<String, File>();
+    Map<String, String> versions = new HashMap<String, String>();
+    List<File> candidates = new ArrayList<File>();
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return labels;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        File[] grandChildren = child.listFiles();
+        if (grandChildren != null) {
+          for (File grandChild : grandChildren) {
+            if (isXml(grandChild)) {
+              candidates.add(grandChild);
+            }
+          }
+        }
+      } else if (isXml(child)) {
+        candidates.add(child);
+      }
+    }
+    for (File candidate : candidates) {
+      LabelHeader header = null;
+      try {
+        header = LabelHeader.scan(candidate);
+      } catch (Exception e) {
+        log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+            "Not a readable label: " + e.getMessage(), candidate));
+        continue;
+      }
+      String lid = header.getLogicalIdentifier();
+      if (!COLLECTION_ROOT.equals(header.getRootElement()) || lid == null) {
+        continue;
+      }
+      lid = lid.trim();
+      String vid = header.getVersionId();
+      if (vid == null) {
+        if (!labels.containsKey(lid)) {
+          labels.put(lid, candidate);
+        }
+        continue;
+      }
+      vid = vid.trim();
+      labels.put(lid + "::" + vid, candidate);
+      String latest = versions.get(lid);
+      if (latest == null || LidVid.compareVersions(vid, latest) > 0) {
+        versions.put(lid, vid);
+        labels.put(lid, candidate);
+      }
+    }
+    return labels;
+  }
+
+  private static boolean isXml(File file) {
+    return file.isFile() && file.getName().toLowerCase().endsWith(".xml");
+  }
+
+  /**
+   * Crawls collections on a work-stealing pool, and waits for all of them
+   * to be done.
+   *
+   * @param collections The collection labels.
+   * @param numThreads The number of threads.
+   */
+  private void crawlConcurrently(List<File> collections, int numThreads) {
+    log.log(new ToolsLogRecord(ToolsLevel.INFO, "Crawling "
+        + collections.size() + " collections with " + numThreads
+        + " threads"));
+    ForkJoinPool pool = new ForkJoinPool(numThreads,
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+          public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool
+                .defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("bundle-" + thread.getPoolIndex());
+            return thread;
+          }
+        }, null, true);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (final File collection : collections) {
+      tasks.add(new Callable<Void>() {
+        public Void call() {
+          try {
+            crawlCollection(collection);
+          } catch (Throwable t) {
+            log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+                "Unexpected error while crawling the collection: "
+                + t.getMessage(), collection));
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      pool.invokeAll(tasks);
+    } finally {
+      pool.shutdown();
+    }
   }
 }
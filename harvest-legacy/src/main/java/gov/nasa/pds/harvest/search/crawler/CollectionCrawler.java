@@ -42,9 +42,23 @@ public class CollectionCrawler extends PDSProductCrawler {
     CrawlerActionRepo repo = new CrawlerActionRepo();
     repo.loadActions(getActions());
     setActionRepo(repo);
+    try {
+      crawlCollection(collection);
+    } finally {
+      closeSearchDocs();
+    }
+  }
+
+  /**
+   * Registers a PDS4 collection file with the actions already loaded. The
+   * collections of a bundle may be registered concurrently.
+   *
+   * @param collection The PDS4 Collection file.
+   */
+  protected void crawlCollection(File collection) {
     if (collection.canRead()) {
       handleFile(collection);
-      Constants.collections.add(collection);
+      Constants.collections.add(canonical(collection));
     } else {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Unreadable target: "
           + collection));
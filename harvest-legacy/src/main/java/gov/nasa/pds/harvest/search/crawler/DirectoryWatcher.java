@@ -0,0 +1,326 @@
+package gov.nasa.pds.harvest.search.crawler;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import gov.nasa.pds.harvest.search.file.ChecksumCache;
+import gov.nasa.pds.harvest.search.file.FileStateStore;
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
+
+/**
+ * Keeps harvesting the target directories of a set of crawlers after their
+ * initial crawl.
+ * <p>
+ * The directories are watched for new and modified files, which are handed
+ * to the crawler of the directory they were found in. Since file system
+ * notifications can be lost, the directories are also rescanned in full
+ * whenever nothing has been found for a while. The crawlers are expected to
+ * be in persistance mode so that a rescan only handles the files that have
+ * changed.
+ */
+public class DirectoryWatcher {
+  /** Logger object. */
+  private static Logger log = Logger.getLogger(
+      DirectoryWatcher.class.getName());
+
+  /**
+   * Time in milliseconds to wait for more events once a change has been
+   * seen, so that a file being written is handled once.
+   */
+  private static final long SETTLE_TIME = 1000;
+
+  /**
+   * Maximum time in milliseconds to keep collecting events before handling
+   * them, so that a steady stream of changes does not hold up harvesting.
+   */
+  private static final long MAX_SETTLE_TIME = 10000;
+
+  /** The crawlers to feed. */
+  private List<PDSProductCrawler> crawlers;
+
+  /** The root directory of each crawler. */
+  private Map<PDSProductCrawler, Path> roots;
+
+  /** Time in milliseconds in between full rescans. */
+  private long rescanInterval;
+
+  /** The state of harvested labels, saved after every pass. May be null. */
+  private FileStateStore stateStore;
+
+  /** Watches the directories. */
+  private WatchService watchService;
+
+  /** The directory watched by each key. */
+  private Map<WatchKey, Path> keys;
+
+  /** Set once the watcher is asked to stop. */
+  private volatile boolean stopped;
+
+  /**
+   * Constructor.
+   *
+   * @param crawlers The crawlers whose target directories to watch.
+   * @param rescanInterval Time in seconds in between full rescans.
+   *
+   * @throws IOException If the watch service could not be created.
+   */
+  public DirectoryWatcher(List<PDSProductCrawler> crawlers,
+      int rescanInterval) throws IOException {
+    this.crawlers = crawlers;
+    this.roots = new HashMap<PDSProductCrawler, Path>();
+    for (PDSProductCrawler crawler : crawlers) {
+      roots.put(crawler, new File(crawler.getProductPath())
+          .getAbsoluteFile().toPath());
+    }
+    this.rescanInterval = TimeUnit.SECONDS.toMillis(
+        Math.max(1, rescanInterval));
+    this.stateStore = null;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.keys = new HashMap<WatchKey, Path>();
+    this.stopped = false;
+  }
+
+  /**
+   * Sets the store to save after every pass.
+   *
+   * @param store The state store.
+   */
+  public void setStateStore(FileStateStore store) {
+    this.stateStore = store;
+  }
+
+  /**
+   * Watches the directories until {@link #stop()} is called.
+   *
+   * @throws IOException If the directories could not be registered.
+   */
+  public void watch() throws IOException {
+    for (PDSProductCrawler crawler : crawlers) {
+      register(roots.get(crawler), crawler.isNoRecur());
+    }
+    log.log(new ToolsLogRecord(ToolsLevel.INFO, "Watching " + keys.size()
+        + " directories for new or modified files. Rescanning every "
+        + TimeUnit.MILLISECONDS.toSeconds(rescanInterval) + " seconds."));
+    long nextRescan = System.currentTimeMillis() + rescanInterval;
+    try {
+      while (!stopped) {
+        long wait = Math.max(1, nextRescan - System.currentTimeMillis());
+        WatchKey key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+        if (key == null) {
+          rescan();
+        } else {
+          Set<Path> changed = new LinkedHashSet<Path>();
+          boolean overflow = false;
+          long settleEnd = System.currentTimeMillis() + MAX_SETTLE_TIME;
+          do {
+            overflow |= collect(key, changed);
+          } while (System.currentTimeMillis() < settleEnd
+              && (key = watchService.poll(SETTLE_TIME,
+                  TimeUnit.MILLISECONDS)) != null);
+          if (overflow) {
+            rescan();
+          } else {
+            handle(changed);
+          }
+        }
+        nextRescan = System.currentTimeMillis() + rescanInterval;
+        if (stateStore != null) {
+          stateStore.save();
+        }
+        saveChecksums();
+      }
+    } catch (ClosedWatchServiceException e) {
+      // Stopped
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stop();
+    }
+  }
+
+  /**
+   * Saves the checksums computed during the last pass.
+   */
+  private void saveChecksums() {
+    try {
+      ChecksumCache.getInstance().save();
+    } catch (IOException e) {
+      log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+          "Cannot save the checksum cache: " + e.getMessage()));
+    }
+  }
+
+  /**
+   * Stops watching the directories. A pass in progress is finished first.
+   */
+  public void stop() {
+    stopped = true;
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  /**
+   * Registers the given directory and, unless told not to, the directories
+   * below it.
+   *
+   * @param dir The directory.
+   * @param noRecur true to only register the given directory.
+   *
+   * @throws IOException If a directory could not be registered.
+   */
+  private void register(Path dir, boolean noRecur) throws IOException {
+    if (noRecur) {
+      keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+      return;
+    }
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path subdir,
+          BasicFileAttributes attrs) throws IOException {
+        keys.put(subdir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY),
+            subdir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+            "Cannot watch directory: " + e.getMessage(), file.toFile()));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Collects the files and directories reported by the given key.
+   *
+   * @param key The key.
+   * @param changed Holds the changed files and directories.
+   *
+   * @return true if events were lost.
+   */
+  private boolean collect(WatchKey key, Set<Path> changed) {
+    boolean overflow = false;
+    Path dir = keys.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW || dir == null) {
+        overflow = true;
+        continue;
+      }
+      Path child = dir.resolve((Path) event.context());
+      if (Files.isDirectory(child)) {
+        if (event.kind() == ENTRY_CREATE && !isNoRecur(child)) {
+          try {
+            register(child, false);
+            changed.add(child);
+          } catch (IOException e) {
+            log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+                "Cannot watch directory: " + e.getMessage(), child.toFile()));
+          }
+        }
+      } else if (Files.isRegularFile(child)) {
+        changed.add(child);
+      }
+    }
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+    return overflow;
+  }
+
+  /**
+   * Hands the changed files to the crawlers they belong to.
+   *
+   * @param changed The changed files and directories.
+   */
+  private void handle(Set<Path> changed) {
+    // Files in a new directory are handled by the crawl of the directory.
+    for (Iterator<Path> i = changed.iterator(); i.hasNext();) {
+      Path path = i.next();
+      for (Path parent = path.getParent(); parent != null;
+          parent = parent.getParent()) {
+        if (changed.contains(parent)) {
+          i.remove();
+          break;
+        }
+      }
+    }
+    for (PDSProductCrawler crawler : crawlers) {
+      Path root = roots.get(crawler);
+      List<File> files = new ArrayList<File>();
+      for (Path path : changed) {
+        if (path.startsWith(root)) {
+          files.add(path.toFile());
+        }
+      }
+      if (!files.isEmpty()) {
+        log.log(new ToolsLogRecord(ToolsLevel.INFO, "Found " + files.size()
+            + " new or modified files.", root.toFile()));
+        crawler.crawl(files);
+      }
+    }
+  }
+
+  /**
+   * Rescans the target directories of all the crawlers. Directories that
+   * were missed are registered along the way.
+   */
+  private void rescan() {
+    log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+        "Rescanning the target directories."));
+    for (PDSProductCrawler crawler : crawlers) {
+      try {
+        register(roots.get(crawler), crawler.isNoRecur());
+      } catch (IOException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+            "Cannot watch directory: " + e.getMessage(),
+            roots.get(crawler).toFile()));
+      }
+      crawler.crawl();
+    }
+  }
+
+  /**
+   * Determines whether the given directory lies below the root of a crawler
+   * that does not recurse.
+   *
+   * @param dir The directory.
+   *
+   * @return true if no crawler would crawl into the directory.
+   */
+  private boolean isNoRecur(Path dir) {
+    for (PDSProductCrawler crawler : crawlers) {
+      if (dir.startsWith(roots.get(crawler)) && !crawler.isNoRecur()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
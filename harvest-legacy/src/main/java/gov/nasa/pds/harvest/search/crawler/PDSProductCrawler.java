@@ -1,17 +1,21 @@
 package gov.nasa.pds.harvest.search.crawler;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import org.apache.commons.io.filefilter.AndFileFilter;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.NotFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xml.sax.SAXParseException;
 import gov.nasa.pds.harvest.search.constants.Constants;
 import gov.nasa.pds.harvest.search.crawler.actions.LidCheckerAction;
@@ -22,10 +26,12 @@ import gov.nasa.pds.harvest.search.crawler.metadata.extractor.CollectionMetExtra
 import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractor;
 import gov.nasa.pds.harvest.search.crawler.metadata.extractor.Pds4MetExtractorConfig;
 import gov.nasa.pds.harvest.search.doc.SearchDocState;
+import gov.nasa.pds.harvest.search.file.FileStateStore;
 import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.crawler.CrawlerAction;
 import gov.nasa.pds.harvest.search.oodt.crawler.CrawlerActionRepo;
+import gov.nasa.pds.harvest.search.oodt.crawler.IngestStatus;
 import gov.nasa.pds.harvest.search.oodt.crawler.ProductCrawler;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.MetExtractionException;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
@@ -33,6 +39,8 @@ import gov.nasa.pds.harvest.search.policy.DirectoryFilter;
 import gov.nasa.pds.harvest.search.policy.FileFilter;
 import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
 import gov.nasa.pds.harvest.search.util.LidVid;
+import gov.nasa.pds.harvest.search.util.LabelHeader;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 import gov.nasa.pds.harvest.search.util.XMLExtractor;
 import net.sf.saxon.trans.XPathException;
 
@@ -55,15 +63,15 @@ public class PDSProductCrawler extends ProductCrawler {
   /** A list of crawler actions to perform while crawling. */
   private List<CrawlerAction> crawlerActions;
 
-  /** Holds the product type of the file being processed. */
-  private String objectType;
-
   /** Flag for crawler persistance. */
   protected boolean inPersistanceMode;
 
   /** A map of files that were touched during crawler persistance. */
   protected Map<File, Long> touchedFiles;
 
+  /** Holds the state of the labels harvested in previous runs. */
+  private FileStateStore stateStore;
+
   private SearchDocState searchDocState;
   
   /**
@@ -81,11 +89,11 @@ public class PDSProductCrawler extends ProductCrawler {
    * what data product types to look for and what metadata to extract.
    */
   public PDSProductCrawler(Pds4MetExtractorConfig extractorConfig) {
-    this.objectType = "";
     this.metExtractorConfig = extractorConfig;
     this.crawlerActions = new ArrayList<CrawlerAction>();
     inPersistanceMode = false;
-    touchedFiles = new HashMap<File, Long>();
+    touchedFiles = new ConcurrentHashMap<File, Long>();
+    stateStore = null;
 
     String[] reqMetadata = {
         Constants.PRODUCT_VERSION,
@@ -97,6 +105,7 @@ public class PDSProductCrawler extends ProductCrawler {
     fileFilters.add(FileFilterUtils.fileFileFilter());
     fileFilters.add(new WildcardOSFilter("*"));
     FILE_FILTER = new AndFileFilter(fileFilters);
+    FILE_NAME_FILTER = TrueFileFilter.INSTANCE;
     crawlerActions.add(new LogMissingReqMetadataAction(getRequiredMetadata()));
     crawlerActions.add(new LidCheckerAction());
     crawlerActions.add(new TitleLengthCheckerAction());
@@ -119,6 +128,68 @@ public class PDSProductCrawler extends ProductCrawler {
     inPersistanceMode = value;
   }
 
+  /**
+   * Sets the store holding the state of previously harvested labels.
+   * Labels that have not changed since they were last harvested
+   * successfully are skipped.
+   *
+   * @param store The state store.
+   */
+  public void setStateStore(FileStateStore store) {
+    this.stateStore = store;
+  }
+
+  /**
+   * Handles the given product and records its state once it has been
+   * harvested successfully.
+   * <p>
+   * The state is taken on the crawl thread, as the label was when it was
+   * harvested, and is only recorded once the registry has accepted the
+   * product. A label that changed while it was being harvested, or that
+   * the registry did not accept, is not recorded, so that the next
+   * harvest picks it up again.
+   *
+   * @param product The product file.
+   *
+   * @return The ingest status of the product.
+   */
+  @Override
+  public CompletableFuture<IngestStatus> handleFile(final File product) {
+    if (stateStore == null) {
+      return super.handleFile(product);
+    }
+    long modified = product.lastModified();
+    long size = product.length();
+    CompletableFuture<IngestStatus> status = super.handleFile(product);
+    if (status.isDone() && status.join().getResult()
+        != IngestStatus.Result.SUCCESS) {
+      return status;
+    }
+    final FileStateStore.State state;
+    try {
+      state = stateStore.snapshot(product);
+    } catch (IOException e) {
+      log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+          "Could not record the state of the file: " + e.getMessage(),
+          product));
+      return status;
+    }
+    if (state.getLastModified() != modified || state.getSize() != size) {
+      log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+          "Changed while it was harvested. Its state is not recorded.",
+          product));
+      return status;
+    }
+    return status.thenApply(new Function<IngestStatus, IngestStatus>() {
+      public IngestStatus apply(IngestStatus result) {
+        if (result.getResult() == IngestStatus.Result.SUCCESS) {
+          stateStore.update(state);
+        }
+        return result;
+      }
+    });
+  }
+
   /**
    * Sets the file filter for the crawler.
    *
@@ -127,13 +198,17 @@ public class PDSProductCrawler extends ProductCrawler {
   public void setFileFilter(FileFilter filter) {
     List<IOFileFilter> filters = new ArrayList<IOFileFilter>();
     filters.add(FileFilterUtils.fileFileFilter());
+    IOFileFilter nameFilter = TrueFileFilter.INSTANCE;
     if (filter != null && !filter.getInclude().isEmpty()) {
-      filters.add(new WildcardOSFilter(filter.getInclude()));
+      nameFilter = new WildcardOSFilter(filter.getInclude());
+      filters.add(nameFilter);
     } else if (filter != null && !filter.getExclude().isEmpty()) {
-      filters.add(new NotFileFilter(new WildcardOSFilter(
-          filter.getExclude())));
+      nameFilter = new NotFileFilter(new WildcardOSFilter(
+          filter.getExclude()));
+      filters.add(nameFilter);
     }
     FILE_FILTER = new AndFileFilter(filters);
+    FILE_NAME_FILTER = nameFilter;
   }
 
   /**
@@ -144,10 +219,12 @@ public class PDSProductCrawler extends ProductCrawler {
   public void setDirectoryFilter(DirectoryFilter filter) {
     if (!filter.getExclude().isEmpty()) {
       List<IOFileFilter> dirFilters = new ArrayList<IOFileFilter>();
+      IOFileFilter nameFilter = new NotFileFilter(new WildcardOSFilter(
+          filter.getExclude()));
       dirFilters.add(FileFilterUtils.directoryFileFilter());
-      dirFilters.add(new NotFileFilter(new WildcardOSFilter(
-          filter.getExclude())));
+      dirFilters.add(nameFilter);
       DIR_FILTER = new AndFileFilter(dirFilters);
+      DIR_NAME_FILTER = nameFilter;
     }
   }
 
@@ -170,16 +247,70 @@ public class PDSProductCrawler extends ProductCrawler {
    */
   public void crawl(File dir) {
     //Load crawlerActions first before crawling
-    CrawlerActionRepo repo = new CrawlerActionRepo();
-    repo.loadActions(crawlerActions);
-    setActionRepo(repo);
+    loadCrawlerActions();
     try {
       super.crawl(dir);
     } catch (IllegalArgumentException ie) {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, ie.getMessage()));
+    } finally {
+      closeSearchDocs();
+    }
+  }
+
+  /**
+   * Crawls the given new or modified files.
+   *
+   * @param files The files to crawl.
+   */
+  public void crawl(List<File> files) {
+    loadCrawlerActions();
+    try {
+      super.crawl(files);
+    } finally {
+      closeSearchDocs();
+    }
+  }
+
+  /**
+   * Finishes the Solr document file written to during the crawl.
+   */
+  protected void closeSearchDocs() {
+    if (searchDocState != null) {
+      try {
+        searchDocState.closeWriter();
+      } catch (IOException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+            "Could not finish the Solr document file: " + e.getMessage()));
+      }
     }
   }
 
+  /**
+   * Gets the canonical form of a file, so that a label reached through
+   * different paths is recognized as the same label.
+   *
+   * @param file The file.
+   *
+   * @return The canonical file, or the absolute file if it could not be
+   * resolved.
+   */
+  protected static File canonical(File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (IOException e) {
+      return file.getAbsoluteFile();
+    }
+  }
+
+  /**
+   * Loads the crawler actions into the action repository.
+   */
+  private void loadCrawlerActions() {
+    CrawlerActionRepo repo = new CrawlerActionRepo();
+    repo.loadActions(crawlerActions);
+    setActionRepo(repo);
+  }
+
   /**
    * Adds a crawler action.
    *
@@ -212,13 +343,23 @@ public class PDSProductCrawler extends ProductCrawler {
    * Extracts metadata from the given product.
    *
    * @param product A PDS file.
+   * @param label The parsed label of the product.
    *
    * @return A Metadata object, which holds metadata from the product.
    *
    */
   @Override
-  protected Metadata getMetadataForProduct(File product) {
+  protected Metadata getMetadataForProduct(File product, ParsedLabel label) {
     Pds4MetExtractor metExtractor = null;
+    String objectType = "";
+    try {
+      objectType = label.getExtractor().getValueFromDoc(
+          Constants.coreXpathsMap.get(Constants.PRODUCT_CLASS));
+    } catch (Exception e) {
+      log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+          "Error while gathering metadata: " + e.getMessage(), product));
+      return new Metadata();
+    }
     if (objectType.equalsIgnoreCase(Constants.BUNDLE)) {
       metExtractor = new BundleMetExtractor(metExtractorConfig);
     } else if (objectType.equalsIgnoreCase(Constants.COLLECTION)) {
@@ -226,12 +367,15 @@ public class PDSProductCrawler extends ProductCrawler {
     } else {
       metExtractor = new Pds4MetExtractor(metExtractorConfig);
     }
+    long start = System.nanoTime();
     try {
-      return metExtractor.extractMetadata(product);
+      return metExtractor.extractMetadata(label);
     } catch (MetExtractionException m) {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
           "Error while gathering metadata: " + m.getMessage(), product));
       return new Metadata();
+    } finally {
+      HarvestSolrStats.extractTime.recordSince(start);
     }
   }
 
@@ -240,11 +384,12 @@ public class PDSProductCrawler extends ProductCrawler {
    * pre-conditions for the file to be registered.
    *
    * @param product A file.
+   * @param label The parsed label of the product.
    *
    * @return true if the file passes.
    */
   @Override
-  protected boolean passesPreconditions(File product) {
+  protected boolean passesPreconditions(File product, ParsedLabel label) {
     if (inPersistanceMode) {
       if (touchedFiles.containsKey(product)) {
         long lastModified = touchedFiles.get(product);
@@ -257,15 +402,38 @@ public class PDSProductCrawler extends ProductCrawler {
         touchedFiles.put(product, product.lastModified());
       }
     }
-    if (Constants.collections.contains(product)) {
+    if (!Constants.collections.isEmpty()
+        && Constants.collections.contains(canonical(product))) {
+      return false;
+    }
+    if (stateStore != null && stateStore.isUnchanged(product)) {
+      log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+          "Unchanged since the last harvest.", product));
+      HarvestSolrStats.numFilesSkipped.increment();
       return false;
     }
     log.log(new ToolsLogRecord(ToolsLevel.DEBUG, "Begin processing.", product));
+
+    // Skip labels of other object types before building their whole tree
+    LabelHeader header = label.getHeader();
+    if (header != null && header.getProductClass() != null
+        && !metExtractorConfig.hasObjectType(header.getProductClass())) {
+      if ("".equals(header.getProductClass())) {
+        log.log(new ToolsLogRecord(ToolsLevel.SKIP, "No "
+            + Constants.PRODUCT_CLASS + " element found.", product));
+      } else {
+        log.log(new ToolsLogRecord(ToolsLevel.SKIP,
+            "\'" + header.getProductClass() + "\' is not an object type" +
+            " found in the policy file.", product));
+      }
+      HarvestSolrStats.numFilesSkipped.increment();
+      return false;
+    }
+
     boolean passFlag = true;
-    objectType = "";
-    XMLExtractor extractor = new XMLExtractor();
+    XMLExtractor extractor = null;
     try {
-      extractor.parse(product);
+      extractor = label.getExtractor();
     } catch (XPathException xe) {
       if (xe.getException() instanceof SAXParseException) {
         SAXParseException spe = (SAXParseException) xe.getException();
@@ -278,31 +446,31 @@ public class PDSProductCrawler extends ProductCrawler {
       passFlag = false;
     }
     if (passFlag == false) {
-      ++HarvestSolrStats.numBadFiles;
+      HarvestSolrStats.numBadFiles.increment();
       return false;
     } else  {
       try {
-        objectType = extractor.getValueFromDoc(Constants.coreXpathsMap.get(
-            Constants.PRODUCT_CLASS));
+        String objectType = extractor.getValueFromDoc(
+            Constants.coreXpathsMap.get(Constants.PRODUCT_CLASS));
         if ("".equals(objectType)) {
           log.log(new ToolsLogRecord(ToolsLevel.SKIP, "No "
               + Constants.PRODUCT_CLASS + " element found.", product));
-          ++HarvestSolrStats.numFilesSkipped;
+          HarvestSolrStats.numFilesSkipped.increment();
           passFlag = false;
         } else if (metExtractorConfig.hasObjectType(objectType)) {
-          ++HarvestSolrStats.numGoodFiles;
+          HarvestSolrStats.numGoodFiles.increment();
           passFlag = true;
         } else {
           log.log(new ToolsLogRecord(ToolsLevel.SKIP,
               "\'" + objectType + "\' is not an object type" +
               " found in the policy file.", product));
-          ++HarvestSolrStats.numFilesSkipped;
+          HarvestSolrStats.numFilesSkipped.increment();
           passFlag = false;
         }
       } catch (Exception e) {
         log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Problem getting '"
             + Constants.PRODUCT_CLASS + "': " + e.getMessage(), product));
-        ++HarvestSolrStats.numBadFiles;
+        HarvestSolrStats.numBadFiles.increment();
         return false;
       }
     }
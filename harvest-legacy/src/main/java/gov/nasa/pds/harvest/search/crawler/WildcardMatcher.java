@@ -0,0 +1,245 @@
+package gov.nasa.pds.harvest.search.crawler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOCase;
+
+/**
+ * Matches file names against a set of wildcards, compiled once so that
+ * each name is not matched against every wildcard in turn. The wildcards
+ * follow the rules of
+ * org.apache.commons.io.FilenameUtils.wildcardMatchOnSystem(), where '?'
+ * stands for one character and '*' for any number of them, and matching is
+ * case-insensitive on Windows only.
+ * <p>
+ * The common forms of wildcard are looked up directly: exact names,
+ * extensions such as "*.xml", and literal prefixes and suffixes. Anything
+ * else is folded into one regular expression. The suffixes a name could end
+ * with are worked out once per file extension and remembered.
+ */
+public class WildcardMatcher {
+    /** Most extensions to remember the outcome of. */
+    private static final int MAX_CACHED_EXTENSIONS = 1024;
+
+    /** Whether names are matched in a case-sensitive way. */
+    private final boolean caseSensitive;
+
+    /** Whether a wildcard matches any name. */
+    private boolean matchAll;
+
+    /** Names matched exactly. */
+    private final Set<String> names;
+
+    /** Extensions, without the dot, of wildcards such as "*.xml". */
+    private final Set<String> extensions;
+
+    /** Literal suffixes of wildcards such as "*_raw.xml". */
+    private final List<String> suffixes;
+
+    /** Literal prefixes of wildcards such as "browse_*". */
+    private final List<String> prefixes;
+
+    /** The remaining wildcards, or null if there are none. */
+    private Pattern pattern;
+
+    /**
+     * Wildcards with a '*' right before a '?', which FilenameUtils matches
+     * in a way of its own, so they are left to it.
+     */
+    private final List<String> others;
+
+    /** The suffixes a name of each extension could end with. */
+    private final Map<String, String[]> suffixesByExtension;
+
+    /**
+     * Constructor that matches the way the system does.
+     *
+     * @param wildcards The wildcards.
+     */
+    public WildcardMatcher(List<String> wildcards) {
+        this(wildcards, IOCase.SYSTEM.isCaseSensitive());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param wildcards The wildcards.
+     * @param caseSensitive Whether names are matched in a case-sensitive
+     * way.
+     */
+    public WildcardMatcher(List<String> wildcards, boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        this.matchAll = false;
+        this.names = new HashSet<String>();
+        this.extensions = new HashSet<String>();
+        this.suffixes = new ArrayList<String>();
+        this.prefixes = new ArrayList<String>();
+        this.pattern = null;
+        this.others = new ArrayList<String>();
+        this.suffixesByExtension = new ConcurrentHashMap<String, String[]>();
+
+        StringBuilder regex = new StringBuilder();
+        for (String wildcard : wildcards) {
+            String wc = normalize(wildcard);
+            int first = indexOfWildcard(wc, 0);
+            if (first == -1) {
+                names.add(wc);
+            } else if (isStars(wc)) {
+                matchAll = true;
+            } else if (wc.charAt(0) == '*'
+                    && indexOfWildcard(wc, 1) == -1) {
+                String suffix = wc.substring(1);
+                if (suffix.lastIndexOf('.') == 0) {
+                    extensions.add(suffix.substring(1));
+                } else {
+                    suffixes.add(suffix);
+                }
+            } else if (first == wc.length() - 1 && wc.charAt(first) == '*') {
+                prefixes.add(wc.substring(0, first));
+            } else if (wc.contains("*?")) {
+                others.add(wc);
+            } else {
+                if (regex.length() != 0) {
+                    regex.append('|');
+                }
+                regex.append("(?:");
+                appendRegex(regex, wc);
+                regex.append(')');
+            }
+        }
+        if (regex.length() != 0) {
+            pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+
+    /**
+     * Checks to see if a file name matches one of the wildcards.
+     *
+     * @param name The file name.
+     *
+     * @return true if the name matches one of the wildcards.
+     */
+    public boolean matches(String name) {
+        if (matchAll) {
+            return true;
+        }
+        String n = normalize(name);
+        int dot = n.lastIndexOf('.');
+        String[] candidates = null;
+        if (dot != -1 && dot != n.length() - 1) {
+            String extension = n.substring(dot + 1);
+            if (extensions.contains(extension)) {
+                return true;
+            }
+            candidates = getSuffixes(extension);
+        } else if (dot != -1 && extensions.contains("")) {
+            return true;
+        }
+        if (candidates != null) {
+            for (String suffix : candidates) {
+                if (n.endsWith(suffix)) {
+                    return true;
+                }
+            }
+        } else {
+            for (String suffix : suffixes) {
+                if (n.endsWith(suffix)) {
+                    return true;
+                }
+            }
+        }
+        if (names.contains(n)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (n.startsWith(prefix)) {
+                return true;
+            }
+        }
+        if (pattern != null && pattern.matcher(n).matches()) {
+            return true;
+        }
+        for (String wc : others) {
+            if (FilenameUtils.wildcardMatch(n, wc, IOCase.SENSITIVE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the suffixes that a name with the given extension could end
+     * with, remembering them per extension.
+     *
+     * @return The suffixes.
+     */
+    private String[] getSuffixes(String extension) {
+        String[] candidates = suffixesByExtension.get(extension);
+        if (candidates == null) {
+            List<String> found = new ArrayList<String>();
+            String ending = "." + extension;
+            for (String suffix : suffixes) {
+                // A suffix with a dot ends with the extension of the name,
+                // otherwise it lies within the extension
+                if (suffix.indexOf('.') != -1 ? suffix.endsWith(ending)
+                        : extension.endsWith(suffix)) {
+                    found.add(suffix);
+                }
+            }
+            candidates = found.toArray(new String[found.size()]);
+            if (suffixesByExtension.size() >= MAX_CACHED_EXTENSIONS) {
+                return candidates;
+            }
+            suffixesByExtension.put(extension, candidates);
+        }
+        return candidates;
+    }
+
+    private String normalize(String name) {
+        return caseSensitive ? name : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static int indexOfWildcard(String wc, int from) {
+        for (int i = from; i < wc.length(); i++) {
+            char c = wc.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isStars(String wc) {
+        for (int i = 0; i < wc.length(); i++) {
+            if (wc.charAt(i) != '*') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendRegex(StringBuilder regex, String wc) {
+        int start = 0;
+        for (int i = 0; i < wc.length(); i++) {
+            char c = wc.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(wc.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < wc.length()) {
+            regex.append(Pattern.quote(wc.substring(start)));
+        }
+    }
+}
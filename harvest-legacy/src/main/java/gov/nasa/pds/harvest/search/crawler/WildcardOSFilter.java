@@ -2,10 +2,8 @@ package gov.nasa.pds.harvest.search.crawler;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.AbstractFileFilter;
 
 /**
@@ -15,7 +13,8 @@ import org.apache.commons.io.filefilter.AbstractFileFilter;
  * org.apache.commons.io.FilenameUtils.wildcardMatchOnSystem()
  * for its matching rules, which means that pattern matching using
  * this class is OS dependent (case-insensitive on Windows and
- * case-sensitive on Unix, Linux, MAC)
+ * case-sensitive on Unix, Linux, MAC). The wildcards are compiled into a
+ * {@link WildcardMatcher} when the filter is created.
  *
  * @author mcayanan
  * @version $Revision$
@@ -27,6 +26,9 @@ public class WildcardOSFilter extends AbstractFileFilter {
     /** Holds the list of filters. */
     private List<String> wildcards;
 
+    /** The compiled filters. */
+    private WildcardMatcher matcher;
+
     /**
      * Constructor for a single wildcard.
      *
@@ -39,6 +41,7 @@ public class WildcardOSFilter extends AbstractFileFilter {
 
         this.wildcards = new ArrayList<String>();
         this.wildcards.add(wc);
+        this.matcher = new WildcardMatcher(this.wildcards);
     }
 
     /**
@@ -62,6 +65,7 @@ public class WildcardOSFilter extends AbstractFileFilter {
 
         this.wildcards = new ArrayList<String>();
         this.wildcards.addAll(wc);
+        this.matcher = new WildcardMatcher(this.wildcards);
     }
 
     /**
@@ -81,14 +85,7 @@ public class WildcardOSFilter extends AbstractFileFilter {
             throw new NullPointerException("No file specified");
         }
 
-        for (Iterator<String> i = wildcards.iterator(); i.hasNext();) {
-            if (FilenameUtils.wildcardMatchOnSystem(
-                    file.getName(), i.next())) {
-                return true;
-            }
-        }
-
-        return false;
+        return matcher.matches(file.getName());
     }
 
     /**
@@ -4,7 +4,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 import javax.xml.bind.JAXBException;
@@ -42,8 +41,6 @@ public class CreateSearchDocAction extends CrawlerAction {
   
   private SearchDocGenerator generator;
   
-  private boolean cacheCollection;
-  
   private SearchDocState searchDocState;
   
   public CreateSearchDocAction(File configDir, File outputDir, SearchDocState searchDocState)
@@ -53,7 +50,6 @@ public class CreateSearchDocAction extends CrawlerAction {
     setPhases(Arrays.asList(phases));
     setId(ID);
     setDescription(DESCRIPTION);
-    this.cacheCollection = false;
     this.searchDocState = searchDocState;
   }
   
@@ -67,10 +63,6 @@ public class CreateSearchDocAction extends CrawlerAction {
           Constants.PRODUCT_VERSION).getValues().get(0);
       LOG.log(new ToolsLogRecord(ToolsLevel.SUCCESS, 
           "Successfully generated document file for " + lidvid + ".", product));
-      if (cacheCollection && "Product_Collection".equalsIgnoreCase(
-          productMetadata.getMetadata(Constants.PRODUCT_CLASS))) {
-        Constants.collectionMap.put(extrinsic.getLid(), extrinsic);
-      }
     } catch (Exception e) {
        LOG.log(new ToolsLogRecord(ToolsLevel.SEVERE, 
            "Exception generating document: " + e.getMessage(), product));
@@ -87,10 +79,12 @@ public class CreateSearchDocAction extends CrawlerAction {
    * @return A Product object.
    */
   private ExtrinsicObject createProduct(Metadata metadata, File prodFile) {
-    ExtrinsicObject product = new ExtrinsicObject();
+    final ExtrinsicObject product = new ExtrinsicObject();
     Set<Slot> slots = new HashSet<Slot>();
-    List<String> keys = metadata.getAllKeys();
-    for (String key : keys) {
+    // The entries already know their group and name, so the keys are not
+    // split again here
+    for (Metadata.Entry entry : metadata.getEntries()) {
+      String key = entry.getKey();
       if (key.equals(Constants.REFERENCES)
           || key.equals(Constants.INCLUDE_PATHS) 
           || key.equals(Constants.SLOT_METADATA)
@@ -98,49 +92,34 @@ public class CreateSearchDocAction extends CrawlerAction {
         continue;
       }
       if (key.equals(Constants.LOGICAL_ID)) {
-        product.setLid(metadata.getMetadata(Constants.LOGICAL_ID));
+        product.setLid(entry.getValue());
       } else if (key.equals(Constants.PRODUCT_VERSION)) {
         slots.add(new Slot(Constants.PRODUCT_VERSION,
-            Arrays.asList(new String[]{
-                metadata.getMetadata(Constants.PRODUCT_VERSION)}
-            )));
+            Arrays.asList(new String[]{entry.getValue()})));
       } else if (key.equals(Constants.OBJECT_TYPE)) {
-        product.setObjectType(metadata.getMetadata(
-             Constants.OBJECT_TYPE));
+        product.setObjectType(entry.getValue());
       } else if (key.equals(Constants.TITLE)) {
-        product.setName(metadata.getMetadata(Constants.TITLE));
+        product.setName(entry.getValue());
       } else if (key.startsWith(Constants.SLOT_METADATA)) {
-        slots.add(new Slot(key.split("/")[1], metadata.getAllMetadata(key)));
+        slots.add(new Slot(entry.getName(),
+            new ArrayList<String>(entry.getValues())));
       } else if (key.startsWith("file_ref")) {
-        slots.add(new Slot(key.replace("/", "_"), metadata.getAllMetadata(key)));
+        slots.add(new Slot(key.replace("/", "_"),
+            new ArrayList<String>(entry.getValues())));
       } else {
         LOG.log(new ToolsLogRecord(ToolsLevel.WARNING,
             "Creating unexpected slot: " + key, prodFile));
-        List<String> values = new ArrayList<String>();
-        if (metadata.isMultiValued(key)) {
-          values.addAll(metadata.getAllMetadata(key));
-        } else {
-          values.add(metadata.getMetadata(key));
-        }
-        slots.add(new Slot(key, values));
-      }
-      product.setSlots(slots);
-    }
-    if (LOG.getParent().getHandlers()[0].getLevel().intValue()
-        <= ToolsLevel.DEBUG.intValue()) {
-      try {
-      LOG.log(new ToolsLogRecord(ToolsLevel.DEBUG,
-        "Extrinsic object contents: \n" + Utility.toXML(product)));
-      } catch (JAXBException je) {
-        LOG.log(new ToolsLogRecord(ToolsLevel.SEVERE, je.getMessage()));
+        slots.add(new Slot(key, new ArrayList<String>(entry.getValues())));
       }
     }
+    product.setSlots(slots);
+    // Only serialized if a handler logs the record
+    LOG.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+        new ToolsLogRecord.MessageBuilder() {
+          public String build() throws JAXBException {
+            return "Extrinsic object contents: \n" + Utility.toXML(product);
+          }
+        }));
     return product;
   }
-  
-  public void setCacheCollection(boolean flag) {
-    
-  }
-  
-  
 }
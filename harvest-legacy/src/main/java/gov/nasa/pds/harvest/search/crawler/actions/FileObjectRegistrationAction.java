@@ -12,14 +12,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.xml.bind.JAXBException;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.file.ChecksumManifestIndex;
+import gov.nasa.pds.harvest.search.file.ChecksumService;
 import gov.nasa.pds.harvest.search.file.FileObject;
 import gov.nasa.pds.harvest.search.file.FileSize;
-import gov.nasa.pds.harvest.search.file.MD5Checksum;
 import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.crawler.CrawlerAction;
@@ -30,6 +32,7 @@ import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
 import gov.nasa.pds.harvest.search.policy.FileTypeMap;
 import gov.nasa.pds.harvest.search.policy.FileTypes;
 import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 import gov.nasa.pds.harvest.search.util.PointerStatementFinder;
 import gov.nasa.pds.harvest.search.util.Utility;
 import gov.nasa.pds.harvest.search.util.XMLExtractor;
@@ -71,7 +74,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
   private boolean generateChecksums;
 
   /** Represents the checksum manifest file. */
-  private Map<File, String> checksumManifest;
+  private ChecksumManifestIndex checksumManifest;
 
   /** Represents a mapping of File_Area_* element names to a
    * file type.
@@ -90,7 +93,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
       setDescription(DESCRIPTION);
       this.actions = new ArrayList<CrawlerAction>();
       this.generateChecksums = false;
-      this.checksumManifest = new HashMap<File, String>();
+      this.checksumManifest = new ChecksumManifestIndex();
       this.fileTypes = new FileTypes();
   }
 
@@ -108,10 +111,28 @@ public class FileObjectRegistrationAction extends CrawlerAction {
   @Override
   public boolean performAction(File product, Metadata metadata)
       throws CrawlerActionException {
+    return performAction(product, metadata, new ParsedLabel(product));
+  }
+
+  /**
+   * Perform the action to register the file products.
+   *
+   * @param product The file.
+   * @param metadata The metadata associated with the file.
+   * @param label The parsed label of the file.
+   *
+   * @return Always returns true.
+   *
+   * @throws CrawlerActionException If an error occurred while processing
+   * the file objects.
+   */
+  @Override
+  public boolean performAction(File product, Metadata metadata,
+      ParsedLabel label) throws CrawlerActionException {
     List<FileObject> fileObjectEntries = new ArrayList<FileObject>();
     try {
       if (product.toString().toUpperCase().endsWith(".XML")) {
-        fileObjectEntries = getPds4FileObjects(product);
+        fileObjectEntries = getPds4FileObjects(product, label);
       } else {
         fileObjectEntries = getPds3FileObjects(product,
             metadata.getAllMetadata(Constants.INCLUDE_PATHS));
@@ -154,7 +175,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
             ExceptionUtils.getRootCauseMessage(e),
             product));
         e.printStackTrace();
-        ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+        HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
         throw new CrawlerActionException(e.getMessage());
       }
     }
@@ -182,51 +203,41 @@ public class FileObjectRegistrationAction extends CrawlerAction {
    * @return A Product object.
    */
   private ExtrinsicObject createProduct(Metadata metadata, File prodFile) {
-    ExtrinsicObject product = new ExtrinsicObject();
+    final ExtrinsicObject product = new ExtrinsicObject();
     Set<Slot> slots = new HashSet<Slot>();
-    List<String> keys = metadata.getAllKeys();
-    for (String key : keys) {
+    for (Metadata.Entry entry : metadata.getEntries()) {
+      String key = entry.getKey();
       if (key.equals(Constants.REFERENCES)
           || key.equals(Constants.INCLUDE_PATHS) || key.equals(Constants.SLOT_METADATA)) {
         continue;
       }
       if (key.equals(Constants.LOGICAL_ID)) {
-        product.setLid(metadata.getMetadata(Constants.LOGICAL_ID));
+        product.setLid(entry.getValue());
       } else if (key.equals(Constants.PRODUCT_VERSION)) {
         slots.add(new Slot(Constants.PRODUCT_VERSION,
-            Arrays.asList(new String[]{
-                metadata.getMetadata(Constants.PRODUCT_VERSION)}
-            )));
+            Arrays.asList(new String[]{entry.getValue()})));
       } else if (key.equals(Constants.OBJECT_TYPE)) {
-        product.setObjectType(metadata.getMetadata(
-             Constants.OBJECT_TYPE));
+        product.setObjectType(entry.getValue());
       } else if (key.equals(Constants.TITLE)) {
-        product.setName(metadata.getMetadata(Constants.TITLE));
+        product.setName(entry.getValue());
       } else if (key.startsWith(Constants.SLOT_METADATA)) {
-        slots.add(new Slot(key.split("/")[1], metadata.getAllMetadata(key)));
+        slots.add(new Slot(entry.getName(),
+            new ArrayList<String>(entry.getValues())));
       } else {
         log.log(new ToolsLogRecord(ToolsLevel.WARNING,
             "Creating unexpected slot: " + key, prodFile));
-        List<String> values = new ArrayList<String>();
-        if (metadata.isMultiValued(key)) {
-          values.addAll(metadata.getAllMetadata(key));
-        } else {
-          values.add(metadata.getMetadata(key));
-        }
-        slots.add(new Slot(key, values));
+        slots.add(new Slot(key, new ArrayList<String>(entry.getValues())));
       }
-      product.setSlots(slots);
     }
+    product.setSlots(slots);
   
-    if (log.getParent().getHandlers()[0].getLevel().intValue()
-        <= ToolsLevel.DEBUG.intValue()) {
-      try {
-      log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
-        "Extrinsic object contents: \n" + Utility.toXML(product)));
-      } catch (JAXBException je) {
-        log.log(new ToolsLogRecord(ToolsLevel.SEVERE, je.getMessage()));
-      }
-    }
+    // Only serialized if a handler logs the record
+    log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
+        new ToolsLogRecord.MessageBuilder() {
+          public String build() throws JAXBException {
+            return "Extrinsic object contents: \n" + Utility.toXML(product);
+          }
+        }));
     return product;
   }
   
@@ -316,18 +327,22 @@ public class FileObjectRegistrationAction extends CrawlerAction {
   }
   
   
-  private List<FileObject> getPds4FileObjects(File product)
+  private List<FileObject> getPds4FileObjects(File product, ParsedLabel label)
   throws Exception {
     SimpleDateFormat format = new SimpleDateFormat(
         "yyyy-MM-dd'T'HH:mm:ss.SSSS'Z'");
     List<FileObject> results = new ArrayList<FileObject>();
+    // Checksums of the files of the product are computed concurrently
+    // and picked up as each file object is created.
+    Map<File, Future<String>> pending = new HashMap<File, Future<String>>();
+    submitChecksum(product, pending);
     // Create a file object of the label file
     String lastModified = format.format(new Date(product.lastModified()));
     try {
       log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
           "Capturing file information "
           + "for " + product.getName(), product));
-      String checksum = handleChecksum(product, product);
+      String checksum = handleChecksum(product, product, "", pending);
       FileObject fileObject = new FileObject(product.getName(),
           product.getParent(),
           new FileSize(product.length(), Constants.BYTE),
@@ -337,17 +352,27 @@ public class FileObjectRegistrationAction extends CrawlerAction {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Error "
           + "occurred while generating checksum for " + product.getName()
           + ": " + e.getMessage(), product.toString()));
-      ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+      HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
     }
-    XMLExtractor extractor = new XMLExtractor();
+    XMLExtractor extractor = null;
     try {
-      extractor.parse(product);
+      extractor = label.getExtractor();
     } catch (Exception e) {
       throw new Exception("Parse failure: " + e.getMessage());
     }
     // Search for "xml:base" attributes within the merged XML. This will
     // tell us if there are any xincludes.
     List<String> xincludes = extractor.getAttributeValuesFromDoc("//@xml:base");
+    // Search for File_Area_*/File tags within the product label
+    List<TinyElementImpl> fileObjects = extractor.getNodesFromDoc(
+        Constants.coreXpathsMap.get(Constants.FILE_OBJECTS));
+    for (TinyElementImpl file : fileObjects) {
+      try {
+        submitChecksum(getFileObjectFile(product, extractor, file), pending);
+      } catch (Exception e) {
+        // Reported when the file object is created
+      }
+    }
     for (String xinclude : xincludes) {
       File xincludeFile = new File(product.getParent(), xinclude).getCanonicalFile();
       log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
@@ -356,7 +381,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
       try {
         if (xincludeFile.exists()) {
           String lastMod = format.format(new Date(xincludeFile.lastModified()));
-          String checksum = handleChecksum(xincludeFile, product);
+          String checksum = handleChecksum(xincludeFile, product, "", pending);
           FileObject fileObject = new FileObject(xincludeFile.getName(),
             xincludeFile.getParent(),
             new FileSize(xincludeFile.length(), Constants.BYTE),
@@ -365,18 +390,15 @@ public class FileObjectRegistrationAction extends CrawlerAction {
         } else {
           log.log(new ToolsLogRecord(ToolsLevel.WARNING, "File object does "
               + "not exist: " + xincludeFile, product));
-          ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+          HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
         }
       } catch (Exception e) {
         log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Error "
             + "occurred while generating checksum for " + xincludeFile.getName()
             + ": " + e.getMessage(), product.toString()));
-        ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+        HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
       }
     }
-    // Search for File_Area_*/File tags within the product label
-    List<TinyElementImpl> fileObjects = extractor.getNodesFromDoc(
-        Constants.coreXpathsMap.get(Constants.FILE_OBJECTS));
     for (TinyElementImpl file : fileObjects) {
       String fileType = "";
       NodeInfo parent = file.getParent();
@@ -429,11 +451,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
             creationDateTime = format.format(new Date(f.lastModified()));
           }
           try {
-            if (!checksum.isEmpty()) {
-              checksum = handleChecksum(product, f, checksum);
-            } else {
-              checksum = handleChecksum(product, f);
-            }
+            checksum = handleChecksum(product, f, checksum, pending);
           } catch (Exception e) {
             log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Error "
                 + "occurred while calculating checksum for '" + name + "': "
@@ -459,7 +477,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
               fileType));
         }
       } catch (Exception e) {
-        ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+        HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
         //Ignore
       }
     }
@@ -483,7 +501,7 @@ public class FileObjectRegistrationAction extends CrawlerAction {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Error "
           + "occurred while calculating checksum for " + product.getName() + ": " + e.getMessage(),
           product.toString()));
-      ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+      HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
     }
     Label label = null;
     try {
@@ -517,22 +535,62 @@ public class FileObjectRegistrationAction extends CrawlerAction {
           } else {
             log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
                 "File object not " + "found: " + fileRef.getPath(), product.toString()));
-            ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+            HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
           }
         } catch (Exception e) {
           log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
               "Error occurred " + "while calculating checksum for " + file.getName() + ": ",
               product));
-          ++HarvestSolrStats.numAncillaryProductsNotRegistered;
+          HarvestSolrStats.numAncillaryProductsNotRegistered.increment();
         }
       }
     }
     return results;
   }
 
+  /**
+   * Gets the file a File area of a product label points to.
+   *
+   * @param product The product label.
+   * @param extractor The extractor of the product label.
+   * @param file The File area.
+   *
+   * @return The file, or null if the area has no file name.
+   *
+   * @throws Exception If the File area could not be read.
+   */
+  private File getFileObjectFile(File product, XMLExtractor extractor,
+      TinyElementImpl file) throws Exception {
+    String fileLocation = product.getParent();
+    String name = "";
+    for (TinyElementImpl child : extractor.getNodesFromItem("*", file)) {
+      if ("file_name".equals(child.getLocalPart())) {
+        name = child.getStringValue();
+      } else if ("directory_path_name".equals(child.getLocalPart())) {
+        fileLocation = new File(fileLocation, child.getStringValue())
+        .toString();
+      }
+    }
+    return name.isEmpty() ? null : new File(fileLocation, name);
+  }
+
+  /**
+   * Starts computing the checksum of the given file if checksums are
+   * generated.
+   *
+   * @param file The file. Can be null.
+   * @param pending Checksums being computed, keyed by file.
+   */
+  private void submitChecksum(File file, Map<File, Future<String>> pending) {
+    if (generateChecksums && file != null && !pending.containsKey(file)
+        && file.isFile()) {
+      pending.put(file, ChecksumService.getInstance().submit(file));
+    }
+  }
+
   private String handleChecksum(File product, File fileObject)
   throws Exception {
-    return handleChecksum(product, fileObject, "");
+    return handleChecksum(product, fileObject, "", null);
   }
 
   /**
@@ -542,6 +600,8 @@ public class FileObjectRegistrationAction extends CrawlerAction {
    * @param fileObject The associated file object.
    * @param checksumInLabel Supplied checksum in the label. Can pass in
    * an empty value.
+   * @param pending Checksums already being computed, keyed by file. Can be
+   * null.
    *
    * @return The resulting checksum. This will either be the generated value,
    * the value from the manifest file (if supplied), or the value from the
@@ -551,12 +611,15 @@ public class FileObjectRegistrationAction extends CrawlerAction {
    *  (if the flag was on)
    */
   private String handleChecksum(File product, File fileObject,
-      String checksumInLabel)
+      String checksumInLabel, Map<File, Future<String>> pending)
   throws Exception {
     String result = "";
     if (generateChecksums) {
-      String generatedChecksum = MD5Checksum.getMD5Checksum(
-          fileObject.toString());
+      Future<String> checksum = (pending != null) ? pending.get(fileObject)
+          : null;
+      String generatedChecksum = (checksum != null)
+          ? ChecksumService.get(checksum)
+          : ChecksumService.getInstance().compute(fileObject);
       if (!checksumManifest.isEmpty()) {
         if (checksumManifest.containsKey(fileObject)) {
           String suppliedChecksum = checksumManifest.get(fileObject);
@@ -566,20 +629,20 @@ public class FileObjectRegistrationAction extends CrawlerAction {
               + "' does not match supplied checksum '"
               + suppliedChecksum + "' in the manifest for file object '"
               + fileObject.toString() + "'.", product));
-            ++HarvestSolrStats.numGeneratedChecksumsDiffInManifest;
+            HarvestSolrStats.numGeneratedChecksumsDiffInManifest.increment();
           } else {
             log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
               "Generated checksum '" + generatedChecksum
               + "' matches the supplied checksum '" + suppliedChecksum
               + "' in the manifest for file object '" + fileObject.toString()
               + "'.", product));
-            ++HarvestSolrStats.numGeneratedChecksumsSameInManifest;
+            HarvestSolrStats.numGeneratedChecksumsSameInManifest.increment();
           }
         } else {
           log.log(new ToolsLogRecord(ToolsLevel.WARNING,
               "No checksum found in the manifest for file object '"
               + fileObject.toString() + "'.", product));
-          ++HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest;
+          HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest.increment();
         }
       }
       if (!checksumInLabel.isEmpty()) {
@@ -589,20 +652,20 @@ public class FileObjectRegistrationAction extends CrawlerAction {
               + "' does not match supplied checksum '"
               + checksumInLabel + "' in the product label for file object '"
               + fileObject.toString() + "'.", product));
-            ++HarvestSolrStats.numGeneratedChecksumsDiffInLabel;
+            HarvestSolrStats.numGeneratedChecksumsDiffInLabel.increment();
         } else {
           log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
               "Generated checksum '" + generatedChecksum
               + "' matches the supplied checksum '" + checksumInLabel
               + "' in the product label for file object '"
               + fileObject.toString() + "'.", product));
-            ++HarvestSolrStats.numGeneratedChecksumsSameInLabel;
+            HarvestSolrStats.numGeneratedChecksumsSameInLabel.increment();
         }
       } else {
         log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
             "No checksum to compare against in the product label "
             + "for file object '" + fileObject.toString() + "'.", product));
-        ++HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel;
+        HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel.increment();
       }
       result = generatedChecksum;
     } else {
@@ -620,21 +683,21 @@ public class FileObjectRegistrationAction extends CrawlerAction {
                   + "' does not match the checksum in the product label '"
                   + checksumInLabel + "' for file object '"
                   + fileObject.toString() + "'.", product));
-                ++HarvestSolrStats.numManifestChecksumsDiffInLabel;
+                HarvestSolrStats.numManifestChecksumsDiffInLabel.increment();
             } else {
               log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
                   "Checksum in the manifest '" + suppliedChecksum
                   + "' matches the checksum in the product label '"
                   + checksumInLabel + "' for file object '"
                   + fileObject.toString() + "'.", product));
-                ++HarvestSolrStats.numManifestChecksumsSameInLabel;
+                HarvestSolrStats.numManifestChecksumsSameInLabel.increment();
             }
           } else {
             log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
                 "No checksum to compare against in the product label "
                 + "for file object '"
                 + fileObject.toString() + "'.", product));
-            ++HarvestSolrStats.numManifestChecksumsNotCheckedInLabel;
+            HarvestSolrStats.numManifestChecksumsNotCheckedInLabel.increment();
           }
           result = suppliedChecksum;
         } else {
@@ -680,11 +743,11 @@ public class FileObjectRegistrationAction extends CrawlerAction {
   }
 
   /**
-   * Set the map to represent the checksum manifest file.
+   * Set the index to represent the checksum manifest file.
    *
-   * @param manifest A mapping of file objects to checksums.
+   * @param manifest An index of file objects to checksums.
    */
-  public void setChecksumManifest(Map<File, String> manifest) {
+  public void setChecksumManifest(ChecksumManifestIndex manifest) {
     this.checksumManifest = manifest;
   }
 
@@ -12,6 +12,7 @@ import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.MetExtractionException;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 import gov.nasa.pds.registry.model.Slot;
 import net.sf.saxon.tree.tiny.TinyElementImpl;
 
@@ -38,12 +39,14 @@ public class BundleMetExtractor extends Pds4MetExtractor {
   /**
    * Extract the metadata.
    *
-   * @param product A PDS4 collection file
+   * @param label A PDS4 bundle file, possibly already parsed
    * @return a class representation of the extracted metadata
    *
    */
-  public Metadata extractMetadata(File product)
+  @Override
+  public Metadata extractMetadata(ParsedLabel label)
   throws MetExtractionException {
+    File product = label.getFile();
     Metadata metadata = new Metadata();
     String objectType = "";
     String logicalID = "";
@@ -52,7 +55,7 @@ public class BundleMetExtractor extends Pds4MetExtractor {
     List<TinyElementImpl> references = new ArrayList<TinyElementImpl>();
     List<Slot> slots = new ArrayList<Slot>();
     try {
-      extractor.parse(product);
+      extractor = label.getExtractor();
     } catch (Exception e) {
       throw new MetExtractionException("Parse failure: " + e.getMessage());
     }
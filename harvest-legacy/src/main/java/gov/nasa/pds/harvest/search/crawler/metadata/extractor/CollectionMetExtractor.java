@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.inventory.InventoryBatch;
 import gov.nasa.pds.harvest.search.inventory.InventoryEntry;
 import gov.nasa.pds.harvest.search.inventory.InventoryReaderException;
 import gov.nasa.pds.harvest.search.inventory.InventoryTableReader;
@@ -16,6 +17,7 @@ import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.MetExtractionException;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
 import gov.nasa.pds.harvest.search.util.LidVid;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 import gov.nasa.pds.registry.model.Slot;
 import net.sf.saxon.tree.tiny.TinyElementImpl;
 
@@ -46,12 +48,14 @@ public class CollectionMetExtractor extends Pds4MetExtractor {
   /**
    * Extract the metadata
    *
-   * @param product A PDS4 collection file
+   * @param label A PDS4 collection file, possibly already parsed
    * @return a class representation of the extracted metadata
    *
    */
-  public Metadata extractMetadata(File product)
+  @Override
+  public Metadata extractMetadata(ParsedLabel label)
   throws MetExtractionException {
+    File product = label.getFile();
     Metadata metadata = new Metadata();
     String objectType = "";
     String logicalID = "";
@@ -62,7 +66,7 @@ public class CollectionMetExtractor extends Pds4MetExtractor {
     List<TinyElementImpl> references = new ArrayList<TinyElementImpl>();
     List<Slot> slots = new ArrayList<Slot>();
     try {
-      extractor.parse(product);
+      extractor = label.getExtractor();
     } catch (Exception e) {
       throw new MetExtractionException("Parse failure: " + e.getMessage());
     }
@@ -134,18 +138,20 @@ public class CollectionMetExtractor extends Pds4MetExtractor {
       throw new MetExtractionException(e.getMessage());
     }
     try {
-      InventoryTableReader reader = new InventoryTableReader(product);
-      for (InventoryEntry entry = new InventoryEntry(); entry != null;) {
-        if (!entry.isEmpty()) {
+      InventoryTableReader reader = new InventoryTableReader(product, extractor);
+      for (InventoryBatch batch : reader.readAll()) {
+        for (int i = 0; i < batch.size(); i++) {
+          InventoryEntry entry = batch.getEntry(i);
           ReferenceEntry re = new ReferenceEntry();
-          re.setLineNumber(reader.getLineNumber());
+          re.setLineNumber(batch.getLineNumber(i));
           re.setFile(reader.getDataFile());
           String identifier = entry.getIdentifier();
           if (!identifier.equals("")) {
             //Check for a LID or LIDVID
             if (identifier.indexOf("::") != -1) {
-              re.setLogicalID(identifier.split("::")[0]);
-              re.setVersion(identifier.split("::")[1]);
+              String[] lidvid = identifier.split("::");
+              re.setLogicalID(lidvid[0]);
+              re.setVersion(lidvid[1]);
             } else {
               re.setLogicalID(identifier);
             }
@@ -157,7 +163,9 @@ public class CollectionMetExtractor extends Pds4MetExtractor {
                 re.getVersion()));
           }
         }
-        entry = reader.getNext();
+        if (batch.getError() != null) {
+          throw batch.getError();
+        }
       }
       if (refEntries.size() == 0) {
         log.log(new ToolsLogRecord(ToolsLevel.DEBUG,
@@ -19,6 +19,7 @@ import gov.nasa.pds.harvest.search.oodt.metadata.MetExtractorConfig;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
 import gov.nasa.pds.harvest.search.policy.XPath;
 import gov.nasa.pds.harvest.search.util.LidVid;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 import gov.nasa.pds.harvest.search.util.XMLExtractor;
 import gov.nasa.pds.registry.model.Slot;
 import net.sf.saxon.tree.tiny.TinyElementImpl;
@@ -62,6 +63,21 @@ public class Pds4MetExtractor implements MetExtractor {
    */
   public Metadata extractMetadata(File product)
   throws MetExtractionException {
+    return extractMetadata(new ParsedLabel(product));
+  }
+
+  /**
+   * Extract the metadata from a label that may already have been parsed.
+   *
+   * @param label The PDS4 xml file, possibly already parsed.
+   * @return a class representation of the extracted metadata
+   *
+   * @throws MetExtractionException If an error occurred while performing metadata extraction.
+   *
+   */
+  public Metadata extractMetadata(ParsedLabel label)
+  throws MetExtractionException {
+    File product = label.getFile();
     Metadata metadata = new Metadata();
     String objectType = "";
     String logicalID = "";
@@ -71,7 +87,7 @@ public class Pds4MetExtractor implements MetExtractor {
     List<TinyElementImpl> dataClasses = new ArrayList<TinyElementImpl>();
     List<Slot> slots = new ArrayList<Slot>();
     try {
-      extractor.parse(product);
+      extractor = label.getExtractor();
     } catch (Exception e) {
       throw new MetExtractionException("Parse failure: "
           + e.getMessage());
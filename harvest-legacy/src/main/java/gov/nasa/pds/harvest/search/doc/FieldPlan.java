@@ -0,0 +1,262 @@
+package gov.nasa.pds.harvest.search.doc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import gov.nasa.pds.search.core.exception.SearchCoreException;
+import gov.nasa.pds.search.core.schema.Field;
+import gov.nasa.pds.search.core.schema.OutputString;
+import gov.nasa.pds.search.core.schema.OutputStringFormat;
+import gov.nasa.pds.search.core.schema.Product;
+
+
+/**
+ * The index fields of a search configuration, compiled once when the
+ * configuration is loaded so that generating a document only has to look
+ * up values.
+ *
+ * Registry paths are split into their dot-connected segments, output
+ * string templates are split into text and keys, and the field types are
+ * gathered into the type map handed to the document writer.
+ */
+public class FieldPlan
+{
+	private final List<Step> steps;
+	private final Map<String, String> typeMap;
+
+
+	private FieldPlan(List<Step> steps, Map<String, String> typeMap)
+	{
+		this.steps = steps;
+		this.typeMap = typeMap;
+	}
+
+
+	/**
+	 * Compile the index fields of a search configuration.
+	 *
+	 * @param config The search configuration.
+	 * @return The plan.
+	 * @throws SearchCoreException If an output string template is malformed.
+	 */
+	public static FieldPlan compile(Product config) throws SearchCoreException
+	{
+		List<Step> steps = new ArrayList<Step>();
+		Map<String, String> typeMap = new HashMap<String, String>();
+
+		for(Field field: config.getIndexFields().getField())
+		{
+			List<Path> paths = new ArrayList<Path>();
+			for(String registryPath: field.getRegistryPath())
+			{
+				paths.add(new Path(registryPath));
+			}
+
+			Template template = null;
+			if(field.getOutputString() != null)
+			{
+				template = new Template(field.getName(), field.getOutputString());
+			}
+
+			steps.add(new Step(field.getName(), paths, template, field.getDefault()));
+			typeMap.put(field.getName(), field.getType().value());
+		}
+		typeMap.put("package_id", "string");
+
+		return new FieldPlan(Collections.unmodifiableList(steps),
+				Collections.unmodifiableMap(typeMap));
+	}
+
+
+	/**
+	 * @return The fields to generate, in configuration order.
+	 */
+	public List<Step> getSteps()
+	{
+		return steps;
+	}
+
+
+	/**
+	 * @return The type of each field, including the package ID.
+	 */
+	public Map<String, String> getTypeMap()
+	{
+		return typeMap;
+	}
+
+
+	/**
+	 * An index field.
+	 */
+	public static class Step
+	{
+		private final String name;
+		private final List<Path> paths;
+		private final Template template;
+		private final String defaultValue;
+
+
+		private Step(String name, List<Path> paths, Template template, String defaultValue)
+		{
+			this.name = name;
+			this.paths = Collections.unmodifiableList(paths);
+			this.template = template;
+			this.defaultValue = defaultValue;
+		}
+
+
+		public String getName()
+		{
+			return name;
+		}
+
+
+		/**
+		 * @return The registry paths to take values from, tried as an OR.
+		 */
+		public List<Path> getPaths()
+		{
+			return paths;
+		}
+
+
+		/**
+		 * @return The output string template, or null if there is none.
+		 */
+		public Template getTemplate()
+		{
+			return template;
+		}
+
+
+		/**
+		 * @return The default value, or null if there is none.
+		 */
+		public String getDefault()
+		{
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * A registry path. A path of more than one segment is an association
+	 * to traverse, a path of one segment is a slot.
+	 */
+	public static class Path
+	{
+		private final String text;
+		private final String[] segments;
+
+
+		private Path(String text)
+		{
+			this.text = text;
+			this.segments = text.split("\\.");
+		}
+
+
+		/**
+		 * @return The dot-connected path, as configured.
+		 */
+		public String getText()
+		{
+			return text;
+		}
+
+
+		public int getLength()
+		{
+			return segments.length;
+		}
+
+
+		public String getSegment(int index)
+		{
+			return segments[index];
+		}
+	}
+
+
+	/**
+	 * An output string template, such as "{lid}::{vid}". The text around
+	 * the keys is kept as is, and each key is replaced with the first value
+	 * of the registry path it names.
+	 */
+	public static class Template
+	{
+		private final String[] texts;
+		private final Path[] keys;
+		private final boolean url;
+
+
+		private Template(String fieldName, OutputString outputString) throws SearchCoreException
+		{
+			String str = outputString.getValue();
+			List<String> texts = new ArrayList<String>();
+			List<Path> keys = new ArrayList<Path>();
+
+			int pos = 0;
+			int start;
+			while((start = str.indexOf('{', pos)) != -1)
+			{
+				int end = str.indexOf('}', start);
+				if(end == -1)
+				{
+					throw new SearchCoreException("Missing '}' in the output string of field "
+							+ fieldName + ": " + str);
+				}
+				texts.add(str.substring(pos, start));
+				keys.add(new Path(str.substring(start + 1, end)));
+				pos = end + 1;
+			}
+			texts.add(str.substring(pos));
+
+			this.texts = texts.toArray(new String[texts.size()]);
+			this.keys = keys.toArray(new Path[keys.size()]);
+			this.url = OutputStringFormat.URL.equals(outputString.getFormat());
+		}
+
+
+		/**
+		 * @return The number of keys.
+		 */
+		public int getKeyCount()
+		{
+			return keys.length;
+		}
+
+
+		/**
+		 * @param index Index of the key.
+		 * @return The registry path of the key.
+		 */
+		public Path getKey(int index)
+		{
+			return keys[index];
+		}
+
+
+		/**
+		 * @param index Index of the text, from 0 up to the number of keys.
+		 * @return The text before the key of the same index, or after the
+		 * last key.
+		 */
+		public String getText(int index)
+		{
+			return texts[index];
+		}
+
+
+		/**
+		 * @return True if the values of the keys must be URL encoded.
+		 */
+		public boolean isUrl()
+		{
+			return url;
+		}
+	}
+}
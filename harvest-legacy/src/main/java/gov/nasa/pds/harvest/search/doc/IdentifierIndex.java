@@ -0,0 +1,467 @@
+package gov.nasa.pds.harvest.search.doc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import gov.nasa.pds.harvest.search.constants.Constants;
+import gov.nasa.pds.harvest.search.file.PathHash;
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
+import gov.nasa.pds.harvest.search.util.LidVid;
+import gov.nasa.pds.registry.model.ExtrinsicObject;
+import gov.nasa.pds.registry.model.Slot;
+import gov.nasa.pds.registry.model.wrapper.RegistryAttributeWrapper;
+
+/**
+ * An index of the products harvested so far, mapping the LID of each
+ * product to its highest version, along with the few slots that the
+ * registry paths of the search configurations read through a reference.
+ * This lets a reference by LID be turned into a LIDVID, and a reference
+ * path such as "collection_ref.collection_name" be followed, for any
+ * product type harvested earlier in the run.
+ * <p>
+ * The table itself is two arrays of longs, holding a hash of each LID and
+ * where its record is. The records are kept outside the Java heap, in
+ * direct buffers, up to the number of megabytes set by the
+ * {@value #MEMORY_PROP} Java property. Records past that are written to a
+ * temporary file. A record is never changed, so a newer version of a
+ * product adds a record and leaves the old one unused.
+ */
+public class IdentifierIndex {
+
+  /**
+   * Java property to set the megabytes of records to keep in memory
+   * before writing them to disk.
+   */
+  public static final String MEMORY_PROP = "pds.harvest.index.memory";
+
+  /** Default megabytes of records kept in memory. */
+  public static final int DEFAULT_MEMORY = 64;
+
+  private static Logger LOG = Logger.getLogger(IdentifierIndex.class.getName());
+
+  /** Size of each buffer of records. */
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  /** Set on the location of a record that is in the file. */
+  private static final long ON_DISK = 1L << 62;
+
+  /** Number of bytes of records allowed in memory. */
+  private final long memoryLimit;
+
+  /** Hash of the LID in each table slot. */
+  private long[] hashes;
+
+  /** Location of the record in each table slot, plus one, or 0 if empty. */
+  private long[] locations;
+
+  /** Number of LIDs in the table. */
+  private int size;
+
+  /** The buffers of records kept in memory. */
+  private final List<ByteBuffer> chunks;
+
+  /** Bytes of buffers allocated so far. */
+  private long allocated;
+
+  /** The file of records past the memory limit, or null if none yet. */
+  private File spillFile;
+
+  /** Reads and writes the file of records. */
+  private FileChannel spill;
+
+  /** Length of the file of records. */
+  private long spillSize;
+
+  /**
+   * Constructor that takes the memory limit from the Java property.
+   */
+  public IdentifierIndex() {
+    this(Integer.getInteger(MEMORY_PROP, DEFAULT_MEMORY) * 1024L * 1024L);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param memoryLimit Bytes of records to keep in memory before writing
+   * them to disk.
+   */
+  public IdentifierIndex(long memoryLimit) {
+    this.memoryLimit = memoryLimit;
+    this.hashes = new long[1024];
+    this.locations = new long[1024];
+    this.size = 0;
+    this.chunks = new ArrayList<ByteBuffer>();
+    this.allocated = 0;
+    this.spillFile = null;
+    this.spill = null;
+    this.spillSize = 0;
+  }
+
+  /**
+   * Adds a product, unless a higher version of it is already in the
+   * index.
+   *
+   * @param product The product.
+   * @param projectedSlots The names of the slots to keep along with the
+   * version. A name that is not a slot of the product may be one of its
+   * attributes, such as "name".
+   *
+   * @throws IOException If the record could not be written to disk.
+   */
+  public void add(ExtrinsicObject product, Collection<String> projectedSlots)
+      throws IOException {
+    String lid = product.getLid();
+    Slot version = product.getSlot(Constants.PRODUCT_VERSION);
+    if (lid == null || version == null || version.getValues() == null
+        || version.getValues().isEmpty()) {
+      return;
+    }
+    String vid = version.getValues().get(0);
+    List<Slot> slots = new ArrayList<Slot>();
+    for (String name : projectedSlots) {
+      Slot slot = product.getSlot(name);
+      if (slot != null) {
+        slots.add(slot);
+      } else {
+        RegistryAttributeWrapper attribute = RegistryAttributeWrapper.get(name);
+        if (attribute != null) {
+          String value = attribute.getValueFromExtrinsic(product);
+          if (value != null) {
+            slots.add(new Slot(name, Arrays.asList(value)));
+          }
+        }
+      }
+    }
+    add(lid, vid, slots);
+  }
+
+  /**
+   * Adds a product, unless a higher version of it is already in the
+   * index.
+   *
+   * @param lid The LID.
+   * @param vid The version.
+   * @param slots The slots to keep along with the version.
+   *
+   * @throws IOException If the record could not be written to disk.
+   */
+  public synchronized void add(String lid, String vid, List<Slot> slots)
+      throws IOException {
+    long hash = PathHash.of(lid);
+    int index = find(lid, hash);
+    if (locations[index] != 0) {
+      Record current = read(locations[index] - 1);
+      if (LidVid.compareVersions(vid, current.vid) < 0) {
+        return;
+      }
+    }
+    long location = write(encode(lid, vid, slots));
+    if (locations[index] == 0) {
+      hashes[index] = hash;
+      size++;
+    }
+    locations[index] = location + 1;
+    if (size * 2 > hashes.length) {
+      grow();
+    }
+  }
+
+  /**
+   * Gets the highest version of a product.
+   *
+   * @param lid The LID.
+   *
+   * @return The version, or null if the product is not in the index.
+   *
+   * @throws IOException If the record could not be read from disk.
+   */
+  public synchronized String getVersion(String lid) throws IOException {
+    int index = find(lid, PathHash.of(lid));
+    return locations[index] == 0 ? null : read(locations[index] - 1).vid;
+  }
+
+  /**
+   * Gets the LIDVID of the highest version of a product.
+   *
+   * @param lid The LID.
+   *
+   * @return The LIDVID, or null if the product is not in the index.
+   *
+   * @throws IOException If the record could not be read from disk.
+   */
+  public String getLidvid(String lid) throws IOException {
+    String vid = getVersion(lid);
+    return vid == null ? null : lid + "::" + vid;
+  }
+
+  /**
+   * Gets a product, holding its LID, its version and the slots kept for
+   * it.
+   *
+   * @param reference The LID of the product, or its LIDVID, which has to
+   * be of the highest version.
+   *
+   * @return The product, or null if it is not in the index.
+   *
+   * @throws IOException If the record could not be read from disk.
+   */
+  public synchronized ExtrinsicObject get(String reference)
+      throws IOException {
+    String lid = reference;
+    String vid = null;
+    int separator = reference.indexOf("::");
+    if (separator != -1) {
+      lid = reference.substring(0, separator);
+      vid = reference.substring(separator + 2);
+    }
+    int index = find(lid, PathHash.of(lid));
+    if (locations[index] == 0) {
+      return null;
+    }
+    Record record = read(locations[index] - 1);
+    if (vid != null && !vid.equals(record.vid)) {
+      return null;
+    }
+    ExtrinsicObject product = new ExtrinsicObject();
+    product.setLid(record.lid);
+    product.addSlot(new Slot(Constants.PRODUCT_VERSION,
+        Arrays.asList(record.vid)));
+    for (Slot slot : record.slots) {
+      product.addSlot(slot);
+    }
+    return product;
+  }
+
+  /**
+   * Gets the number of products in the index.
+   *
+   * @return The number of products.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Empties the index, and deletes the file of records.
+   */
+  public synchronized void close() {
+    hashes = new long[1024];
+    locations = new long[1024];
+    size = 0;
+    chunks.clear();
+    allocated = 0;
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException e) {
+        // Deleted below
+      }
+      spill = null;
+      spillSize = 0;
+    }
+    if (spillFile != null) {
+      spillFile.delete();
+      spillFile = null;
+    }
+  }
+
+  /**
+   * Finds the table slot of a LID, which is either the one holding it, or
+   * the empty one where it would go.
+   */
+  private int find(String lid, long hash) throws IOException {
+    int mask = hashes.length - 1;
+    int index = (int) (hash ^ (hash >>> 32)) & mask;
+    while (locations[index] != 0) {
+      if (hashes[index] == hash
+          && lid.equals(readLid(locations[index] - 1))) {
+        return index;
+      }
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void grow() {
+    long[] oldHashes = hashes;
+    long[] oldLocations = locations;
+    hashes = new long[oldHashes.length * 2];
+    locations = new long[oldLocations.length * 2];
+    int mask = hashes.length - 1;
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldLocations[i] != 0) {
+        long hash = oldHashes[i];
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        while (locations[index] != 0) {
+          index = (index + 1) & mask;
+        }
+        hashes[index] = hash;
+        locations[index] = oldLocations[i];
+      }
+    }
+  }
+
+  /**
+   * Writes a record, in memory if there is room, otherwise to disk.
+   *
+   * @return Where the record is.
+   */
+  private long write(byte[] record) throws IOException {
+    if (spill == null) {
+      ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+      if (chunk == null || chunk.remaining() < record.length) {
+        int capacity = Math.max(CHUNK_SIZE, record.length);
+        if (allocated + capacity <= memoryLimit) {
+          chunk = ByteBuffer.allocateDirect(capacity);
+          chunks.add(chunk);
+          allocated += capacity;
+        } else {
+          openSpill();
+        }
+      }
+      if (spill == null) {
+        long location = ((long) (chunks.size() - 1) << 32) | chunk.position();
+        chunk.put(record);
+        return location;
+      }
+    }
+    long location = ON_DISK | spillSize;
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    while (buffer.hasRemaining()) {
+      spillSize += spill.write(buffer, spillSize);
+    }
+    return location;
+  }
+
+  private void openSpill() throws IOException {
+    spillFile = File.createTempFile("harvest-index", ".dat");
+    spillFile.deleteOnExit();
+    spill = new RandomAccessFile(spillFile, "rw").getChannel();
+    LOG.log(new ToolsLogRecord(ToolsLevel.INFO, "Identifier index has reached "
+        + (memoryLimit / (1024 * 1024)) + " MB in memory, writing further "
+        + "entries to disk.", spillFile));
+  }
+
+  private Record read(long location) throws IOException {
+    return decode(open(location));
+  }
+
+  private String readLid(long location) throws IOException {
+    return readString(open(location));
+  }
+
+  /**
+   * Gets the bytes of a record, past its length.
+   */
+  private ByteBuffer open(long location) throws IOException {
+    ByteBuffer buffer;
+    if ((location & ON_DISK) != 0) {
+      long position = location & ~ON_DISK;
+      ByteBuffer length = ByteBuffer.allocate(4);
+      readFully(length, position);
+      buffer = ByteBuffer.allocate(length.getInt(0));
+      readFully(buffer, position + 4);
+      buffer.flip();
+    } else {
+      buffer = chunks.get((int) (location >>> 32)).duplicate();
+      buffer.position((int) location + 4);
+    }
+    return buffer;
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = spill.read(buffer, position + buffer.position());
+      if (read == -1) {
+        throw new IOException("Unexpected end of " + spillFile);
+      }
+    }
+  }
+
+  /**
+   * Lays out a record as its length, the LID, the version, then the number
+   * of slots and the name and values of each.
+   */
+  private static byte[] encode(String lid, String vid, List<Slot> slots)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    writeString(out, lid);
+    writeString(out, vid);
+    out.writeInt(slots.size());
+    for (Slot slot : slots) {
+      writeString(out, slot.getName());
+      List<String> values = slot.getValues() == null
+          ? new ArrayList<String>() : slot.getValues();
+      out.writeInt(values.size());
+      for (String value : values) {
+        writeString(out, value == null ? "" : value);
+      }
+    }
+    out.flush();
+    byte[] record = bytes.toByteArray();
+    ByteBuffer.wrap(record).putInt(0, record.length - 4);
+    return record;
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static Record decode(ByteBuffer buffer) {
+    String lid = readString(buffer);
+    String vid = readString(buffer);
+    int numSlots = buffer.getInt();
+    List<Slot> slots = new ArrayList<Slot>(numSlots);
+    for (int i = 0; i < numSlots; i++) {
+      String name = readString(buffer);
+      int numValues = buffer.getInt();
+      List<String> values = new ArrayList<String>(numValues);
+      for (int j = 0; j < numValues; j++) {
+        values.add(readString(buffer));
+      }
+      slots.add(new Slot(name, values));
+    }
+    return new Record(lid, vid, slots);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A record read back from the index.
+   */
+  private static class Record {
+
+    private final String lid;
+
+    private final String vid;
+
+    private final List<Slot> slots;
+
+    Record(String lid, String vid, List<Slot> slots) {
+      this.lid = lid;
+      this.vid = vid;
+      this.slots = slots;
+    }
+  }
+}
@@ -3,9 +3,13 @@ package gov.nasa.pds.harvest.search.doc;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import org.apache.commons.io.FileUtils;
 import gov.nasa.pds.search.core.exception.SearchCoreException;
@@ -23,12 +27,16 @@ public class SearchConfigManager
 	
 	private Map<String, Product> objTypeMap;
 	private Map<String, Product> dataClassMap;
+	private Map<Product, FieldPlan> plans;
+	private Set<String> referencedSlots;
 	
 	
 	private SearchConfigManager()
 	{
 		objTypeMap = new HashMap<>();
 		dataClassMap = new HashMap<>();
+		plans = new IdentityHashMap<>();
+		referencedSlots = new HashSet<>();
 	}
 	
 	
@@ -47,6 +55,9 @@ public class SearchConfigManager
 			try 
 			{
 				Product product = CoreConfigReader.unmarshall(config);
+				FieldPlan plan = FieldPlan.compile(product);
+				plans.put(product, plan);
+				addReferencedSlots(plan);
 				
 				for(Query query: product.getSpecification().getQuery())
 				{
@@ -75,6 +86,11 @@ public class SearchConfigManager
 					}
 				}
 			}
+			catch(SearchCoreException ex)
+			{
+				throw new SearchCoreFatalException("Error: Problem compiling " + config 
+						+ "\nError Message: " + ex.getMessage());
+			}
 			catch(Exception ex) 
 			{
               ex.printStackTrace();
@@ -103,6 +119,67 @@ public class SearchConfigManager
 		return dataClassMap.get(dataClass);
 	}
 
+	/**
+	 * Get the field plan compiled from a configuration when it was loaded.
+	 * 
+	 * @param config A configuration returned by one of the find methods.
+	 * @return The field plan, or null if the configuration was not loaded here.
+	 */
+	public FieldPlan getFieldPlan(Product config)
+	{
+		return plans.get(config);
+	}
+
+	/**
+	 * Get the slots that the loaded configurations read from a referenced
+	 * product, such as "collection_name" of "collection_ref.collection_name".
+	 * The file and resource references are left out, as they are not
+	 * harvested products.
+	 * 
+	 * @return The slot names.
+	 */
+	public Set<String> getReferencedSlots()
+	{
+		return Collections.unmodifiableSet(referencedSlots);
+	}
+
+
+	private void addReferencedSlots(FieldPlan plan)
+	{
+		for(FieldPlan.Step step: plan.getSteps())
+		{
+			for(FieldPlan.Path path: step.getPaths())
+			{
+				addReferencedSlots(path);
+			}
+			
+			FieldPlan.Template template = step.getTemplate();
+			if(template != null)
+			{
+				for(int i = 0; i < template.getKeyCount(); i++)
+				{
+					addReferencedSlots(template.getKey(i));
+				}
+			}
+		}
+	}
+
+
+	private void addReferencedSlots(FieldPlan.Path path)
+	{
+		if(path.getLength() < 2 
+				|| "file_ref".equalsIgnoreCase(path.getSegment(0))
+				|| "resource_ref".equalsIgnoreCase(path.getSegment(0)))
+		{
+			return;
+		}
+		
+		for(int i = 1; i < path.getLength(); i++)
+		{
+			referencedSlots.add(path.getSegment(i));
+		}
+	}
+
 	
 	private static List<File> getCoreConfigs(File configDir) throws SearchCoreException 
 	{
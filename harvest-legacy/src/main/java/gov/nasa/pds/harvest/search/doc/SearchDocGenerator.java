@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.FileUtils;
 import com.google.gson.JsonElement;
@@ -15,16 +16,12 @@ import com.google.gson.JsonObject;
 import gov.nasa.pds.harvest.search.constants.Constants;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
 import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
-import gov.nasa.pds.harvest.search.util.DocWriter;
 import gov.nasa.pds.harvest.search.util.TransactionManager;
 import gov.nasa.pds.registry.model.ExtrinsicObject;
 import gov.nasa.pds.registry.model.Slot;
 import gov.nasa.pds.registry.model.wrapper.ExtendedExtrinsicObject;
 import gov.nasa.pds.search.core.exception.SearchCoreException;
 import gov.nasa.pds.search.core.exception.SearchCoreFatalException;
-import gov.nasa.pds.search.core.schema.Field;
-import gov.nasa.pds.search.core.schema.OutputString;
-import gov.nasa.pds.search.core.schema.OutputStringFormat;
 import gov.nasa.pds.search.core.schema.Product;
 
 
@@ -41,8 +38,9 @@ public class SearchDocGenerator {
 
 	private File outputDirectory;
 
-	private DocWriter writer = null;
 	private HashMap<String, JsonElement> resources;
+
+	private volatile boolean outputDirectoryCreated;
   
 	
 	public SearchDocGenerator(File configDirectory, File outputDirectory)
@@ -94,44 +92,58 @@ public class SearchDocGenerator {
 				+ "objectType '" + objectType + "' or data_class '" + dataClass + "'");
 		}
 		
+		FieldPlan plan = mgr.getFieldPlan(config);
+
 		// Generate Solr XML document for this ExtrinsicObject / Metadata
 		try 
 		{
-			Map<String, String> typeMap = new HashMap<String, String>();
-			typeMap = setFieldTypes(config);
-
 			// Create output directory
-			createOutputDirectory();
+			if(!outputDirectoryCreated)
+			{
+				createOutputDirectory();
+				outputDirectoryCreated = true;
+			}
 
 			ExtendedExtrinsicObject extendedExtrinsic = new ExtendedExtrinsicObject(extrinsic);
-			Map<String, List<String>> fieldMap = new HashMap<String, List<String>>();
-			fieldMap.putAll(setFieldValues(extendedExtrinsic, config, metadata));
+			Map<String, List<String>> fieldMap = setFieldValues(extendedExtrinsic, plan, metadata,
+					obj.getIndex());
 			
 			// Add package ID
 			HarvestSolrStats.packageId = TransactionManager.getInstance().getTransactionId();
-			typeMap.put("package_id", "string");
 			fieldMap.put("package_id", Arrays.asList(TransactionManager.getInstance().getTransactionId()));
 
-			// Increment our product counter
-			obj.incrementCounter();
-
-			// Get the file number based on the THRESHOLD
-			int outSeqNum = getOutputSeqNumber(obj.getCounter());
-
-			writer = new DocWriter(fieldMap, this.outputDirectory, outSeqNum, 
-					config.getSpecification().getTitle(), typeMap);
+			// Count and write the document under one lock, so that documents
+			// generated concurrently land in their files in count order
+			synchronized(obj)
+			{
+				// Increment our product counter and get the file number
+				// based on the THRESHOLD
+				int outSeqNum = getOutputSeqNumber(obj.incrementCounter());
 
-			// Write the file
-			writer.write();
+				// Write the document to the current file
+				obj.getWriter(this.outputDirectory).write(fieldMap, outSeqNum,
+						config.getSpecification().getTitle(), plan.getTypeMap());
+			}
 
-			++HarvestSolrStats.numDocumentsCreated;
+			HarvestSolrStats.numDocumentsCreated.increment();
 			HarvestSolrStats.addProductType(extrinsic.getObjectType());
 		} 
 		catch(Exception ex) 
 		{
-			++HarvestSolrStats.numDocumentsNotCreated;
+			HarvestSolrStats.numDocumentsNotCreated.increment();
 			throw ex;
 		}
+
+		// Later products can now refer to this one by its LID
+		try
+		{
+			obj.getIndex().add(extrinsic, mgr.getReferencedSlots());
+		}
+		catch(IOException ex)
+		{
+			log.warning("Could not add " + extrinsic.getLid() 
+				+ " to the identifier index: " + ex.getMessage());
+		}
 	}
 
 	
@@ -144,43 +156,34 @@ public class SearchDocGenerator {
    * @see gov.nasa.pds.search.core.extractor.registry.MappingTypes
    * 
    * @param ExtrinsicObject object to be used.
-   * @param config The configuration file.
+   * @param plan The fields compiled from the configuration file.
    * @param metadata metadata associated with the given extrinsic object.
+   * @param index The products harvested so far, to resolve references.
    * @throws ProductClassException  any errors throughout the querying of registry and
    *                  managing the data
    */
   private Map<String, List<String>> setFieldValues(
-      ExtendedExtrinsicObject searchExtrinsic, Product config, Metadata metadata)
-      throws SearchCoreException {
+      ExtendedExtrinsicObject searchExtrinsic, FieldPlan plan, Metadata metadata,
+      IdentifierIndex index) throws SearchCoreException {
     try {
       Map<String, List<String>> fieldMap = new HashMap<String, List<String>>();
       
-      /* Initialize local variables */
-      List<String> valueList = new ArrayList<String>();
-      
-      Object value;
-      
       // Loop through class results beginning from top
-      for (Field field : config.getIndexFields().getField()) {
+      for (FieldPlan.Step step : plan.getSteps()) {
         //TODO Functionality to use suffixes for field names commented out below
-        String fieldName = field.getName(); //+ SolrSchemaField.getSuffix(field.getType());
-        valueList = new ArrayList<String>();
-        
-        // Handle registry path
-        if (!field.getRegistryPath().isEmpty()) {
-          valueList = getSlotValuesFromPathList(field.getRegistryPath(), searchExtrinsic, metadata);
-        } 
+        List<String> valueList = getSlotValuesFromPathList(step.getPaths(), searchExtrinsic,
+            metadata, index);
         
-        if (valueList.isEmpty() && field.getOutputString() != null) { // Handle outputString
-          value = field.getOutputString();
-          valueList.add(checkForSubstring((OutputString)value, searchExtrinsic, metadata));
+        if (valueList.isEmpty() && step.getTemplate() != null) { // Handle outputString
+          valueList.add(checkForSubstring(step.getTemplate(), searchExtrinsic, metadata,
+              index));
         }
         
-        if (valueList.isEmpty() && field.getDefault() != null) {
-          valueList.add(field.getDefault());
+        if (valueList.isEmpty() && step.getDefault() != null) {
+          valueList.add(step.getDefault());
         }
         
-        fieldMap.put(fieldName, valueList);
+        fieldMap.put(step.getName(), valueList);
       }
       
       return fieldMap;
@@ -192,46 +195,35 @@ public class SearchDocGenerator {
   }
   
   /**
-   * Extract the attribute/slot/association from the String
-   * specified and query the Registry for the value to replace
-   * it wit.
+   * Replace the attribute/slot/association keys of an output string
+   * template with their values from the Registry.
    * 
-   * @param outputString input string from config
+   * @param template output string template compiled from the config
    * @param extObject extrinsic object.
    * @param metadata  metadata associated with the given extrinsic object.
+   * @param index The products harvested so far, to resolve references.
    * @return the string with the embedded attribute/slot/association
-   *         to be queried, replaced with the value from the Registry
+   *         replaced with the value from the Registry, or removed if
+   *         there is no value
    * @throws Exception
    */
-  protected String checkForSubstring(OutputString outputString, 
-      ExtendedExtrinsicObject extObject, Metadata metadata)
+  protected String checkForSubstring(FieldPlan.Template template, 
+      ExtendedExtrinsicObject extObject, Metadata metadata, IdentifierIndex index)
       throws Exception {
-    
-    String str = outputString.getValue();
-    
-    int start, end; 
-    String key, value = "";
-
-    List<String> valueList;
-    while (str.contains("{")) {
-      start = str.indexOf("{");
-      end = str.indexOf("}", start);
-      key = str.substring(start + 1, end);
-
-      valueList = getSlotValuesFromPathList(Arrays.asList(key), extObject, metadata);     
-      if (valueList != null && !valueList.isEmpty()) {
-        if (outputString.getFormat().equals(OutputStringFormat.URL)) {
-          value = URLEncoder.encode(valueList.get(0), "UTF-8");
-        } else if (outputString.getFormat().equals(OutputStringFormat.TEXT)) {
-          value = valueList.get(0);
+    StringBuilder str = new StringBuilder(template.getText(0));
+    for (int i = 0; i < template.getKeyCount(); i++) {
+      List<String> valueList = getSlotValues(template.getKey(i), extObject, metadata,
+          index);
+      if (!valueList.isEmpty()) {
+        if (template.isUrl()) {
+          str.append(URLEncoder.encode(valueList.get(0), "UTF-8"));
+        } else {
+          str.append(valueList.get(0));
         }
-        str = str.replace("{" + key + "}", value);
-          
-      } else {
-        str = str.replace("{" + key + "}", "");
       }
+      str.append(template.getText(i + 1));
     }
-    return str;
+    return str.toString();
   }
   
   /**
@@ -240,48 +232,65 @@ public class SearchDocGenerator {
    * If its a slot, it returns the value list. The list of paths allow for multiple different
    * paths and are thought of as an OR.
    * 
-   * @param registryPath
+   * @param registryPathList
    * @param searchExtrinsic
    * @return
    * @throws Exception
    */
-  private List<String> getSlotValuesFromPathList(List<String> registryPathList, 
-      ExtendedExtrinsicObject searchExtrinsic, Metadata metadata)
+  private List<String> getSlotValuesFromPathList(List<FieldPlan.Path> registryPathList, 
+      ExtendedExtrinsicObject searchExtrinsic, Metadata metadata, IdentifierIndex index)
           throws Exception {
-    String[] pathArray;
     List<String> valueList = new ArrayList<String>();
     
-    for (String registryPath : registryPathList) {
-      pathArray = registryPath.split("\\.");
-      if (pathArray.length > 1) {
+    for (FieldPlan.Path registryPath : registryPathList) {
+      valueList.addAll(getSlotValues(registryPath, searchExtrinsic, metadata, index));
+    }
+    return valueList;
+  }
+  
+  /**
+   * Gets the values of a single registry path.
+   * 
+   * @param registryPath
+   * @param searchExtrinsic
+   * @return
+   * @throws Exception
+   */
+  private List<String> getSlotValues(FieldPlan.Path registryPath, 
+      ExtendedExtrinsicObject searchExtrinsic, Metadata metadata, IdentifierIndex index)
+          throws Exception {
+    if (registryPath.getLength() > 1) {
+      if (log.isLoggable(Level.FINE)) {
         log.fine("Traversing registry path - " + searchExtrinsic.getLid()
-            + " - " + registryPath);        
-        valueList.addAll(traverseRegistryPath(Arrays.asList(pathArray), 
-            Arrays.asList(searchExtrinsic), metadata));
-      } else {  // Field is a slot
+            + " - " + registryPath.getText());
+      }
+      return traverseRegistryPath(registryPath, 0, 
+          Arrays.asList(searchExtrinsic), metadata, index);
+    } else {  // Field is a slot
+      if (log.isLoggable(Level.FINE)) {
         log.fine("Getting slot values - " + searchExtrinsic.getLid()
-            + " - " + registryPath);
-        valueList.addAll(getValidSlotValues(searchExtrinsic, registryPath));
+            + " - " + registryPath.getText());
       }
+      return getValidSlotValues(searchExtrinsic, registryPath.getText(), index);
     }
-    return valueList;
   }
   
   /**
    * Search Service requires that when an association reference slot is queried from the index,
    * it returns a lidvid, if available. In the case where a reference value is a lid instead of
-   * a lidvid, we will query the registry and attempt to build a lidvid from the most recent
-   * version of the product.
+   * a lidvid, we will look the lid up in the products harvested so far and build a lidvid from
+   * the most recent version of the product.
    * 
    * If the slot in question is not an association, then it is just passed along like a hot potato.
    * 
    * @param searchExt
    * @param slotName
+   * @param index The products harvested so far.
    * @return
    * @throws Exception
    */
   private List<String> getValidSlotValues(ExtendedExtrinsicObject searchExt, 
-      String slotName) throws Exception {
+      String slotName, IdentifierIndex index) throws Exception {
     List<String> slotValues = new ArrayList<String>();
     if (searchExt.getSlotValues(slotName) != null) {
       slotValues.addAll(searchExt.getSlotValues(slotName));
@@ -293,18 +302,11 @@ public class SearchDocGenerator {
           log.fine(
               "INVALID ASSOCIATION VALUE FOUND for " + searchExt.getLid() + " - " + slotName);
           List<String> newSlotValues = new ArrayList<String>();
-          ExtendedExtrinsicObject assocSearchExt;
           for(String lid : slotValues) {
-            //TODO: Need to handle this
-            ExtrinsicObject e = Constants.collectionMap.get(lid);
-            if (e != null) {
-              assocSearchExt = new ExtendedExtrinsicObject(e);
-            } else {
-              assocSearchExt = null;
-            }
-            if (assocSearchExt != null) { // if association is found, add the lidvid to slot values
-              //Debugger.debug("New slot value: " + assocSearchExt.getLidvid());
-              newSlotValues.add(assocSearchExt.getLidvid());
+            String lidvid = searchExt.slotValueIsLidvid(lid) ? null : index.getLidvid(lid);
+            if (lidvid != null) { // if association is found, add the lidvid to slot values
+              //Debugger.debug("New slot value: " + lidvid);
+              newSlotValues.add(lidvid);
             } else {
               //Debugger.debug("Association not found for new slot value, adding lid instead : " + lid);
               newSlotValues.add(lid);
@@ -323,37 +325,30 @@ public class SearchDocGenerator {
    * Traverses down a registry path tree by looping through the dot-connected path.
    * Uses a fun little recursion to make it happen.
    * 
-   * @param pathList
+   * @param path
+   * @param index Index of the path segment to traverse next.
    * @param searchExtrinsicList
+   * @param identifiers The products harvested so far, to follow references
+   *        other than file and resource references.
    * @return
    * @throws Exception
    */
-  private List<String> traverseRegistryPath(List<String> pathList, 
-      List<ExtendedExtrinsicObject> searchExtrinsicList, Metadata metadata)
-          throws Exception {
+  private List<String> traverseRegistryPath(FieldPlan.Path path, int index,
+      List<ExtendedExtrinsicObject> searchExtrinsicList, Metadata metadata,
+      IdentifierIndex identifiers) throws Exception {
     log.fine("traverseRegistryPath");
-    ArrayList<String> newPathList = null;
-    if (pathList.size() > 1 && !searchExtrinsicList.isEmpty()) {
-      newPathList = new ArrayList<String>();
-      newPathList.addAll(pathList.subList(1, pathList.size()));
+    int remaining = path.getLength() - index;
+    String segment = path.getSegment(index);
+    if (remaining > 1 && !searchExtrinsicList.isEmpty()) {
       for (ExtendedExtrinsicObject searchExtrinsic : searchExtrinsicList) {
         List<ExtendedExtrinsicObject> extendedExtrinsics = 
             new ArrayList<ExtendedExtrinsicObject>();
         List<ExtrinsicObject> extrinsics = new ArrayList<ExtrinsicObject>();
-        if ("file_ref".equalsIgnoreCase(pathList.get(0))) {
+        if ("file_ref".equalsIgnoreCase(segment)) {
           if (metadata.containsKey("file_ref")) {
             extrinsics.addAll(metadata.getAllMetadata(Constants.SLOT_METADATA + "/" + "file_ref"));
           }
-        } else if ("collection_ref".equalsIgnoreCase(pathList.get(0))) {
-          List<String> refs = searchExtrinsic.getSlotValues("collection_ref");
-          if (refs != null) {
-            for (String ref : refs) {
-              if (Constants.collectionMap.containsKey(ref)) {
-                extrinsics.add(Constants.collectionMap.get(ref));
-              }
-            }
-          }
-        } else if ("resource_ref".equalsIgnoreCase(pathList.get(0))) {
+        } else if ("resource_ref".equalsIgnoreCase(segment)) {
           List<String> refs = searchExtrinsic.getSlotValues("resource_ref");
           if (refs != null) {
             for (String ref : refs) {
@@ -370,6 +365,17 @@ public class SearchDocGenerator {
               }
             }
           }
+        } else if (segment.endsWith("_ref")) {
+          // A reference to another product, such as collection_ref
+          List<String> refs = searchExtrinsic.getSlotValues(segment);
+          if (refs != null) {
+            for (String ref : refs) {
+              ExtrinsicObject referenced = identifiers.get(ref);
+              if (referenced != null) {
+                extrinsics.add(referenced);
+              }
+            }
+          }
         }
         for (ExtrinsicObject extrinsic : extrinsics) {
           extendedExtrinsics.add(new ExtendedExtrinsicObject(extrinsic));
@@ -377,48 +383,21 @@ public class SearchDocGenerator {
         if (!extendedExtrinsics.isEmpty()) {
           //Do we need to add this?
           //extendedExtrinsics.add(searchExtrinsic);
-          return traverseRegistryPath(newPathList, extendedExtrinsics, 
-              metadata);
+          return traverseRegistryPath(path, index + 1, extendedExtrinsics, 
+              metadata, identifiers);
         }
       }
-    } else if (pathList.size() == 1 && !searchExtrinsicList.isEmpty()) {  
+    } else if (remaining == 1 && !searchExtrinsicList.isEmpty()) {  
       // Let's get some slot values
       List<String> slotValueList = new ArrayList<String>();
       for (ExtendedExtrinsicObject searchExtrinsic : searchExtrinsicList) {
-        slotValueList.addAll(getValidSlotValues(searchExtrinsic, pathList.get(0)));
+        slotValueList.addAll(getValidSlotValues(searchExtrinsic, segment, identifiers));
       }
       return slotValueList;
     }
     return new ArrayList<String>();
   }
   
-  private Map<String, String> setFieldTypes(Product config) 
-      throws SearchCoreException {
-    try {
-      Map<String, String> typeMap = new HashMap<String, String>();
-
-      /* Initialize local variables */
-      List<String> valueList = new ArrayList<String>();
-
-      Object value;
-
-      // Loop through class results beginning from top
-      for (Field field : config.getIndexFields().getField()) {
-        //TODO Functionality to use suffixes for field names commented out below
-        String fieldName = field.getName(); //+ SolrSchemaField.getSuffix(field.getType());
-        String fieldType = field.getType().value();
-
-        typeMap.put(fieldName, fieldType);
-      }
-
-      return typeMap;
-    } catch (Exception ex) {
-      ex.printStackTrace();
-      throw new SearchCoreException("Exception "
-          + ex.getClass().getName() + ex.getMessage());
-    }
-  }
-  
   /**
    * Create output directory for XML files
    * @return
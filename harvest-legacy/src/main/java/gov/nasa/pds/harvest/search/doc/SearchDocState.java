@@ -1,19 +1,68 @@
 package gov.nasa.pds.harvest.search.doc;
 
+import java.io.File;
+import java.io.IOException;
+import gov.nasa.pds.harvest.search.util.DocWriter;
+
 public class SearchDocState {
 
   private int counter = -1;
+
+  private DocWriter writer = null;
+
+  private final IdentifierIndex index = new IdentifierIndex();
   
-  public int getCounter() {
+  public synchronized int getCounter() {
     return this.counter;
   }
 
-  public void setCounter(int counter) {
+  public synchronized void setCounter(int counter) {
     this.counter = counter;
   }
 
-  public void incrementCounter() {
-    this.counter++;
+  /**
+   * Counts one more document.
+   *
+   * @return The new count.
+   */
+  public synchronized int incrementCounter() {
+    return ++this.counter;
+  }
+
+  /**
+   * Gets the writer of the Solr document files, which is shared by
+   * everything counted by this state.
+   *
+   * @param outputDirectory Directory of the Solr document files.
+   *
+   * @return The writer.
+   */
+  public synchronized DocWriter getWriter(File outputDirectory) {
+    if (this.writer == null) {
+      this.writer = new DocWriter(outputDirectory);
+    }
+    return this.writer;
+  }
+
+  /**
+   * Gets the index of the products harvested so far, which is shared by
+   * everything counted by this state.
+   *
+   * @return The index.
+   */
+  public IdentifierIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Finishes the Solr document file currently being written.
+   *
+   * @throws IOException If the file could not be finished.
+   */
+  public synchronized void closeWriter() throws IOException {
+    if (this.writer != null) {
+      this.writer.close();
+    }
   }
   
 }
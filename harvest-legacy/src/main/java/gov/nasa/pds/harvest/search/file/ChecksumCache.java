@@ -0,0 +1,428 @@
+package gov.nasa.pds.harvest.search.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
+
+/**
+ * Remembers the MD5 checksums of files so that a file is only read again
+ * when it has changed.
+ * <p>
+ * A checksum is keyed by the canonical path of the file and is only
+ * returned while the size, last modified time and file key (the inode,
+ * where the file system has one) of the file are the same as when the
+ * checksum was computed.
+ * <p>
+ * The cache has two tiers. Recently used checksums are held in memory in an
+ * LRU map. All checksums from previous runs are held in a file whose
+ * location is set with the {@value #CACHE_FILE_PROP} Java property. The
+ * file is an open-addressing hash table of 56-byte slots that is
+ * memory-mapped and read in place by any number of threads. New checksums
+ * are merged into it by {@link #save()}. Without the property, checksums
+ * are only remembered for the current run.
+ * <p>
+ * Each run that saves new checksums to the cache file starts a new
+ * generation. A checksum is stamped in place with the generation of the run
+ * that last used it, and is dropped once it has gone unused for the number
+ * of generations set with the {@value #MAX_AGE_PROP} Java property, so that
+ * checksums of files that were moved or deleted do not pile up.
+ */
+public class ChecksumCache {
+  /** Java property to set the location of the cache file. */
+  public static final String CACHE_FILE_PROP = "pds.harvest.checksum.cache";
+
+  /** Java property to set the number of generations an unused checksum is kept. */
+  public static final String MAX_AGE_PROP = "pds.harvest.checksum.cache.age";
+
+  /** Default number of generations an unused checksum is kept. */
+  private static final int DEFAULT_MAX_AGE = 10;
+
+  /** Logger object. */
+  private static Logger log = Logger.getLogger(ChecksumCache.class.getName());
+
+  /** Identifies the file format. */
+  private static final long MAGIC = 0x4852564d44354332L;
+
+  /** Size of the file header in bytes. */
+  private static final int HEADER_SIZE = 32;
+
+  /** Size of a slot in bytes. */
+  private static final int SLOT_SIZE = 56;
+
+  /** Maximum number of checksums held in memory. */
+  private static final int MEMORY_SIZE = 65536;
+
+  /** The shared instance, created on first use. */
+  private static ChecksumCache instance;
+
+  /**
+   * Identifies a file and the state it was in when it was looked up.
+   */
+  public static class Key {
+    private long path;
+    private long size;
+    private long lastModified;
+    private long fileKey;
+
+    private Key(long path, long size, long lastModified, long fileKey) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    private boolean matches(long size, long lastModified, long fileKey) {
+      return this.size == size && this.lastModified == lastModified
+          && this.fileKey == fileKey;
+    }
+  }
+
+  /**
+   * A checksum along with the state of its file.
+   */
+  private static class Entry {
+    private Key key;
+    private byte[] md5;
+
+    private Entry(Key key, byte[] md5) {
+      this.key = key;
+      this.md5 = md5;
+    }
+  }
+
+  /** The cache file. Null if the cache is not persistent. */
+  private File file;
+
+  /** The mapped table from the cache file. Null if there isn't one. */
+  private volatile ByteBuffer table;
+
+  /** Number of slots in the mapped table. */
+  private volatile int capacity;
+
+  /** Number of checksums in the mapped table. */
+  private int count;
+
+  /** Generation of this run. */
+  private long generation;
+
+  /** Number of generations an unused checksum is kept. */
+  private int maxAge;
+
+  /** Recently used checksums. */
+  private Map<Long, Entry> recent;
+
+  /** Checksums that are not in the cache file yet. */
+  private Map<Long, Entry> added;
+
+  /**
+   * Constructor.
+   *
+   * @param file The cache file, or null to not keep the checksums across
+   * runs. A cache file that cannot be read is replaced on the next save.
+   */
+  public ChecksumCache(File file) {
+    this.file = file;
+    this.table = null;
+    this.capacity = 0;
+    this.count = 0;
+    this.generation = 1;
+    this.maxAge = Math.max(0, Integer.getInteger(MAX_AGE_PROP, DEFAULT_MAX_AGE));
+    this.recent = new LinkedHashMap<Long, Entry>(1024, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Entry> e) {
+        return size() > MEMORY_SIZE;
+      }
+    };
+    this.added = new ConcurrentHashMap<Long, Entry>();
+    if (file != null && file.exists() && file.length() > 0) {
+      try {
+        map();
+      } catch (IOException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.WARNING, "Cannot read the "
+            + "checksum cache, starting with an empty one: " + e.getMessage(),
+            file));
+      }
+    }
+  }
+
+  /**
+   * Gets the shared cache, which is kept in the file set with the
+   * {@value #CACHE_FILE_PROP} Java property.
+   *
+   * @return The shared cache.
+   */
+  public static synchronized ChecksumCache getInstance() {
+    if (instance == null) {
+      String location = System.getProperty(CACHE_FILE_PROP);
+      instance = new ChecksumCache((location != null && !location.isEmpty())
+          ? new File(location) : null);
+    }
+    return instance;
+  }
+
+  /**
+   * Looks up the current state of the given file.
+   *
+   * @param f The file.
+   *
+   * @return The key of the file, or null if the file could not be read.
+   */
+  public Key getKey(File f) {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(f.toPath(),
+          BasicFileAttributes.class);
+      Object fileKey = attrs.fileKey();
+      return new Key(PathHash.of(f.getCanonicalPath()), attrs.size(),
+          attrs.lastModifiedTime().toMillis(),
+          (fileKey != null) ? fileKey.hashCode() : 0);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the checksum of a file.
+   *
+   * @param key The key of the file.
+   *
+   * @return The MD5 checksum, or null if it isn't known for the file in its
+   * current state.
+   */
+  public byte[] get(Key key) {
+    Entry entry;
+    synchronized (recent) {
+      entry = recent.get(key.path);
+    }
+    if (entry == null) {
+      entry = added.get(key.path);
+    }
+    if (entry == null) {
+      entry = find(key.path);
+      if (entry != null) {
+        synchronized (recent) {
+          recent.put(key.path, entry);
+        }
+      }
+    }
+    if (entry != null && key.matches(entry.key.size, entry.key.lastModified,
+        entry.key.fileKey)) {
+      return entry.md5;
+    }
+    return null;
+  }
+
+  /**
+   * Records the checksum of a file.
+   *
+   * @param key The key of the file, taken before the checksum was computed.
+   * @param md5 The MD5 checksum.
+   */
+  public void put(Key key, byte[] md5) {
+    Entry entry = new Entry(key, md5);
+    if (file != null) {
+      added.put(key.path, entry);
+    }
+    synchronized (recent) {
+      recent.put(key.path, entry);
+    }
+  }
+
+  /**
+   * Merges the new checksums into the cache file as the generation of this
+   * run. Checksums that have gone unused for too many generations are
+   * dropped. Does nothing if the cache is not persistent.
+   *
+   * @throws IOException If the cache file could not be written.
+   */
+  public synchronized void save() throws IOException {
+    if (file == null || added.isEmpty()) {
+      return;
+    }
+    Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(added);
+    int total = count + entries.size();
+    int newCapacity = 1024;
+    while (total * 4L > newCapacity * 3L) {
+      newCapacity *= 2;
+    }
+    if (HEADER_SIZE + (long) newCapacity * SLOT_SIZE > Integer.MAX_VALUE) {
+      throw new IOException("Too many checksums to cache: " + total);
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    // The new table is built in place in a mapped file so that large
+    // caches don't have to fit on the heap.
+    File temp = new File(parent, file.getName() + ".tmp");
+    RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+    try {
+      long length = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+      raf.setLength(0);
+      raf.setLength(length);
+      MappedByteBuffer slots = raf.getChannel().map(
+          FileChannel.MapMode.READ_WRITE, 0, length);
+      int newCount = 0;
+      int dropped = 0;
+      long newGeneration = generation;
+      // Carry over the old checksums that weren't replaced or used, unless
+      // they have gone unused for too long
+      ByteBuffer old = table;
+      for (int i = 0; i < capacity; i++) {
+        int offset = HEADER_SIZE + i * SLOT_SIZE;
+        long path = old.getLong(offset);
+        if (path == 0 || entries.containsKey(path)) {
+          continue;
+        }
+        long entryGeneration = old.getLong(offset + 48);
+        if (newGeneration - entryGeneration > maxAge) {
+          dropped++;
+          continue;
+        }
+        newCount += insert(slots, newCapacity, path, old.getLong(offset + 8),
+            old.getLong(offset + 16), old.getLong(offset + 24),
+            old.getLong(offset + 32), old.getLong(offset + 40),
+            entryGeneration);
+      }
+      for (Entry entry : entries.values()) {
+        ByteBuffer md5 = ByteBuffer.wrap(entry.md5);
+        newCount += insert(slots, newCapacity, entry.key.path, entry.key.size,
+            entry.key.lastModified, entry.key.fileKey, md5.getLong(),
+            md5.getLong(), newGeneration);
+      }
+      slots.putLong(0, MAGIC);
+      slots.putLong(8, newCapacity);
+      slots.putLong(16, newCount);
+      slots.putLong(24, newGeneration);
+      slots.force();
+      if (dropped > 0) {
+        log.log(new ToolsLogRecord(ToolsLevel.DEBUG, "Dropped " + dropped
+            + " unused checksums from the cache.", file));
+      }
+    } finally {
+      raf.close();
+    }
+    Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    map();
+    for (Long path : entries.keySet()) {
+      added.remove(path, entries.get(path));
+    }
+  }
+
+  /**
+   * Maps the cache file. It is mapped for writing, so that checksums can be
+   * stamped as used, unless the file is read-only.
+   *
+   * @throws IOException If the file could not be read or is not a checksum
+   * cache.
+   */
+  private void map() throws IOException {
+    RandomAccessFile raf;
+    FileChannel.MapMode mode;
+    if (file.canWrite()) {
+      raf = new RandomAccessFile(file, "rw");
+      mode = FileChannel.MapMode.READ_WRITE;
+    } else {
+      raf = new RandomAccessFile(file, "r");
+      mode = FileChannel.MapMode.READ_ONLY;
+    }
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = channel.map(mode, 0, channel.size());
+      if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+        throw new IOException("Not a checksum cache: " + file);
+      }
+      long slots = buffer.getLong(8);
+      if (slots <= 0 || Long.bitCount(slots) != 1
+          || HEADER_SIZE + slots * SLOT_SIZE != buffer.capacity()) {
+        throw new IOException("Checksum cache is damaged: " + file);
+      }
+      count = (int) buffer.getLong(16);
+      if (table == null) {
+        // The first map starts the generation of this run
+        generation = buffer.getLong(24) + 1;
+      }
+      capacity = (int) slots;
+      table = buffer;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Finds a checksum in the mapped table, and stamps it with the generation
+   * of this run.
+   *
+   * @param path The path hash.
+   *
+   * @return The entry, or null if it isn't in the table.
+   */
+  private Entry find(long path) {
+    ByteBuffer buffer = table;
+    if (buffer == null) {
+      return null;
+    }
+    int mask = (buffer.capacity() - HEADER_SIZE) / SLOT_SIZE - 1;
+    int slot = (int) (path ^ (path >>> 32)) & mask;
+    while (true) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      long value = buffer.getLong(offset);
+      if (value == 0) {
+        return null;
+      }
+      if (value == path) {
+        if (!buffer.isReadOnly() && buffer.getLong(offset + 48) != generation) {
+          buffer.putLong(offset + 48, generation);
+        }
+        ByteBuffer md5 = ByteBuffer.allocate(16);
+        md5.putLong(buffer.getLong(offset + 32));
+        md5.putLong(buffer.getLong(offset + 40));
+        return new Entry(new Key(path, buffer.getLong(offset + 8),
+            buffer.getLong(offset + 16), buffer.getLong(offset + 24)),
+            md5.array());
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Inserts a slot into a table being built.
+   *
+   * @return 1 if the slot was added, 0 if it replaced another.
+   */
+  private static int insert(ByteBuffer slots, int slotCount, long path,
+      long size, long lastModified, long fileKey, long md5High, long md5Low,
+      long generation) {
+    int mask = slotCount - 1;
+    int slot = (int) (path ^ (path >>> 32)) & mask;
+    int offset = HEADER_SIZE + slot * SLOT_SIZE;
+    while (slots.getLong(offset) != 0 && slots.getLong(offset) != path) {
+      slot = (slot + 1) & mask;
+      offset = HEADER_SIZE + slot * SLOT_SIZE;
+    }
+    int added = (slots.getLong(offset) == 0) ? 1 : 0;
+    slots.putLong(offset, path);
+    slots.putLong(offset + 8, size);
+    slots.putLong(offset + 16, lastModified);
+    slots.putLong(offset + 24, fileKey);
+    slots.putLong(offset + 32, md5High);
+    slots.putLong(offset + 40, md5Low);
+    slots.putLong(offset + 48, generation);
+    return added;
+  }
+}
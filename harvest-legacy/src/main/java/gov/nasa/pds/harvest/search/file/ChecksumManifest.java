@@ -4,11 +4,14 @@ import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -23,7 +26,16 @@ public class ChecksumManifest {
   private static Logger log = Logger.getLogger(
       ChecksumManifest.class.getName());
 
+  /** Separates the checksum from the file reference. */
+  private static final Pattern SEPARATOR = Pattern.compile("\\s{1,2}");
+
+  /** Whether a path is absolute exactly when it starts at the root. */
+  private static final boolean ROOTED = File.separatorChar == '/';
+
   private File basePath;
+
+  /** The normalized base path, ending with a separator. */
+  private String basePrefix;
   
   /**
    * Constructor.
@@ -32,20 +44,36 @@ public class ChecksumManifest {
    */
   public ChecksumManifest(String basePath) {
     this.basePath = new File(basePath);
+    String prefix = this.basePath.getPath();
+    if (!prefix.endsWith(File.separator)) {
+      prefix += File.separator;
+    }
+    this.basePrefix = FilenameUtils.normalize(prefix);
   }
   
   /**
-   * Reads a checksum manifest file.
+   * Reads a checksum manifest file. The index written by a previous read
+   * of the same manifest is used when index files are kept and it is still
+   * up to date.
    *
    * @param manifest The checksum manifest.
    *
-   * @return A hash map of absolute file pathnames to checksum values.
+   * @return An index of absolute file pathnames to checksum values.
    *
    * @throws IOException If there was an error reading the checksum manifest.
    */
-  public HashMap<File, String> read(File manifest)
+  public ChecksumManifestIndex read(File manifest)
   throws IOException {
-    HashMap<File, String> checksums = new HashMap<File, String>();
+    ChecksumManifestIndex checksums = ChecksumManifestIndex.open(manifest,
+        basePath);
+    if (checksums != null) {
+      log.log(new ToolsLogRecord(ToolsLevel.INFO,
+          "Using the index of the checksum manifest with "
+          + checksums.size() + " checksums.", manifest));
+      return checksums;
+    }
+    checksums = new ChecksumManifestIndex(countLines(manifest), manifest,
+        basePath);
     LineNumberReader reader = new LineNumberReader(new FileReader(manifest));
     String line = "";
     try {
@@ -56,19 +84,19 @@ public class ChecksumManifest {
         if (line.equals("")) {
           continue;
         }
-        String[] tokens = line.split("\\s{1,2}", 2);
-        File file = new File(tokens[1]);
-        file = new File(FilenameUtils.normalize(file.toString()));
-        if (!file.isAbsolute()) {
-          file = new File(basePath, file.toString());
+        String[] tokens = SEPARATOR.split(line, 2);
+        String path = resolve(tokens[1]);
+        if (path == null) {
+          log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+              "Cannot resolve the file reference: "
+              + tokens[1], manifest.toString(), reader.getLineNumber()));
+          continue;
         }
-        //Normalize the file
-        file = new File(FilenameUtils.normalize(file.toString()));
-        checksums.put(file, tokens[0]);
-        log.log(new ToolsLogRecord(ToolsLevel.DEBUG, "Map contains file '"
-            + file.toString() + "' with checksum of '"
-            + tokens[0] + "'.", manifest));
+        checksums.put(path, tokens[0]);
       }
+      checksums.finish();
+      log.log(new ToolsLogRecord(ToolsLevel.INFO, "Read "
+          + checksums.size() + " checksums.", manifest));
     } catch (ArrayIndexOutOfBoundsException ae) {
       log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Could not tokenize: "
           + line, manifest.toString(), reader.getLineNumber()));
@@ -78,4 +106,58 @@ public class ChecksumManifest {
     }
     return checksums;
   }
+
+  /**
+   * Resolves a file reference of the manifest against the base path.
+   *
+   * @param reference The file reference.
+   *
+   * @return The normalized path, or null if the reference starts by
+   * climbing out of a directory.
+   */
+  private String resolve(String reference) {
+    String path = FilenameUtils.normalize(reference);
+    if (path == null) {
+      return null;
+    }
+    if (ROOTED ? path.startsWith(File.separator)
+        : new File(path).isAbsolute()) {
+      return path;
+    }
+    // A normalized relative path never climbs, so it can be appended to the
+    // normalized base path as it is
+    if (basePrefix != null) {
+      return basePrefix + path;
+    }
+    return FilenameUtils.normalize(basePath.getPath() + File.separator + path);
+  }
+
+  /**
+   * Counts the lines of a file.
+   *
+   * @param file The file.
+   *
+   * @return The number of lines.
+   *
+   * @throws IOException If there was an error reading the file.
+   */
+  private static int countLines(File file) throws IOException {
+    int lines = 1;
+    FileChannel channel = new FileInputStream(file).getChannel();
+    try {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          if (buffer.get() == '\n') {
+            lines++;
+          }
+        }
+        buffer.clear();
+      }
+    } finally {
+      channel.close();
+    }
+    return lines;
+  }
 }
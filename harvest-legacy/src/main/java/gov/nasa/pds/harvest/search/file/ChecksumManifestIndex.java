@@ -0,0 +1,318 @@
+package gov.nasa.pds.harvest.search.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact index of the checksums in a checksum manifest.
+ * <p>
+ * The index is an open-addressing hash table of 24-byte slots held outside
+ * of the heap. Each slot holds a 64-bit hash of the absolute path of a file
+ * and its 16-byte MD5 checksum. Checksums that are not 32-digit hex values
+ * are kept in a small map on the side.
+ * <p>
+ * When the {@value #INDEX_DIR_PROP} Java property names a directory, the
+ * index is written there, named after the manifest and a hash of its path.
+ * A later run with the same manifest and base path maps that file instead
+ * of reading the manifest again. Without the property, the index is only
+ * kept in memory, and nothing is written next to the manifest.
+ */
+public class ChecksumManifestIndex {
+  /** Java property to set the directory the index files are kept in. */
+  public static final String INDEX_DIR_PROP = "pds.harvest.manifest.index.dir";
+
+  /** Identifies the file format. */
+  private static final long MAGIC = 0x4852564d4e464931L;
+
+  /** Size of the header in bytes. */
+  private static final int HEADER_SIZE = 48;
+
+  /** Size of a slot in bytes. */
+  private static final int SLOT_SIZE = 24;
+
+  /** HEX values. */
+  private static final String HEXES = "0123456789abcdef";
+
+  /** The slots. */
+  private ByteBuffer table;
+
+  /** Number of slots minus one. */
+  private int mask;
+
+  /** Number of checksums. */
+  private int count;
+
+  /** Checksums that are not 32-digit hex values, keyed by path hash. */
+  private Map<Long, String> others;
+
+  /** The index file being written. Null when not building or persisting. */
+  private File indexFile;
+
+  /**
+   * Creates an empty index.
+   */
+  public ChecksumManifestIndex() {
+    this.table = null;
+    this.mask = -1;
+    this.count = 0;
+    this.others = new HashMap<Long, String>();
+    this.indexFile = null;
+  }
+
+  /**
+   * Creates an index to be filled with {@link #put(String, String)}.
+   *
+   * @param expected The maximum number of checksums.
+   * @param manifest The manifest being indexed.
+   * @param basePath The base path the manifest is resolved against.
+   */
+  ChecksumManifestIndex(int expected, File manifest, File basePath) {
+    this();
+    int slots = 1024;
+    while (expected * 4L > slots * 3L) {
+      slots *= 2;
+    }
+    long length = HEADER_SIZE + (long) slots * SLOT_SIZE;
+    File file = getIndexFile(manifest);
+    if (file != null) {
+      try {
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        // Left behind if the index is not finished
+        temp.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+          raf.setLength(0);
+          raf.setLength(length);
+          table = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+              length);
+        } finally {
+          raf.close();
+        }
+        indexFile = file;
+      } catch (IOException e) {
+        // Can't write to the index directory
+        table = null;
+      }
+    }
+    if (table == null) {
+      table = ByteBuffer.allocateDirect((int) length);
+    }
+    table.putLong(0, MAGIC);
+    table.putLong(8, manifest.length());
+    table.putLong(16, manifest.lastModified());
+    table.putLong(24, PathHash.of(basePath.getAbsolutePath()));
+    table.putLong(32, slots);
+    mask = slots - 1;
+  }
+
+  /**
+   * Opens the index file of the given manifest.
+   *
+   * @param manifest The manifest.
+   * @param basePath The base path the manifest is resolved against.
+   *
+   * @return The index, or null if there is no up-to-date index file.
+   */
+  static ChecksumManifestIndex open(File manifest, File basePath) {
+    File file = getIndexFile(manifest);
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size());
+        if (buffer.capacity() < HEADER_SIZE
+            || buffer.getLong(0) != MAGIC
+            || buffer.getLong(8) != manifest.length()
+            || buffer.getLong(16) != manifest.lastModified()
+            || buffer.getLong(24) != PathHash.of(basePath.getAbsolutePath())) {
+          return null;
+        }
+        long slots = buffer.getLong(32);
+        if (slots <= 0 || Long.bitCount(slots) != 1
+            || HEADER_SIZE + slots * SLOT_SIZE != buffer.capacity()) {
+          return null;
+        }
+        ChecksumManifestIndex index = new ChecksumManifestIndex();
+        index.table = buffer;
+        index.mask = (int) slots - 1;
+        index.count = (int) buffer.getLong(40);
+        return index;
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds a checksum while building the index.
+   *
+   * @param path The absolute, normalized path of the file.
+   * @param checksum The checksum.
+   */
+  void put(String path, String checksum) {
+    long key = PathHash.of(path);
+    int slot = find(key);
+    int offset = HEADER_SIZE + slot * SLOT_SIZE;
+    if (table.getLong(offset) == 0) {
+      count++;
+    }
+    table.putLong(offset, key);
+    byte[] md5 = parseHex(checksum);
+    if (md5 != null) {
+      others.remove(key);
+      ByteBuffer value = ByteBuffer.wrap(md5);
+      table.putLong(offset + 8, value.getLong());
+      table.putLong(offset + 16, value.getLong());
+    } else {
+      others.put(key, checksum);
+      table.putLong(offset + 8, 0);
+      table.putLong(offset + 16, 0);
+    }
+  }
+
+  /**
+   * Finishes building the index. The index file is only kept if every
+   * checksum fits in the table.
+   *
+   * @throws IOException If the index file could not be written.
+   */
+  void finish() throws IOException {
+    table.putLong(40, count);
+    if (indexFile == null) {
+      return;
+    }
+    if (others.isEmpty()) {
+      ((MappedByteBuffer) table).force();
+      Files.move(new File(indexFile.getPath() + ".tmp").toPath(),
+          indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    indexFile = null;
+  }
+
+  /**
+   * Determines whether the index is empty.
+   *
+   * @return true if there are no checksums.
+   */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Gets the number of checksums.
+   *
+   * @return The number of checksums.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Determines whether there is a checksum for the given file.
+   *
+   * @param file The file.
+   *
+   * @return true if the manifest has a checksum for the file.
+   */
+  public boolean containsKey(File file) {
+    return get(file) != null;
+  }
+
+  /**
+   * Gets the checksum of the given file.
+   *
+   * @param file The file.
+   *
+   * @return The checksum, or null if the manifest has none for the file.
+   */
+  public String get(File file) {
+    if (count == 0) {
+      return null;
+    }
+    long key = PathHash.of(file.toString());
+    int offset = HEADER_SIZE + find(key) * SLOT_SIZE;
+    if (table.getLong(offset) == 0) {
+      return null;
+    }
+    String other = others.get(key);
+    if (other != null) {
+      return other;
+    }
+    StringBuilder hex = new StringBuilder(32);
+    appendHex(hex, table.getLong(offset + 8));
+    appendHex(hex, table.getLong(offset + 16));
+    return hex.toString();
+  }
+
+  /**
+   * Finds the slot of the given key, or the empty slot where it belongs.
+   */
+  private int find(long key) {
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    while (true) {
+      long value = table.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+      if (value == 0 || value == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Gets the index file of the given manifest.
+   *
+   * @return The file, or null if index files are not kept.
+   */
+  private static File getIndexFile(File manifest) {
+    String dir = System.getProperty(INDEX_DIR_PROP);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+    String path = manifest.getAbsolutePath();
+    return new File(dir, manifest.getName() + "-"
+        + Long.toHexString(PathHash.of(path)) + ".idx");
+  }
+
+  /**
+   * Parses a 32-digit hex checksum.
+   *
+   * @return The bytes, or null if the value is not a 32-digit hex value.
+   */
+  private static byte[] parseHex(String checksum) {
+    if (checksum.length() != 32) {
+      return null;
+    }
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < 16; i++) {
+      int high = Character.digit(checksum.charAt(2 * i), 16);
+      int low = Character.digit(checksum.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return bytes;
+  }
+
+  private static void appendHex(StringBuilder hex, long value) {
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      hex.append(HEXES.charAt((int) (value >>> shift) & 0xF));
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package gov.nasa.pds.harvest.search.file;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
+
+/**
+ * Computes the MD5 checksums of file objects on a bounded pool of threads,
+ * so that the checksums of the files of a product are computed at the same
+ * time.
+ * <p>
+ * The size of the pool can be set with the
+ * {@value #THREADS_PROP} Java property. It defaults to the number of
+ * processors, up to 4.
+ * <p>
+ * The service keeps track of how much data it has read and how long it was
+ * busy, from which the throughput in MB/s is derived.
+ */
+public class ChecksumService {
+  /** Java property to set the number of checksum threads. */
+  public static final String THREADS_PROP = "pds.harvest.checksum.threads";
+
+  /** The shared instance. */
+  private static final ChecksumService instance = new ChecksumService();
+
+  /** The pool, created on first use. */
+  private ExecutorService pool;
+
+  /** Number of checksums computed. */
+  private long numFiles;
+
+  /** Number of checksums taken from the checksum cache. */
+  private long numCached;
+
+  /** Number of bytes read. */
+  private long numBytes;
+
+  /** Nanoseconds during which at least one checksum was being computed. */
+  private long busyTime;
+
+  /** Number of checksums being computed. */
+  private int active;
+
+  /** When the service last became busy. */
+  private long busySince;
+
+  private ChecksumService() {
+    this.pool = null;
+  }
+
+  /**
+   * Gets the shared checksum service.
+   *
+   * @return The checksum service.
+   */
+  public static ChecksumService getInstance() {
+    return instance;
+  }
+
+  /**
+   * Starts computing the MD5 checksum of the given file.
+   *
+   * @param file The file.
+   *
+   * @return The pending hex checksum.
+   */
+  public Future<String> submit(final File file) {
+    return getPool().submit(new Callable<String>() {
+      public String call() throws Exception {
+        return compute(file);
+      }
+    });
+  }
+
+  /**
+   * Computes the MD5 checksum of the given file on the calling thread. The
+   * file is only read if its checksum isn't in the checksum cache.
+   *
+   * @param file The file.
+   *
+   * @return The hex checksum.
+   *
+   * @throws Exception If an error occurred while reading the file.
+   */
+  public String compute(File file) throws Exception {
+    ChecksumCache cache = ChecksumCache.getInstance();
+    ChecksumCache.Key key = cache.getKey(file);
+    if (key != null) {
+      byte[] md5 = cache.get(key);
+      if (md5 != null) {
+        synchronized (this) {
+          numCached++;
+        }
+        return MD5Checksum.getHex(md5);
+      }
+    }
+    begin();
+    long start = System.nanoTime();
+    long bytes = -1;
+    try {
+      byte[] md5 = MD5Checksum.createChecksum(file.toString());
+      if (key != null) {
+        cache.put(key, md5);
+      }
+      bytes = file.length();
+      return MD5Checksum.getHex(md5);
+    } finally {
+      HarvestSolrStats.checksumTime.recordSince(start);
+      end(bytes);
+    }
+  }
+
+  /**
+   * Gets the result of a pending checksum.
+   *
+   * @param checksum The pending checksum.
+   *
+   * @return The hex checksum.
+   *
+   * @throws Exception The error that occurred while computing the checksum.
+   */
+  public static String get(Future<String> checksum) throws Exception {
+    try {
+      return checksum.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the number of checksums computed.
+   *
+   * @return The number of checksums.
+   */
+  public synchronized long getNumFiles() {
+    return numFiles;
+  }
+
+  /**
+   * Gets the number of checksums taken from the checksum cache.
+   *
+   * @return The number of checksums.
+   */
+  public synchronized long getNumCached() {
+    return numCached;
+  }
+
+  /**
+   * Gets the number of bytes read.
+   *
+   * @return The number of bytes.
+   */
+  public synchronized long getNumBytes() {
+    return numBytes;
+  }
+
+  /**
+   * Gets the throughput of the service while it was busy.
+   *
+   * @return The throughput in MB/s, or 0 if nothing has been read.
+   */
+  public synchronized double getThroughput() {
+    long time = busyTime;
+    if (active > 0) {
+      time += System.nanoTime() - busySince;
+    }
+    if (time <= 0) {
+      return 0;
+    }
+    return (numBytes / (1024.0 * 1024.0)) / (time / 1.0e9);
+  }
+
+  private synchronized void begin() {
+    if (active++ == 0) {
+      busySince = System.nanoTime();
+    }
+  }
+
+  /**
+   * Records the end of a checksum.
+   *
+   * @param bytes The number of bytes read, or -1 if the checksum failed.
+   */
+  private synchronized void end(long bytes) {
+    if (bytes >= 0) {
+      numFiles++;
+      numBytes += bytes;
+    }
+    if (--active == 0) {
+      busyTime += System.nanoTime() - busySince;
+    }
+  }
+
+  private synchronized ExecutorService getPool() {
+    if (pool == null) {
+      int threads = Integer.getInteger(THREADS_PROP,
+          Math.min(4, Runtime.getRuntime().availableProcessors()));
+      final AtomicInteger count = new AtomicInteger();
+      pool = Executors.newFixedThreadPool(Math.max(1, threads),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "checksum-" + count.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return pool;
+  }
+}
@@ -3,7 +3,7 @@ package gov.nasa.pds.harvest.search.file;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.tika.Tika;
+import gov.nasa.pds.harvest.search.util.MimeDetector;
 
 /**
  * Class that contains file information to be used in registering file objects
@@ -57,7 +57,7 @@ public class FileObject {
     this.storageServiceProductId = null;
     this.accessUrls = new ArrayList<String>();
     this.fileType = fileType;
-    this.mimeType = new Tika().detect(name);
+    this.mimeType = MimeDetector.detect(name);
   }
 
   public String getName() {return name;}
@@ -0,0 +1,418 @@
+package gov.nasa.pds.harvest.search.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+/**
+ * Remembers the state of the labels that were harvested successfully so
+ * that a later harvest can skip the ones that have not changed.
+ * <p>
+ * Each entry is keyed by a 64-bit hash of the canonical path of the label
+ * and holds the label's last modified time, size and MD5 checksum. A label
+ * is unchanged if its modification time and size match, or if its size and
+ * checksum match. Only the second case requires reading the file; the
+ * common case is a single stat.
+ * <p>
+ * The entries are held on the heap in five parallel long arrays, an
+ * open-addressing table that is kept at most three quarters full. A slot
+ * takes 40 bytes, so the table needs 53 to 107 bytes per label, about
+ * 320 MB for 5 million labels, and half as much again while it grows. The
+ * table is saved to a binary file of 40 bytes per label, which is read
+ * back into the arrays when the store is created.
+ */
+public class FileStateStore {
+  /** Identifies the file format. */
+  private static final long MAGIC = 0x4852565354415431L;
+
+  /** Number of longs in a saved entry. */
+  private static final int ENTRY_LONGS = 5;
+
+  /** Buffer size used when computing checksums. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** The file holding the state. */
+  private File file;
+
+  /** Path hashes. Zero marks an empty slot. */
+  private long[] keys;
+
+  /** Last modified times. */
+  private long[] lastModified;
+
+  /** File sizes. */
+  private long[] sizes;
+
+  /** High and low halves of the MD5 checksums. */
+  private long[] md5High;
+  private long[] md5Low;
+
+  /** Number of entries. */
+  private int count;
+
+  /** Whether there are changes that haven't been saved. */
+  private boolean dirty;
+
+  /**
+   * Constructor. Loads the state from the given file if it exists.
+   *
+   * @param file The file holding the state.
+   *
+   * @throws IOException If the file exists but could not be read.
+   */
+  public FileStateStore(File file) throws IOException {
+    this.file = file;
+    this.dirty = false;
+    allocate(1024);
+    if (file.exists() && file.length() > 0) {
+      load();
+    }
+  }
+
+  /**
+   * Gets the number of labels in the store.
+   *
+   * @return The number of labels.
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Determines whether the given label is unchanged since it was last
+   * recorded. The label is read, outside the lock of the store, only if
+   * it was touched since.
+   *
+   * @param label The label file.
+   *
+   * @return true if the label has not changed.
+   */
+  public boolean isUnchanged(File label) {
+    long key = PathHash.of(getPath(label));
+    long size = label.length();
+    long modified = label.lastModified();
+    long high;
+    long low;
+    synchronized (this) {
+      int slot = find(key);
+      if (keys[slot] == 0 || sizes[slot] != size) {
+        return false;
+      }
+      if (lastModified[slot] == modified) {
+        return true;
+      }
+      high = md5High[slot];
+      low = md5Low[slot];
+    }
+    // Touched but possibly not changed
+    long[] md5;
+    try {
+      md5 = checksum(label);
+    } catch (IOException e) {
+      // Treat it as changed
+      return false;
+    }
+    if (md5[0] != high || md5[1] != low) {
+      return false;
+    }
+    synchronized (this) {
+      // Only if the entry was not replaced in the meantime
+      int slot = find(key);
+      if (keys[slot] != 0 && sizes[slot] == size && md5High[slot] == high
+          && md5Low[slot] == low) {
+        lastModified[slot] = modified;
+        dirty = true;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records the current state of the given label.
+   *
+   * @param label The label file.
+   *
+   * @throws IOException If the checksum of the label could not be
+   * computed.
+   */
+  public void update(File label) throws IOException {
+    update(snapshot(label));
+  }
+
+  /**
+   * Records a state of a label taken earlier.
+   *
+   * @param state The state of the label.
+   */
+  public synchronized void update(State state) {
+    put(state.key, state.lastModified, state.size, state.md5High,
+        state.md5Low);
+    dirty = true;
+  }
+
+  /**
+   * Takes the current state of the given label without recording it, so
+   * that it can be recorded once the label is known to be harvested.
+   *
+   * @param label The label file.
+   *
+   * @return The state of the label.
+   *
+   * @throws IOException If the checksum of the label could not be
+   * computed.
+   */
+  public State snapshot(File label) throws IOException {
+    long key = PathHash.of(getPath(label));
+    long modified = label.lastModified();
+    long size = label.length();
+    long[] md5 = checksum(label);
+    return new State(key, modified, size, md5[0], md5[1]);
+  }
+
+  /**
+   * Saves the state if there are unsaved changes. The state is written to a
+   * temporary file first so that an interrupted save leaves the previous
+   * state intact.
+   *
+   * @throws IOException If an error occurred while writing the state.
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty) {
+      return;
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    File temp = new File(parent, file.getName() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(temp), BUFFER_SIZE));
+    try {
+      out.writeLong(MAGIC);
+      out.writeLong(count);
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != 0) {
+          out.writeLong(keys[i]);
+          out.writeLong(lastModified[i]);
+          out.writeLong(sizes[i]);
+          out.writeLong(md5High[i]);
+          out.writeLong(md5Low[i]);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    dirty = false;
+  }
+
+  /**
+   * Loads the state file into the table, reading it through a
+   * memory-mapped buffer.
+   *
+   * @throws IOException If the file could not be read or is not a state
+   * file.
+   */
+  private void load() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+      LongBuffer longs = buffer.asLongBuffer();
+      if (longs.remaining() < 2 || longs.get() != MAGIC) {
+        throw new IOException("Not a harvest state file: " + file);
+      }
+      long entries = longs.get();
+      if (entries < 0 || entries * ENTRY_LONGS > longs.remaining()) {
+        throw new IOException("Harvest state file is truncated: " + file);
+      }
+      allocate(capacityFor((int) entries));
+      for (long i = 0; i < entries; i++) {
+        put(longs.get(), longs.get(), longs.get(), longs.get(), longs.get());
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Gets the key path of a file.
+   *
+   * @param label The file.
+   *
+   * @return The canonical path, or the absolute path if the canonical path
+   * could not be determined.
+   */
+  private static String getPath(File label) {
+    try {
+      return label.getCanonicalPath();
+    } catch (IOException e) {
+      return label.getAbsolutePath();
+    }
+  }
+
+  /**
+   * Computes the MD5 checksum of the given file.
+   *
+   * @param label The file.
+   *
+   * @return The checksum as two longs.
+   *
+   * @throws IOException If the file could not be read.
+   */
+  private static long[] checksum(File label) throws IOException {
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    InputStream in = new FileInputStream(label);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        md5.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    ByteBuffer digest = ByteBuffer.wrap(md5.digest());
+    return new long[] {digest.getLong(), digest.getLong()};
+  }
+
+  /**
+   * Finds the slot of the given key, or the empty slot where it belongs.
+   *
+   * @param key The key.
+   *
+   * @return The slot.
+   */
+  private int find(long key) {
+    int mask = keys.length - 1;
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[slot] != 0 && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Adds or replaces an entry.
+   */
+  private void put(long key, long modified, long size, long high, long low) {
+    int slot = find(key);
+    if (keys[slot] == 0) {
+      if ((count + 1) * 4 > keys.length * 3) {
+        grow();
+        slot = find(key);
+      }
+      keys[slot] = key;
+      count++;
+    }
+    lastModified[slot] = modified;
+    sizes[slot] = size;
+    md5High[slot] = high;
+    md5Low[slot] = low;
+  }
+
+  /**
+   * Doubles the capacity of the table.
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    long[] oldModified = lastModified;
+    long[] oldSizes = sizes;
+    long[] oldHigh = md5High;
+    long[] oldLow = md5Low;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int slot = find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        lastModified[slot] = oldModified[i];
+        sizes[slot] = oldSizes[i];
+        md5High[slot] = oldHigh[i];
+        md5Low[slot] = oldLow[i];
+        count++;
+      }
+    }
+  }
+
+  /**
+   * Allocates an empty table.
+   *
+   * @param capacity The capacity. Must be a power of two.
+   */
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    lastModified = new long[capacity];
+    sizes = new long[capacity];
+    md5High = new long[capacity];
+    md5Low = new long[capacity];
+    count = 0;
+  }
+
+  /**
+   * The state of a label at the time it was taken.
+   */
+  public static class State {
+    private final long key;
+    private final long lastModified;
+    private final long size;
+    private final long md5High;
+    private final long md5Low;
+
+    private State(long key, long lastModified, long size, long md5High,
+        long md5Low) {
+      this.key = key;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.md5High = md5High;
+      this.md5Low = md5Low;
+    }
+
+    /**
+     * @return The last modified time of the label.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * @return The size of the label.
+     */
+    public long getSize() {
+      return size;
+    }
+  }
+
+  /**
+   * Gets a table capacity that holds the given number of entries without
+   * growing.
+   *
+   * @param entries The number of entries.
+   *
+   * @return The capacity.
+   */
+  private static int capacityFor(int entries) {
+    int capacity = 1024;
+    while (entries * 4L > capacity * 3L) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+}
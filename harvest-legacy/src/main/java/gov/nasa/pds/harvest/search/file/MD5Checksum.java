@@ -1,7 +1,8 @@
 package gov.nasa.pds.harvest.search.file;
 
 import java.io.FileInputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 
 /**
@@ -15,6 +16,21 @@ public class MD5Checksum {
   /** HEX values. */
   private static final String HEXES = "0123456789abcdef";
 
+  /** Size of the read buffer. */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * A direct read buffer per thread. Direct buffers are expensive to
+   * allocate, so they are reused.
+   */
+  private static final ThreadLocal<ByteBuffer> buffers =
+      new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+          return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+      };
+
 
   /**
    * Gets the MD5 checksum value.
@@ -38,19 +54,18 @@ public class MD5Checksum {
    *
    * @throws Exception If an error occurred while calculating the checksum.
    */
-  private static byte[] createChecksum(String filename) throws Exception {
-    InputStream input = null;
+  static byte[] createChecksum(String filename) throws Exception {
+    FileInputStream input = new FileInputStream(filename);
     try {
-      input =  new FileInputStream(filename);
-      byte[] buffer = new byte[1024];
+      FileChannel channel = input.getChannel();
+      ByteBuffer buffer = buffers.get();
       MessageDigest md5 = MessageDigest.getInstance("MD5");
-      int bytesRead = 0;
-      do {
-        bytesRead = input.read(buffer);
-        if (bytesRead > 0) {
-          md5.update(buffer, 0, bytesRead);
-        }
-      } while (bytesRead != -1);
+      buffer.clear();
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        md5.update(buffer);
+        buffer.clear();
+      }
       return md5.digest();
     } finally {
       input.close();
@@ -64,7 +79,7 @@ public class MD5Checksum {
    *
    * @return The HEX value of the given byte array.
    */
-  private static String getHex(byte [] bytes) {
+  static String getHex(byte [] bytes) {
     if (bytes == null) {
       return null;
     }
@@ -0,0 +1,31 @@
+package gov.nasa.pds.harvest.search.file;
+
+/**
+ * Hashes file paths, and other keys such as LIDs, for the tables kept by
+ * the harvest tool.
+ */
+public final class PathHash {
+  private PathHash() {
+  }
+
+  /**
+   * Computes a 64-bit hash of the given path. Never returns zero, so that
+   * zero can mark an empty slot.
+   *
+   * @param path The path.
+   *
+   * @return The hash.
+   */
+  public static long of(String path) {
+    // FNV-1a followed by a final mix
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < path.length(); i++) {
+      h ^= path.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= (h >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= (h >>> 33);
+    return (h == 0) ? 1 : h;
+  }
+}
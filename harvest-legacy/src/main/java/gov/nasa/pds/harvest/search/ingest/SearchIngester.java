@@ -3,6 +3,9 @@ package gov.nasa.pds.harvest.search.ingest;
 import java.io.File;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 import gov.nasa.pds.harvest.search.constants.Constants;
 import gov.nasa.pds.harvest.search.logging.ToolsLevel;
@@ -16,6 +19,7 @@ import gov.nasa.pds.harvest.search.registry.MetadataExtractor;
 import gov.nasa.pds.harvest.search.registry.RegistryDAO;
 import gov.nasa.pds.harvest.search.registry.RegistryMetadata;
 import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 
 
 /**
@@ -104,34 +108,100 @@ public class SearchIngester implements Ingester
 	 * @throws IngestException If an error occurred while ingesting the product.
 	 */
 	public String ingest(URL searchUrl, File prodFile, Metadata met) throws IngestException 
+	{
+		return ingest(searchUrl, prodFile, met, new ParsedLabel(prodFile));
+	}
+
+
+	/**
+	 * Ingests the product into the registry, waiting until the Search Service
+	 * has accepted it.
+	 *
+	 * @param searchUrl The URL to the Search Service.
+	 * @param prodFile  The PDS4 product file.
+	 * @param met       The metadata to register.
+	 * @param label     The parsed label of the product.
+	 *
+	 * @return The URL of the registered product.
+	 * @throws IngestException If an error occurred while ingesting the product.
+	 */
+	public String ingest(URL searchUrl, File prodFile, Metadata met, ParsedLabel label)
+			throws IngestException 
+	{
+		CompletableFuture<String> registered = ingestAsync(searchUrl, prodFile, met, label);
+		flush();
+		try
+		{
+			return registered.get();
+		}
+		catch(InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new IngestException(ie);
+		}
+		catch(ExecutionException ee)
+		{
+			throw new IngestException(ee.getCause());
+		}
+	}
+
+
+	/**
+	 * Queues the product to be ingested into the registry. The product is
+	 * only reported as registered once the Search Service has accepted it.
+	 *
+	 * @param searchUrl The URL to the Search Service.
+	 * @param prodFile  The PDS4 product file.
+	 * @param met       The metadata to register.
+	 * @param label     The parsed label of the product.
+	 *
+	 * @return Completes with the URL of the registered product, or
+	 *         exceptionally if it could not be registered.
+	 * @throws IngestException If an error occurred while queuing the product.
+	 */
+	public CompletableFuture<String> ingestAsync(URL searchUrl, final File prodFile,
+			Metadata met, ParsedLabel label) throws IngestException 
 	{
 		String lid = met.getMetadata(Constants.LOGICAL_ID);
 		String vid = met.getMetadata(Constants.PRODUCT_VERSION);
-		String lidvid = lid + "::" + vid;
+		final String lidvid = lid + "::" + vid;
 				
 		try 
 		{
-          RegistryMetadata registryMeta = metaExtractor.extract(prodFile.getAbsolutePath());
+          RegistryMetadata registryMeta = metaExtractor.extract(label);
 			    
           // Save product file
-          registryDAO.saveProduct(registryMeta, prodFile);
-
-          log.log(new ToolsLogRecord(ToolsLevel.SUCCESS,
-              "Successfully registered product: " + lidvid, prodFile));
-          ++HarvestSolrStats.numProductsRegistered;
+          final CompletableFuture<String> registered = new CompletableFuture<String>();
+          registryDAO.saveProduct(registryMeta, prodFile).whenComplete(
+              new BiConsumer<Void, Throwable>() {
+            public void accept(Void result, Throwable error) {
+              if (error == null) {
+                log.log(new ToolsLogRecord(ToolsLevel.SUCCESS,
+                    "Successfully registered product: " + lidvid, prodFile));
+                HarvestSolrStats.numProductsRegistered.increment();
+                registered.complete(lidvid);
+              } else {
+                log.log(new ToolsLogRecord(ToolsLevel.SEVERE,
+                    "Failed to register product " + lidvid + ": " + error.getMessage(),
+                    prodFile));
+                HarvestSolrStats.numProductsNotRegistered.increment();
+                registered.completeExceptionally(error);
+              }
+            }
+          });
 
-          return lidvid;
+          return registered;
 		} 
 		catch(CatalogException c)
 		{
-			++HarvestSolrStats.numProductsNotRegistered;
+			HarvestSolrStats.numProductsNotRegistered.increment();
 			log.log(new ToolsLogRecord(ToolsLevel.SEVERE, "Error while " 
 			        + "checking for the existence of a registered product: " + c.getMessage(), prodFile));
 			throw new IngestException(c.getMessage());
 		} 
 		catch(Exception ex)
 		{
-		    ++HarvestSolrStats.numProductsNotRegistered;
+		    HarvestSolrStats.numProductsNotRegistered.increment();
 		    log.log(new ToolsLogRecord(ToolsLevel.SEVERE, ex.getMessage(), prodFile));
 		    throw new IngestException(ex);
 		} 
@@ -139,6 +209,15 @@ public class SearchIngester implements Ingester
 
 	
 	
+	/**
+	 * Sends the products queued so far to the Search Service.
+	 */
+	public void flush()
+	{
+		registryDAO.flush();
+	}
+
+
 	/**
 	 * Method not implemented at this time.
 	 *
@@ -4,11 +4,11 @@ import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.core.MediaType;
 
 import org.apache.solr.client.solrj.SolrClient;
-import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
 import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.ContentStreamBase.StringStream;
@@ -21,6 +21,12 @@ import gov.nasa.pds.harvest.search.util.TransactionManager;
 
 /**
  * Data Access Object to work with the xpath collection in Solr.
+ * 
+ * Labels are posted one at a time as JSON to the json/docs handler, which
+ * flattens them on the Solr side. They are not sent through the
+ * SolrBatchSubmitter, which only carries SolrInputDocuments. Nothing in
+ * the harvest calls this class at the moment.
+ * 
  * @author karpenko
  */
 public class XPathDAO
@@ -46,7 +52,8 @@ public class XPathDAO
             // Store JSON in Solr
             StringStream stringStream = new StringStream(json.toString(2), MediaType.APPLICATION_JSON);
             up.addContentStream(stringStream);
-            up.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
+            up.setCommitWithin((int)TimeUnit.SECONDS.toMillis(
+                    SolrManager.getInstance().getFlushInterval()));
             
             SolrClient client = SolrManager.getInstance().getSolrClient();
             NamedList<Object> list = client.request(up);
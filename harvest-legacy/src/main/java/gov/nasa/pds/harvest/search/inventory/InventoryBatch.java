@@ -0,0 +1,144 @@
+package gov.nasa.pds.harvest.search.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class representation of consecutive entries of a PDS Inventory file.
+ * <p>
+ * A batch ends early at an entry that could not be read. The error is
+ * kept with the batch, and reading carries on after it with the next
+ * batch, just as {@link InventoryReader#getNext()} carries on after
+ * throwing.
+ */
+public class InventoryBatch {
+    /** The entries. */
+    private List<InventoryEntry> entries;
+
+    /** The line number of each entry. */
+    private int[] lineNumbers;
+
+    /** The error that ended the batch, if any. */
+    private InventoryReaderException error;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The expected number of entries.
+     */
+    public InventoryBatch(int capacity) {
+        this.entries = new ArrayList<InventoryEntry>(capacity);
+        this.lineNumbers = new int[Math.max(1, capacity)];
+        this.error = null;
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param entry The entry.
+     * @param lineNumber The line number of the entry, or -1 if the
+     * Inventory file is not read by line.
+     */
+    public void add(InventoryEntry entry, int lineNumber) {
+        if (entries.size() == lineNumbers.length) {
+            int[] grown = new int[lineNumbers.length * 2];
+            System.arraycopy(lineNumbers, 0, grown, 0, lineNumbers.length);
+            lineNumbers = grown;
+        }
+        lineNumbers[entries.size()] = lineNumber;
+        entries.add(entry);
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets an entry.
+     *
+     * @param index The index of the entry.
+     *
+     * @return The entry.
+     */
+    public InventoryEntry getEntry(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Gets the line number of an entry.
+     *
+     * @param index The index of the entry.
+     *
+     * @return The line number, or -1 if not known.
+     */
+    public int getLineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * Gets the error that ended the batch.
+     *
+     * @return The error, or null if there was none.
+     */
+    public InventoryReaderException getError() {
+        return error;
+    }
+
+    /**
+     * Sets the error that ended the batch.
+     *
+     * @param error The error.
+     */
+    public void setError(InventoryReaderException error) {
+        this.error = error;
+    }
+
+    /**
+     * Shifts the line numbers of the entries and of the error.
+     *
+     * @param lines The number of lines to add.
+     */
+    void offsetLineNumbers(int lines) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (lineNumbers[i] != -1) {
+                lineNumbers[i] += lines;
+            }
+        }
+        if (error != null && error.getLineNumber() != -1) {
+            error.setLineNumber(error.getLineNumber() + lines);
+        }
+    }
+
+    /**
+     * Reads a batch from an Inventory file one entry at a time. Empty
+     * entries are left out.
+     *
+     * @param reader The reader.
+     * @param size The maximum number of entries.
+     *
+     * @return The batch, or null if the end of the Inventory file has been
+     * reached.
+     */
+    static InventoryBatch read(InventoryReader reader, int size) {
+        InventoryBatch batch = new InventoryBatch(Math.min(size, 1024));
+        while (batch.size() < size) {
+            try {
+                InventoryEntry entry = reader.getNext();
+                if (entry == null) {
+                    break;
+                } else if (!entry.isEmpty()) {
+                    batch.add(entry, -1);
+                }
+            } catch (InventoryReaderException e) {
+                batch.setError(e);
+                return batch;
+            }
+        }
+        return batch.size() == 0 ? null : batch;
+    }
+}
@@ -51,10 +51,19 @@ public class InventoryKeys {
   public static final Map<String, String> fieldDelimiters =
     new HashMap<String, String>();
 
+  /** The field delimiters as characters, for splitting without a regex. */
+  public static final Map<String, Character> fieldDelimiterChars =
+    new HashMap<String, Character>();
+
   static {
     fieldDelimiters.put("comma",",");
     fieldDelimiters.put("horizontal_tab", "\\t");
     fieldDelimiters.put("semicolon", ";");
     fieldDelimiters.put("vertical_bar", "\\|");
+
+    fieldDelimiterChars.put("comma", ',');
+    fieldDelimiterChars.put("horizontal_tab", '\t');
+    fieldDelimiterChars.put("semicolon", ';');
+    fieldDelimiterChars.put("vertical_bar", '|');
   }
 }
@@ -17,4 +17,16 @@ public interface InventoryReader {
      * @throws InventoryReaderException
      */
     public abstract InventoryEntry getNext() throws InventoryReaderException;
+
+    /**
+     * Get the next file references in the Inventory file, leaving out
+     * empty entries.
+     *
+     * @param size The maximum number of entries to get.
+     *
+     * @return The next entries, or null if the end of the Inventory file
+     * has been reached. The batch holds fewer entries than asked for if an
+     * entry could not be read, in which case it holds the error.
+     */
+    public abstract InventoryBatch getNextBatch(int size);
 }
@@ -1,10 +1,19 @@
 package gov.nasa.pds.harvest.search.inventory;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -13,11 +22,27 @@ import gov.nasa.pds.harvest.search.util.XMLExtractor;
 /**
  * Class that supports reading of a table-version of the PDS
  * Inventory file.
+ * <p>
+ * The data file is read through large buffers and split on the delimiter
+ * character without a regular expression. A whole data file can also be
+ * read with {@link #readAll()}, which parses chunks of a large file on a
+ * pool of threads. The size of the pool can be set with the
+ * {@value #THREADS_PROP} Java property. It defaults to the number of
+ * processors, up to 4.
  *
  * @author mcayanan
  *
  */
 public class InventoryTableReader implements InventoryReader {
+  /** Java property to set the number of threads parsing data files. */
+  public static final String THREADS_PROP = "pds.harvest.inventory.threads";
+
+  /** The smallest chunk of a data file worth parsing on its own thread. */
+  private static final long MIN_CHUNK_SIZE = 8 * 1024 * 1024;
+
+  /** The pool parsing chunks of data files, created on first use. */
+  private static ExecutorService pool = null;
+
   /** The field location of the identifier (LID-VID or LID). */
   private int identifierFieldNumber;
 
@@ -27,8 +52,14 @@ public class InventoryTableReader implements InventoryReader {
   /** The field delimiter being used in the inventory table. */
   private String fieldDelimiter;
 
-  /** Reads the external data file of the Inventory file. */
-  private LineNumberReader reader;
+  /** The field delimiter, as a character. */
+  private char delimiter;
+
+  /** The external data file of the Inventory file. */
+  private FileChannel channel;
+
+  /** Reads the lines of the data file. */
+  private TableScanner reader;
 
   /** The directory path of the inventory file. */
   private String parentDirectory;
@@ -45,14 +76,31 @@ public class InventoryTableReader implements InventoryReader {
    * the Inventory file.
    */
   public InventoryTableReader(File file)
+  throws InventoryReaderException {
+    this(file, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param file A PDS Inventory file.
+   * @param extractor An extractor over the already parsed Inventory file.
+   * If null, the file will be parsed.
+   *
+   * @throws InventoryReaderException If an error occurred while reading
+   * the Inventory file.
+   */
+  public InventoryTableReader(File file, XMLExtractor extractor)
   throws InventoryReaderException {
     memberStatusFieldNumber = 0;
     identifierFieldNumber = 0;
     dataFile = null;
     parentDirectory = file.getParent();
-    XMLExtractor extractor = new XMLExtractor();
     try {
-      extractor.parse(file);
+      if (extractor == null) {
+        extractor = new XMLExtractor();
+        extractor.parse(file);
+      }
       String dataFileName = extractor.getValueFromDoc(
           InventoryKeys.DATA_FILE_XPATH);
       if (dataFileName.equals("")) {
@@ -63,7 +111,8 @@ public class InventoryTableReader implements InventoryReader {
       if (!dataFile.isAbsolute()) {
         dataFile = new File(file.getParent(), dataFile.toString());
       }
-      reader = new LineNumberReader(new FileReader(dataFile));
+      channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+      reader = new TableScanner(channel, 0, channel.size());
       String value = "";
       // Extract the field numbers defined in the inventory table section
       // in order to determine the metadata in the data file.
@@ -93,12 +142,15 @@ public class InventoryTableReader implements InventoryReader {
           throw new Exception("Field delimiter value is not a valid value: "
               + value);
         }
+        delimiter = InventoryKeys.fieldDelimiterChars.get(
+            value.toLowerCase());
       } else {
         throw new Exception("Problems parsing file: " + file + ". XPath "
             + "expression returned no result: "
             + InventoryKeys.FIELD_DELIMITER_XPATH);
       }
     } catch (Exception e) {
+      close();
       throw new InventoryReaderException(e);
     }
   }
@@ -146,49 +198,227 @@ public class InventoryTableReader implements InventoryReader {
    *
    */
   public InventoryEntry getNext() throws InventoryReaderException {
-    String line = "";
     try {
-      line = reader.readLine();
-      if (line == null) {
-        reader.close();
+      if (channel == null || !reader.nextLine()) {
+        close();
         return null;
-      } else if (line.trim().equals("")) {
+      } else if (reader.isBlank()) {
         return new InventoryEntry();
       }
     } catch (IOException i) {
       throw new InventoryReaderException(i);
     }
-    if (fieldDelimiter == null) {
+    return parse(reader);
+  }
+
+  /**
+   * Gets the next product file references in the PDS Inventory file.
+   *
+   * @param size The maximum number of references to get.
+   *
+   * @return The next references, with their line numbers, or null if the
+   * end-of-file has been reached.
+   */
+  public InventoryBatch getNextBatch(int size) {
+    InventoryBatch batch = new InventoryBatch(Math.min(size, 1024));
+    while (batch.size() < size) {
+      try {
+        if (channel == null || !reader.nextLine()) {
+          close();
+          break;
+        } else if (!reader.isBlank()) {
+          batch.add(parse(reader), reader.getLineNumber());
+        }
+      } catch (IOException e) {
+        batch.setError(new InventoryReaderException(e));
+        return batch;
+      } catch (InventoryReaderException e) {
+        batch.setError(e);
+        return batch;
+      }
+    }
+    return batch.size() == 0 ? null : batch;
+  }
+
+  /**
+   * Reads the whole data file, from its first line, and closes it. A large
+   * data file is split into chunks at line boundaries, and the chunks are
+   * parsed at the same time.
+   *
+   * @return The batches of product file references, in the order of the
+   * data file.
+   *
+   * @throws InventoryReaderException If an error occurred while reading
+   * the data file. Errors parsing a line are held by the batches instead.
+   */
+  public List<InventoryBatch> readAll() throws InventoryReaderException {
+    if (channel == null) {
       throw new InventoryReaderException(
-          new Exception("Field delimiter is not set."));
+          new IOException("Data file is closed: " + dataFile));
+    }
+    try {
+      long size = channel.size();
+      int threads = getThreads();
+      int chunks = (int) Math.max(1, Math.min(threads,
+          size / MIN_CHUNK_SIZE));
+      List<Long> bounds = new ArrayList<Long>();
+      bounds.add(0L);
+      for (int i = 1; i < chunks; i++) {
+        long bound = TableScanner.alignToLine(channel, size * i / chunks);
+        if (bound > bounds.get(bounds.size() - 1) && bound < size) {
+          bounds.add(bound);
+        }
+      }
+      bounds.add(size);
+
+      List<List<InventoryBatch>> parsed = new ArrayList<List<InventoryBatch>>();
+      List<Integer> lines = new ArrayList<Integer>();
+      if (bounds.size() == 2) {
+        TableScanner scanner = new TableScanner(channel, 0, size);
+        parsed.add(parseChunk(scanner));
+        lines.add(scanner.getLineNumber());
+      } else {
+        List<Future<TableScanner>> scanners =
+            new ArrayList<Future<TableScanner>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+          final TableScanner scanner = new TableScanner(channel,
+              bounds.get(i), bounds.get(i + 1));
+          final List<InventoryBatch> batches = new ArrayList<InventoryBatch>();
+          parsed.add(batches);
+          scanners.add(getPool().submit(new Callable<TableScanner>() {
+            public TableScanner call() throws IOException {
+              batches.addAll(parseChunk(scanner));
+              return scanner;
+            }
+          }));
+        }
+        for (Future<TableScanner> scanner : scanners) {
+          lines.add(get(scanner).getLineNumber());
+        }
+      }
+
+      // Line numbers were counted from the start of each chunk
+      List<InventoryBatch> result = new ArrayList<InventoryBatch>();
+      int offset = 0;
+      for (int i = 0; i < parsed.size(); i++) {
+        for (InventoryBatch batch : parsed.get(i)) {
+          batch.offsetLineNumbers(offset);
+          result.add(batch);
+        }
+        offset += lines.get(i);
+      }
+      return result;
+    } catch (IOException e) {
+      throw new InventoryReaderException(e);
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Parses a chunk of the data file. A new batch is started after each
+   * line that could not be parsed.
+   */
+  private List<InventoryBatch> parseChunk(TableScanner scanner)
+      throws IOException {
+    List<InventoryBatch> batches = new ArrayList<InventoryBatch>();
+    InventoryBatch batch = new InventoryBatch(1024);
+    while (scanner.nextLine()) {
+      if (!scanner.isBlank()) {
+        try {
+          batch.add(parse(scanner), scanner.getLineNumber());
+        } catch (InventoryReaderException e) {
+          batch.setError(e);
+          batches.add(batch);
+          batch = new InventoryBatch(1024);
+        }
+      }
     }
+    if (batch.size() != 0) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Parses the current line of the data file.
+   */
+  private InventoryEntry parse(TableScanner scanner)
+      throws InventoryReaderException {
     String identifier = "";
     String memberStatus = "";
-    String fields[] = line.split(fieldDelimiter);
     if (memberStatusFieldNumber != 0) {
-      try {
-        memberStatus = fields[memberStatusFieldNumber-1].trim();
-      } catch (IndexOutOfBoundsException ae) {
+      memberStatus = scanner.getField(memberStatusFieldNumber, delimiter);
+      if (memberStatus == null) {
         InventoryReaderException ir = new InventoryReaderException(
             new IndexOutOfBoundsException("Could not retrieve the member "
                 + "status after parsing the line in the file '" + dataFile
-                + "': " + Arrays.asList(fields)));
-        ir.setLineNumber(reader.getLineNumber());
+                + "': " + Arrays.asList(
+                    scanner.getLine().split(fieldDelimiter))));
+        ir.setLineNumber(scanner.getLineNumber());
         throw ir;
       }
     }
     if (identifierFieldNumber != 0) {
-      try {
-      identifier = fields[identifierFieldNumber-1].trim();
-      } catch (IndexOutOfBoundsException ae) {
+      identifier = scanner.getField(identifierFieldNumber, delimiter);
+      if (identifier == null) {
         InventoryReaderException ir = new InventoryReaderException(
             new IndexOutOfBoundsException("Could not retrieve the "
                 + "LIDVID-LID value after parsing the line in the file '"
-                + dataFile + "': " + Arrays.asList(fields)));
-        ir.setLineNumber(reader.getLineNumber());
+                + dataFile + "': " + Arrays.asList(
+                    scanner.getLine().split(fieldDelimiter))));
+        ir.setLineNumber(scanner.getLineNumber());
         throw ir;
       }
     }
     return new InventoryEntry(identifier, memberStatus);
   }
+
+  /**
+   * Closes the data file.
+   */
+  private void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Nothing more to read from it
+      }
+      channel = null;
+    }
+  }
+
+  private static TableScanner get(Future<TableScanner> scanner)
+      throws IOException {
+    try {
+      return scanner.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading the data file");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static int getThreads() {
+    return Math.max(1, Integer.getInteger(THREADS_PROP,
+        Math.min(4, Runtime.getRuntime().availableProcessors())));
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (pool == null) {
+      final AtomicInteger count = new AtomicInteger();
+      pool = Executors.newFixedThreadPool(getThreads(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "inventory-" + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return pool;
+  }
 }
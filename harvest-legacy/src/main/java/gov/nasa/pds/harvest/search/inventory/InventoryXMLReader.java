@@ -80,4 +80,16 @@ public class InventoryXMLReader implements InventoryReader {
     }
     return new InventoryEntry(lidvid, memberStatus);
   }
+
+  /**
+   * Gets the next product file references in the PDS Inventory file.
+   *
+   * @param size The maximum number of references to get.
+   *
+   * @return The next references, or null if the end-of-file has been
+   * reached.
+   */
+  public InventoryBatch getNextBatch(int size) {
+    return InventoryBatch.read(this, size);
+  }
 }
@@ -0,0 +1,302 @@
+package gov.nasa.pds.harvest.search.inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lines of a byte range of a delimited table, and splits them on
+ * a single character delimiter without going through a regular
+ * expression.
+ * <p>
+ * The range is read through a large buffer with positional reads, so any
+ * number of scanners can read ranges of the same channel at once. Lines
+ * end with a line feed, a carriage return, or both, as with
+ * {@link java.io.BufferedReader#readLine()}. Lines are decoded in the
+ * platform charset, like a {@link java.io.FileReader} would, with plain
+ * ASCII lines taken straight from the bytes.
+ */
+class TableScanner {
+  /** Size of the read buffer. */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  /** The table. */
+  private final FileChannel channel;
+
+  /** The end of the range. */
+  private final long end;
+
+  /** The position of the next read. */
+  private long position;
+
+  /** The read buffer. */
+  private final ByteBuffer buffer;
+
+  /** The bytes of the current line. */
+  private byte[] line;
+
+  /** The length of the current line. */
+  private int length;
+
+  /** Whether the current line is plain ASCII. */
+  private boolean ascii;
+
+  /** The decoded current line, if it is not plain ASCII. */
+  private String decoded;
+
+  /** The number of lines read. */
+  private int lineNumber;
+
+  /** Whether a line feed following a carriage return is to be skipped. */
+  private boolean skipLF;
+
+  /** The charset of the table. */
+  private final Charset charset;
+
+  /** The current line, as characters. */
+  private final CharSequence text = new CharSequence() {
+    public int length() {
+      return ascii ? length : decoded.length();
+    }
+
+    public char charAt(int index) {
+      return ascii ? (char) line[index] : decoded.charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return ascii
+          ? new String(line, start, end - start, StandardCharsets.ISO_8859_1)
+          : decoded.substring(start, end);
+    }
+
+    public String toString() {
+      return subSequence(0, length()).toString();
+    }
+  };
+
+  /**
+   * Constructor.
+   *
+   * @param channel The table.
+   * @param start The start of the range, which must be the start of a
+   * line.
+   * @param end The end of the range, which must be the end of the table or
+   * the start of a line.
+   */
+  TableScanner(FileChannel channel, long start, long end) {
+    this.channel = channel;
+    this.position = start;
+    this.end = end;
+    this.buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE,
+        Math.max(1, end - start)));
+    this.buffer.flip();
+    this.line = new byte[256];
+    this.length = 0;
+    this.lineNumber = 0;
+    this.skipLF = false;
+    this.charset = Charset.defaultCharset();
+  }
+
+  /**
+   * Finds the start of the first line at or after a position.
+   *
+   * @param channel The table.
+   * @param position The position.
+   *
+   * @return The start of the line, or the size of the table if there is
+   * none.
+   *
+   * @throws IOException If the table could not be read.
+   */
+  static long alignToLine(FileChannel channel, long position)
+      throws IOException {
+    long size = channel.size();
+    if (position <= 0) {
+      return 0;
+    }
+    // Only break after a line feed, so that a CR LF pair stays together
+    ByteBuffer probe = ByteBuffer.allocate(8192);
+    long pos = position - 1;
+    while (pos < size) {
+      probe.clear();
+      int n = channel.read(probe, pos);
+      if (n <= 0) {
+        break;
+      }
+      for (int i = 0; i < n; i++) {
+        if (probe.get(i) == '\n') {
+          return pos + i + 1;
+        }
+      }
+      pos += n;
+    }
+    return size;
+  }
+
+  /**
+   * Reads the next line.
+   *
+   * @return true if a line was read, false at the end of the range.
+   *
+   * @throws IOException If the table could not be read.
+   */
+  boolean nextLine() throws IOException {
+    length = 0;
+    ascii = true;
+    decoded = null;
+    boolean read = false;
+    while (true) {
+      if (!buffer.hasRemaining() && !fill()) {
+        break;
+      }
+      byte[] bytes = buffer.array();
+      int from = buffer.position();
+      int limit = buffer.limit();
+      if (skipLF) {
+        skipLF = false;
+        if (bytes[from] == '\n') {
+          buffer.position(++from);
+          continue;
+        }
+      }
+      int i = from;
+      while (i < limit) {
+        byte b = bytes[i];
+        if (b == '\n' || b == '\r') {
+          break;
+        }
+        if (b < 0) {
+          ascii = false;
+        }
+        i++;
+      }
+      append(bytes, from, i - from);
+      read = true;
+      if (i < limit) {
+        skipLF = bytes[i] == '\r';
+        buffer.position(i + 1);
+        lineNumber++;
+        finish();
+        return true;
+      }
+      buffer.position(i);
+    }
+    if (read) {
+      lineNumber++;
+      finish();
+    }
+    return read;
+  }
+
+  private boolean fill() throws IOException {
+    if (position >= end) {
+      return false;
+    }
+    buffer.clear();
+    if (end - position < buffer.capacity()) {
+      buffer.limit((int) (end - position));
+    }
+    int n = channel.read(buffer, position);
+    buffer.flip();
+    if (n <= 0) {
+      return false;
+    }
+    position += n;
+    return true;
+  }
+
+  private void append(byte[] bytes, int from, int count) {
+    if (length + count > line.length) {
+      byte[] grown = new byte[Math.max(line.length * 2, length + count)];
+      System.arraycopy(line, 0, grown, 0, length);
+      line = grown;
+    }
+    System.arraycopy(bytes, from, line, length, count);
+    length += count;
+  }
+
+  private void finish() {
+    if (!ascii) {
+      decoded = new String(line, 0, length, charset);
+    }
+  }
+
+  /**
+   * Gets the number of lines read in the range.
+   *
+   * @return The number of lines.
+   */
+  int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Gets the current line.
+   *
+   * @return The line.
+   */
+  String getLine() {
+    return text.toString();
+  }
+
+  /**
+   * Determines whether the current line is nothing but white space.
+   *
+   * @return true if the line is blank.
+   */
+  boolean isBlank() {
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets a field of the current line, trimmed. A field is only there if
+   * it or a later field has something in it, as with
+   * {@link String#split(String)}, which drops trailing empty fields.
+   *
+   * @param number The field number, starting at 1.
+   * @param delimiter The field delimiter.
+   *
+   * @return The field, or null if the line has no such field.
+   */
+  String getField(int number, char delimiter) {
+    int count = text.length();
+    int start = 0;
+    for (int field = 1; field < number; field++) {
+      while (start < count && text.charAt(start) != delimiter) {
+        start++;
+      }
+      if (start == count) {
+        return null;
+      }
+      start++;
+    }
+    int stop = start;
+    while (stop < count && text.charAt(stop) != delimiter) {
+      stop++;
+    }
+    if (stop == start) {
+      int rest = stop;
+      while (rest < count && text.charAt(rest) == delimiter) {
+        rest++;
+      }
+      if (rest == count) {
+        return null;
+      }
+    }
+    // Trim the way String.trim() does
+    while (start < stop && text.charAt(start) <= ' ') {
+      start++;
+    }
+    while (stop > start && text.charAt(stop - 1) <= ' ') {
+      stop--;
+    }
+    return text.subSequence(start, stop).toString();
+  }
+}
@@ -12,6 +12,18 @@ public class ToolsLogRecord extends LogRecord {
 	private String filename;
     private int line;
 
+    /** Builds the message when it is first asked for, or null if built. */
+    private transient MessageBuilder builder;
+
+    /**
+     * Builds the message of a record. The message is only built if a
+     * handler formats the record, so that costly DEBUG messages are not
+     * built when they are not logged.
+     */
+    public interface MessageBuilder {
+        String build() throws Exception;
+    }
+
     public ToolsLogRecord(Level level, String message) {
         this(level, message, null, -1);
     }
@@ -28,11 +40,32 @@ public class ToolsLogRecord extends LogRecord {
         this(level, message, filename.toString(), -1);
     }
 
+    public ToolsLogRecord(Level level, MessageBuilder builder) {
+        this(level, "", null, -1);
+        this.builder = builder;
+    }
+
     public ToolsLogRecord(Level level, String message, String filename,
             int line) {
         super(level, message);
         this.filename = filename;
         this.line = line;
+        this.builder = null;
+    }
+
+    @Override
+    public synchronized String getMessage() {
+        if (builder != null) {
+            MessageBuilder messageBuilder = builder;
+            builder = null;
+            try {
+                setMessage(messageBuilder.build());
+            } catch (Exception e) {
+                setMessage("Could not build the log message: "
+                    + e.getMessage());
+            }
+        }
+        return super.getMessage();
     }
 
     public String getFilename() {
@@ -5,6 +5,7 @@ import java.util.Map.Entry;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
+import gov.nasa.pds.harvest.search.file.ChecksumService;
 import gov.nasa.pds.harvest.search.logging.ToolsLevel;
 import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
 import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
@@ -36,16 +37,16 @@ public class HarvestFormatter extends Formatter {
   public String format(LogRecord record) {
     if (record instanceof ToolsLogRecord) {
       ToolsLogRecord tlr = (ToolsLogRecord) record;
-      StringBuffer message = new StringBuffer();
+      StringBuilder message = new StringBuilder(128);
       if (tlr.getLevel().intValue() == ToolsLevel.NOTIFICATION.intValue()) {
         return tlr.getMessage() + lineFeed;
       }
       if (tlr.getLevel().intValue() == ToolsLevel.WARNING.intValue()) {
         ++numWarnings;
-        ++HarvestSolrStats.numWarnings;
+        HarvestSolrStats.numWarnings.increment();
       } else if (tlr.getLevel().intValue() == ToolsLevel.SEVERE.intValue()) {
         ++numErrors;
-        ++HarvestSolrStats.numErrors;
+        HarvestSolrStats.numErrors.increment();
       }
       if (tlr.getLevel().intValue() != ToolsLevel.CONFIGURATION.intValue()) {
         if (tlr.getLevel().intValue() == ToolsLevel.SEVERE.intValue()) {
@@ -56,10 +57,10 @@ public class HarvestFormatter extends Formatter {
         message.append(":   ");
       }
       if (tlr.getFilename() != null) {
-        message.append("[" + tlr.getFilename() + "] ");
+        message.append('[').append(tlr.getFilename()).append("] ");
       }
       if (tlr.getLine() != -1) {
-        message.append("line " + tlr.getLine() + ": ");
+        message.append("line ").append(tlr.getLine()).append(": ");
       }
       message.append(tlr.getMessage());
       message.append(lineFeed);
@@ -72,10 +73,10 @@ public class HarvestFormatter extends Formatter {
 
   private void processSummary() 
   {
-    int totalFiles = HarvestSolrStats.numGoodFiles + HarvestSolrStats.numBadFiles;
+    long totalFiles = HarvestSolrStats.numGoodFiles.sum() + HarvestSolrStats.numBadFiles.sum();
 
-    summary.append(HarvestSolrStats.numGoodFiles + " of " + totalFiles
-        + " file(s) processed, " + HarvestSolrStats.numFilesSkipped
+    summary.append(HarvestSolrStats.numGoodFiles.sum() + " of " + totalFiles
+        + " file(s) processed, " + HarvestSolrStats.numFilesSkipped.sum()
         + " other file(s) skipped" + lineFeed);
     summary.append(numErrors + " error(s), " + numWarnings + " warning(s)"
         + doubleLineFeed);
@@ -83,69 +84,78 @@ public class HarvestFormatter extends Formatter {
 
     // Registry collection (Labels)
     summary.append("Product Labels:" + lineFeed);
-    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numProductsRegistered,
+    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numProductsRegistered.sum(),
         "Successfully registered"));
     summary.append(lineFeed);
-    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numProductsNotRegistered,
+    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numProductsNotRegistered.sum(),
         "Failed to register"));
     summary.append(doubleLineFeed);
     
     // Registry Search collection
     summary.append("Registry Search Solr Documents:" + lineFeed);
-    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numDocumentsCreated, "Successfully created"));
+    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numDocumentsCreated.sum(), "Successfully created"));
     summary.append(lineFeed);
-    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numDocumentsNotCreated, "Failed to get created"));
+    summary.append(String.format("%-10d %-25s", HarvestSolrStats.numDocumentsNotCreated.sum(), "Failed to get created"));
     summary.append(doubleLineFeed);
     
     summary.append("Product Types Handled:" + lineFeed);
     for (Entry<String, BigInteger> entry :
-      HarvestSolrStats.registeredProductTypes.entrySet()) {
+      HarvestSolrStats.getProductTypes().entrySet()) {
       summary.append(entry.getValue().toString() + " " + entry.getKey()
           + lineFeed);
     }
 
-    int totalGeneratedChecksumsVsManifest =
-      HarvestSolrStats.numGeneratedChecksumsSameInManifest
-    + HarvestSolrStats.numGeneratedChecksumsDiffInManifest;
+    long totalGeneratedChecksumsVsManifest =
+      HarvestSolrStats.numGeneratedChecksumsSameInManifest.sum()
+    + HarvestSolrStats.numGeneratedChecksumsDiffInManifest.sum();
 
     if ( (totalGeneratedChecksumsVsManifest != 0)
-        || (HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest != 0) ) {
-      summary.append(lineFeed + HarvestSolrStats.numGeneratedChecksumsSameInManifest
+        || (HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest.sum() != 0) ) {
+      summary.append(lineFeed + HarvestSolrStats.numGeneratedChecksumsSameInManifest.sum()
           + " of " + totalGeneratedChecksumsVsManifest
           + " generated checksums matched "
           + "their supplied value in the manifest, "
-          + HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest
+          + HarvestSolrStats.numGeneratedChecksumsNotCheckedInManifest.sum()
           + " value(s) not checked." + lineFeed);
     }
 
-    int totalGeneratedChecksumsVsLabel =
-      HarvestSolrStats.numGeneratedChecksumsSameInLabel
-      + HarvestSolrStats.numGeneratedChecksumsDiffInLabel;
+    long totalGeneratedChecksumsVsLabel =
+      HarvestSolrStats.numGeneratedChecksumsSameInLabel.sum()
+      + HarvestSolrStats.numGeneratedChecksumsDiffInLabel.sum();
 
     if ( (totalGeneratedChecksumsVsLabel != 0)
-        || (HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel != 0) ) {
-      summary.append(lineFeed + HarvestSolrStats.numGeneratedChecksumsSameInLabel
+        || (HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel.sum() != 0) ) {
+      summary.append(lineFeed + HarvestSolrStats.numGeneratedChecksumsSameInLabel.sum()
           + " of " + totalGeneratedChecksumsVsLabel
           + " generated checksums matched "
           + "the supplied value in their product label, "
-          + HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel
+          + HarvestSolrStats.numGeneratedChecksumsNotCheckedInLabel.sum()
           + " value(s) not checked." + lineFeed);
     }
 
-    int totalManifestChecksumsVsLabel =
-      HarvestSolrStats.numManifestChecksumsSameInLabel
-      + HarvestSolrStats.numManifestChecksumsDiffInLabel;
+    long totalManifestChecksumsVsLabel =
+      HarvestSolrStats.numManifestChecksumsSameInLabel.sum()
+      + HarvestSolrStats.numManifestChecksumsDiffInLabel.sum();
 
     if ( (totalManifestChecksumsVsLabel != 0)
-        || (HarvestSolrStats.numManifestChecksumsNotCheckedInLabel != 0) ) {
-      summary.append(lineFeed + HarvestSolrStats.numManifestChecksumsSameInLabel
+        || (HarvestSolrStats.numManifestChecksumsNotCheckedInLabel.sum() != 0) ) {
+      summary.append(lineFeed + HarvestSolrStats.numManifestChecksumsSameInLabel.sum()
           + " of " + totalManifestChecksumsVsLabel
           + " checksums in the manifest matched "
           + "the supplied value in their product label, "
-          + HarvestSolrStats.numManifestChecksumsNotCheckedInLabel
+          + HarvestSolrStats.numManifestChecksumsNotCheckedInLabel.sum()
           + " value(s) not checked." + lineFeed);
     }
 
+    ChecksumService checksums = ChecksumService.getInstance();
+    if (checksums.getNumFiles() != 0 || checksums.getNumCached() != 0) {
+      summary.append(lineFeed + String.format(
+          "%d checksum(s) generated over %.1f MB at %.1f MB/s, "
+          + "%d taken from the checksum cache",
+          checksums.getNumFiles(), checksums.getNumBytes() / (1024.0 * 1024.0),
+          checksums.getThroughput(), checksums.getNumCached()) + lineFeed);
+    }
+
   }
 
   public String getTail(Handler handler) {
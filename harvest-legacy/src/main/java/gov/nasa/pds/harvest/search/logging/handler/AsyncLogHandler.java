@@ -0,0 +1,385 @@
+package gov.nasa.pds.harvest.search.logging.handler;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
+import gov.nasa.pds.harvest.search.logging.filter.ToolsLogFilter;
+
+/**
+ * Class to setup a handler that writes the tools logging messages on a
+ * thread of its own, so that a slow log does not hold up the crawl.
+ * <p>
+ * Records that pass the level and the filter are put on a bounded queue,
+ * and are only formatted once they are taken off it. The records waiting
+ * on the queue are formatted and written out together. When the queue is
+ * full, the {@link OverflowPolicy} decides whether to wait for room or to
+ * discard the record. The size of the queue and the policy can be set with
+ * the {@value #CAPACITY_PROP} and {@value #OVERFLOW_PROP} Java properties.
+ * The tool uses this handler unless {@value #ASYNC_PROP} is set to false.
+ */
+public class AsyncLogHandler extends Handler {
+    /**
+     * Java property to turn the handler off, in favor of writing on the
+     * calling thread, by setting it to false.
+     */
+    public static final String ASYNC_PROP = "pds.harvest.log.async";
+
+    /** Java property to set the number of records the queue holds. */
+    public static final String CAPACITY_PROP = "pds.harvest.log.capacity";
+
+    /** Java property to set the overflow policy, "block" or "discard". */
+    public static final String OVERFLOW_PROP = "pds.harvest.log.overflow";
+
+    /** Default number of records the queue holds. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Maximum number of records written at a time. */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * What to do with a record when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for room on the queue, so that no record is lost. */
+        BLOCK,
+
+        /** Discard the record, and report the count when closing. */
+        DISCARD
+    }
+
+    /** The records waiting to be written. */
+    private final BlockingQueue<LogRecord> queue;
+
+    /** What to do with a record when the queue is full. */
+    private final OverflowPolicy overflowPolicy;
+
+    /** Where the log is written. */
+    private final WritableByteChannel channel;
+
+    /** The thread writing the log. */
+    private final Thread writer;
+
+    /** Number of records discarded because the queue was full. */
+    private final AtomicLong numDiscarded;
+
+    /** Whether the head of the log has been written. */
+    private boolean doneHeader;
+
+    /** Whether the handler has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Constructor that does not append to a file, taking the size of the
+     * queue and the overflow policy from the Java properties.
+     *
+     * @param file A file name to store the logging messages. If the file
+     * exists, it will overwrite the existing contents.
+     * @param level Sets the logging level.
+     * @param formatter Formatter to be used to format the log messages.
+     *
+     * @throws IOException If the file could not be opened.
+     */
+    public AsyncLogHandler(String file, Level level, Formatter formatter)
+    throws IOException {
+        this(new FileOutputStream(file, false), level, formatter);
+    }
+
+    /**
+     * Constructor that takes the size of the queue and the overflow policy
+     * from the Java properties.
+     *
+     * @param out An output stream.
+     * @param level Sets the logging level.
+     * @param formatter Formatter to be used to format the log messages.
+     */
+    public AsyncLogHandler(OutputStream out, Level level,
+            Formatter formatter) {
+        this(out, level, formatter,
+                Integer.getInteger(CAPACITY_PROP, DEFAULT_CAPACITY),
+                getOverflowPolicy());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out An output stream.
+     * @param level Sets the logging level.
+     * @param formatter Formatter to be used to format the log messages.
+     * @param capacity The number of records the queue holds.
+     * @param overflowPolicy What to do with a record when the queue is
+     * full.
+     */
+    public AsyncLogHandler(OutputStream out, Level level,
+            Formatter formatter, int capacity,
+            OverflowPolicy overflowPolicy) {
+        setLevel(level);
+        setFormatter(formatter);
+        setFilter(new ToolsLogFilter());
+        this.queue = new ArrayBlockingQueue<LogRecord>(Math.max(16, capacity));
+        this.overflowPolicy = overflowPolicy;
+        this.channel = Channels.newChannel(out);
+        this.numDiscarded = new AtomicLong();
+        this.doneHeader = false;
+        this.closed = false;
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "harvest-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static OverflowPolicy getOverflowPolicy() {
+        String policy = System.getProperty(OVERFLOW_PROP);
+        if ("discard".equalsIgnoreCase(policy)) {
+            return OverflowPolicy.DISCARD;
+        }
+        return OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Queues a record to be written, if it passes the level and the filter.
+     * A message that is built on demand is built here, so that it shows
+     * the state at the time of the call, while the formatting is left to
+     * the writer.
+     *
+     * @param record The log record.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        record.getMessage();
+        if (overflowPolicy == OverflowPolicy.DISCARD) {
+            if (!queue.offer(record)) {
+                numDiscarded.incrementAndGet();
+            }
+        } else {
+            enqueue(record);
+        }
+    }
+
+    /**
+     * Waits until the records queued so far have been written.
+     */
+    @Override
+    public void flush() {
+        if (closed || !writer.isAlive()) {
+            return;
+        }
+        Marker marker = new Marker(false);
+        enqueue(marker);
+        marker.await(writer);
+    }
+
+    /**
+     * Writes the records still queued and the tail of the log, then closes
+     * the output.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (writer.isAlive()) {
+            Marker marker = new Marker(true);
+            enqueue(marker);
+            marker.await(writer);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    /**
+     * Puts a record on the queue, waiting for room if need be. The record
+     * is dropped if the writer is gone.
+     */
+    private void enqueue(LogRecord record) {
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                if (queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes records off the queue and writes them until the handler is
+     * closed.
+     */
+    private void drain() {
+        List<LogRecord> batch = new ArrayList<LogRecord>(BATCH_SIZE);
+        StringBuilder text = new StringBuilder();
+        boolean done = false;
+        while (!done) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            text.setLength(0);
+            List<Marker> markers = new ArrayList<Marker>();
+            for (LogRecord record : batch) {
+                if (record instanceof Marker) {
+                    Marker marker = (Marker) record;
+                    markers.add(marker);
+                    if (marker.isLast()) {
+                        finish(text);
+                        done = true;
+                        break;
+                    }
+                } else {
+                    append(text, record);
+                }
+            }
+            write(text);
+            for (Marker marker : markers) {
+                marker.release();
+            }
+        }
+    }
+
+    /**
+     * Formats a record onto the text to write.
+     */
+    private void append(StringBuilder text, LogRecord record) {
+        try {
+            if (!doneHeader) {
+                text.append(getFormatter().getHead(this));
+                doneHeader = true;
+            }
+            text.append(getFormatter().format(record));
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+        }
+    }
+
+    /**
+     * Adds the count of discarded records and the tail of the log to the
+     * text to write.
+     */
+    private void finish(StringBuilder text) {
+        long discarded = numDiscarded.get();
+        if (discarded != 0) {
+            append(text, new ToolsLogRecord(ToolsLevel.WARNING, discarded
+                    + " log message(s) were discarded because the log"
+                    + " could not keep up"));
+        }
+        try {
+            if (!doneHeader) {
+                text.append(getFormatter().getHead(this));
+                doneHeader = true;
+            }
+            text.append(getFormatter().getTail(this));
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+        }
+    }
+
+    /**
+     * Writes out the formatted records in one go.
+     */
+    private void write(StringBuilder text) {
+        if (text.length() == 0) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(
+                    text.toString().getBytes(getCharset()));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private Charset getCharset() {
+        return getEncoding() == null ? Charset.defaultCharset()
+                : Charset.forName(getEncoding());
+    }
+
+    /**
+     * A record telling the writer that the records queued before it have
+     * been written.
+     */
+    private static class Marker extends LogRecord {
+        private static final long serialVersionUID = 1L;
+
+        /** Whether the writer is to stop after it. */
+        private final boolean last;
+
+        /** Released once the records before it have been written. */
+        private final CountDownLatch written;
+
+        Marker(boolean last) {
+            super(Level.OFF, null);
+            this.last = last;
+            this.written = new CountDownLatch(1);
+        }
+
+        boolean isLast() {
+            return last;
+        }
+
+        void release() {
+            written.countDown();
+        }
+
+        /**
+         * Waits until the records before it have been written, or the
+         * writer is gone.
+         */
+        void await(Thread writer) {
+            boolean interrupted = false;
+            while (writer.isAlive()) {
+                try {
+                    if (written.await(100, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package gov.nasa.pds.harvest.search.oodt.crawler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out turns to products that are being handled concurrently so that the
+ * order-sensitive part of the crawl (generation of the Solr documents) happens
+ * in the same order as a single-threaded crawl would produce.
+ * <p>
+ * Every product handed to a worker gets a ticket from the crawler, in the
+ * order in which the crawler found it. A worker calls {@link #await(long)}
+ * before running its ordered work and must always call {@link #release(long)}
+ * when it is done with the product, whether or not it waited for its turn.
+ */
+class CrawlSequencer {
+
+  /** The ticket whose turn it is. */
+  private long next;
+
+  /** Tickets that finished before their turn came up. */
+  private Set<Long> released;
+
+  CrawlSequencer() {
+    this.next = 0;
+    this.released = new HashSet<Long>();
+  }
+
+  /**
+   * Blocks until it is the turn of the given ticket.
+   *
+   * @param ticket The ticket of the product.
+   */
+  synchronized void await(long ticket) {
+    boolean interrupted = false;
+    while (next != ticket) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        // Giving up the turn would stall every ticket after this one.
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Marks the given ticket as done and passes the turn along.
+   *
+   * @param ticket The ticket of the product.
+   */
+  synchronized void release(long ticket) {
+    if (ticket != next) {
+      released.add(ticket);
+      return;
+    }
+    next++;
+    while (released.remove(next)) {
+      next++;
+    }
+    notifyAll();
+  }
+}
@@ -23,6 +23,7 @@ import java.util.logging.Logger;
 import org.apache.commons.lang.Validate;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.CrawlerActionException;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 
 /**
  * An action taken by the crawler during success or fail of one of its lifecycle states: preIngest,
@@ -93,4 +94,13 @@ public abstract class CrawlerAction {
   public abstract boolean performAction(File product, Metadata productMetadata)
       throws CrawlerActionException;
 
+  /**
+   * Performs the action with access to the label the crawler has already parsed. Actions that
+   * read the label should override this to avoid parsing it again.
+   */
+  public boolean performAction(File product, Metadata productMetadata, ParsedLabel label)
+      throws CrawlerActionException {
+    return performAction(product, productMetadata);
+  }
+
 }
@@ -0,0 +1,54 @@
+package gov.nasa.pds.harvest.search.oodt.crawler;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ingest status sink that only counts the products of each result, so
+ * that its size stays the same however many products are crawled. It does
+ * not keep the statuses themselves.
+ */
+public class IngestStatusCounter implements IngestStatusSink {
+
+  /** Number of products of each result, by the ordinal of the result. */
+  private final LongAdder[] counts;
+
+  public IngestStatusCounter() {
+    IngestStatus.Result[] results = IngestStatus.Result.values();
+    this.counts = new LongAdder[results.length];
+    for (int i = 0; i < results.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void add(IngestStatus status) {
+    counts[status.getResult().ordinal()].increment();
+  }
+
+  public long getCount(IngestStatus.Result result) {
+    return counts[result.ordinal()].sum();
+  }
+
+  /**
+   * Gets the total number of products.
+   *
+   * @return The number of products.
+   */
+  public long getTotal() {
+    long total = 0;
+    for (LongAdder count : counts) {
+      total += count.sum();
+    }
+    return total;
+  }
+
+  /**
+   * The statuses are not kept, so there are none to go through.
+   *
+   * @return An empty iterator.
+   */
+  public Iterator<IngestStatus> iterator() {
+    return Collections.<IngestStatus>emptyList().iterator();
+  }
+}
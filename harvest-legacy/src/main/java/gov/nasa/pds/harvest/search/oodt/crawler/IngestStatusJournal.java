@@ -0,0 +1,329 @@
+package gov.nasa.pds.harvest.search.oodt.crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An ingest status sink that counts the products of each result, and
+ * writes the status of each product to a journal file instead of keeping
+ * it in memory. Going through the statuses reads them back from the
+ * journal one at a time.
+ * <p>
+ * The journal has a line per product, holding the result, the product
+ * file and the message, separated by tabs. Tabs, line breaks and
+ * backslashes in the file and message are escaped with a backslash. The
+ * harvest tool writes a journal when the {@value #FILE_PROP} Java property
+ * is set to its location.
+ */
+public class IngestStatusJournal extends IngestStatusCounter {
+
+  /** Java property to set the journal file of a harvest run. */
+  public static final String FILE_PROP = "pds.harvest.status.journal";
+
+  private static Logger LOG = Logger.getLogger(IngestStatusJournal.class.getName());
+
+  /** The journal file. */
+  private final File file;
+
+  /** Writes the journal, or null once closed. */
+  private OutputStream writer;
+
+  /** Number of bytes written to the journal. */
+  private long position;
+
+  /** Number of bytes of the journal read at a time. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Constructor. An existing journal file is replaced.
+   *
+   * @param file The journal file.
+   *
+   * @throws IOException If the journal file could not be created.
+   */
+  public IngestStatusJournal(File file) throws IOException {
+    this.file = file;
+    this.writer = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+    this.position = 0;
+  }
+
+  /**
+   * Gets the journal file.
+   *
+   * @return The journal file.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the position in the journal where the next status will be
+   * written, so that the statuses from then on can be gone through.
+   *
+   * @return The position.
+   */
+  public synchronized long getPosition() {
+    return position;
+  }
+
+  @Override
+  public void add(IngestStatus status) {
+    super.add(status);
+    StringBuilder line = new StringBuilder(128);
+    line.append(status.getResult().name()).append('\t');
+    escape(line, status.getProduct() == null ? "" : status.getProduct().getPath());
+    line.append('\t');
+    escape(line, status.getMessage() == null ? "" : status.getMessage());
+    line.append('\n');
+    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+    synchronized (this) {
+      if (writer == null) {
+        return;
+      }
+      try {
+        writer.write(bytes);
+        position += bytes.length;
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Cannot write to the ingest status journal " + file
+            + ", no more statuses will be written to it: " + e.getMessage());
+        closeQuietly();
+      }
+    }
+  }
+
+  /**
+   * Goes through the statuses written so far, reading them from the
+   * journal as it goes.
+   *
+   * @return The statuses, in the order they were written.
+   */
+  @Override
+  public Iterator<IngestStatus> iterator() {
+    return iterator(0);
+  }
+
+  /**
+   * Goes through the statuses written so far from the given position on,
+   * reading them from the journal as it goes. Statuses written after this
+   * call are not included.
+   *
+   * @param start A position returned by {@link #getPosition()}.
+   *
+   * @return The statuses, in the order they were written.
+   */
+  public Iterator<IngestStatus> iterator(long start) {
+    long end;
+    synchronized (this) {
+      if (writer != null) {
+        try {
+          writer.flush();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      end = position;
+    }
+    return new JournalIterator(file, start, end);
+  }
+
+  /**
+   * Finishes the journal. Statuses taken afterward are counted but not
+   * written.
+   *
+   * @throws IOException If the journal could not be written.
+   */
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      try {
+        writer.close();
+      } finally {
+        writer = null;
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      // Already reported
+    }
+  }
+
+  private static void escape(StringBuilder line, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\t':
+          line.append("\\t");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        case '\\':
+          line.append("\\\\");
+          break;
+        default:
+          line.append(c);
+      }
+    }
+  }
+
+  private static String unescape(String value) {
+    if (value.indexOf('\\') == -1) {
+      return value;
+    }
+    StringBuilder text = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        char next = value.charAt(++i);
+        text.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        text.append(c);
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Reads the statuses back from a range of the journal. The journal is
+   * only open while a chunk of statuses is read, so an iterator that is not
+   * gone through to the end leaves no file open.
+   */
+  private static class JournalIterator implements Iterator<IngestStatus> {
+
+    private final File file;
+
+    private long offset;
+
+    private final long end;
+
+    private final Deque<IngestStatus> statuses;
+
+    JournalIterator(File file, long start, long end) {
+      this.file = file;
+      this.offset = start;
+      this.end = end;
+      this.statuses = new ArrayDeque<IngestStatus>();
+    }
+
+    public boolean hasNext() {
+      while (statuses.isEmpty() && offset < end) {
+        readChunk();
+      }
+      return !statuses.isEmpty();
+    }
+
+    public IngestStatus next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return statuses.removeFirst();
+    }
+
+    /**
+     * Reads the whole lines in the next chunk of the range.
+     */
+    private void readChunk() {
+      int size = (int) Math.min(CHUNK_SIZE, end - offset);
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      try {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+          while (true) {
+            while (buffer.hasRemaining()
+                && channel.read(buffer, offset + buffer.position()) > 0) {
+            }
+            int last = buffer.position() - 1;
+            while (last >= 0 && buffer.get(last) != '\n') {
+              last--;
+            }
+            if (last >= 0) {
+              parse(buffer.array(), last + 1);
+              offset += last + 1;
+              return;
+            }
+            if (buffer.hasRemaining() || buffer.capacity() >= end - offset) {
+              // The journal ends without a whole line
+              offset = end;
+              return;
+            }
+            // A line longer than the chunk
+            ByteBuffer larger = ByteBuffer.allocate(
+                (int) Math.min(buffer.capacity() * 2L, end - offset));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+          }
+        } finally {
+          channel.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void parse(byte[] bytes, int length) {
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] == '\n') {
+          String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+          String[] fields = line.split("\t", -1);
+          if (fields.length == 3) {
+            statuses.addLast(new JournalEntry(IngestStatus.Result.valueOf(fields[0]),
+                new File(unescape(fields[1])), unescape(fields[2])));
+          }
+          start = i + 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * The status of a product as read from the journal.
+   */
+  private static class JournalEntry implements IngestStatus {
+
+    private final Result result;
+
+    private final File product;
+
+    private final String message;
+
+    JournalEntry(Result result, File product, String message) {
+      this.result = result;
+      this.product = product;
+      this.message = message;
+    }
+
+    public File getProduct() {
+      return product;
+    }
+
+    public Result getResult() {
+      return result;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package gov.nasa.pds.harvest.search.oodt.crawler;
+
+/**
+ * Takes the ingest status of each product handled by a crawl. A sink may
+ * be handed statuses from several crawler threads at once.
+ */
+public interface IngestStatusSink extends Iterable<IngestStatus> {
+
+  /**
+   * Takes the ingest status of a product.
+   *
+   * @param status The ingest status.
+   */
+  void add(IngestStatus status);
+
+  /**
+   * Gets the number of products with the given result.
+   *
+   * @param result The result.
+   *
+   * @return The number of products.
+   */
+  long getCount(IngestStatus.Result result);
+}
@@ -17,16 +17,30 @@ package gov.nasa.pds.harvest.search.oodt.crawler;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.net.URL;
-import java.util.Collections;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
-import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import com.google.common.annotations.VisibleForTesting;
 import gov.nasa.pds.harvest.search.oodt.filemgr.Ingester;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 
 
 /**
@@ -56,17 +70,58 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
     }
   };
 
-  protected List<IngestStatus> ingestStatus = new Vector<IngestStatus>();
+  // The parts of DIR_FILTER and FILE_FILTER that look at the name only, for
+  // when the type of the file is already known. Set along with them.
+  protected static FileFilter DIR_NAME_FILTER = new FileFilter() {
+    public boolean accept(File file) {
+      return true;
+    }
+  };
+
+  protected static FileFilter FILE_NAME_FILTER = new FileFilter() {
+    public boolean accept(File file) {
+      return true;
+    }
+  };
+
+  // Takes the ingest status of each product. Unless one is set, a new sink
+  // that only counts the statuses is used for each crawl.
+  protected IngestStatusSink ingestStatus = new IngestStatusCounter();
+  private boolean ingestStatusSet = false;
+  // Where the statuses of the last crawl start in a journal that was set as
+  // the sink.
+  private long journalStart = 0;
   protected CrawlerActionRepo actionRepo;
   protected Ingester ingester;
 
+  // Workers of a multi-threaded crawl. Null when crawling on a single thread.
+  private ExecutorService workers;
+
+  // Limits the number of products waiting on the workers.
+  private Semaphore inFlight;
+
+  // Keeps the post-ingest actions in crawl order.
+  private CrawlSequencer sequencer;
+
+  private long nextTicket;
+
+  // Ticket of the product being handled by the current worker thread.
+  private final ThreadLocal<Long> ticket = new ThreadLocal<Long>();
+
+  // Number of products whose ingest status is not final yet.
+  private long pendingStatuses = 0;
+  private final Object statusLock = new Object();
+
+  // How long to wait for an ingest status while none becomes final.
+  private static final long STATUS_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
   public void crawl() {
     crawl(new File(getProductPath()));
   }
 
   public void crawl(File dirRoot) {
     // Reset ingest status.
-    ingestStatus.clear();
+    resetIngestStatus();
 
     // Load actions.
     loadAndValidateActions();
@@ -79,54 +134,317 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       throw new IllegalArgumentException("dir root is null or non existant!");
     }
 
+    if (getNumThreads() > 1) {
+      startWorkers(getNumThreads());
+    }
+    try {
+      walk(dirRoot);
+    } finally {
+      stopWorkers();
+      awaitStatuses();
+    }
+  }
+
+  /**
+   * Handles the given files the way a crawl of the product path would. A
+   * directory is crawled. A file is handled if it passes the file filter and
+   * lies in a directory that a crawl of the product path would visit.
+   *
+   * @param files New or modified files under the product path.
+   */
+  public void crawl(List<File> files) {
+    // Reset ingest status.
+    resetIngestStatus();
+
+    // Load actions.
+    loadAndValidateActions();
+
+    File root = new File(getProductPath()).getAbsoluteFile();
+    if (getNumThreads() > 1) {
+      startWorkers(getNumThreads());
+    }
+    try {
+      for (File file : files) {
+        if (!isWithinCrawl(root, file.getAbsoluteFile())) {
+          LOG.log(Level.FINE, "Ignoring " + file);
+        } else if (file.isDirectory()) {
+          walk(file);
+        } else if (!isCrawlForDirs() && FILE_FILTER.accept(file)) {
+          dispatch(file);
+        }
+      }
+    } finally {
+      stopWorkers();
+      awaitStatuses();
+    }
+  }
+
+  /**
+   * Determines whether a crawl starting at the given root would visit the
+   * given file.
+   *
+   * @param root The root of the crawl.
+   * @param file The file.
+   *
+   * @return true if the file is visited.
+   */
+  private boolean isWithinCrawl(File root, File file) {
+    File dir = file.isDirectory() ? file : file.getParentFile();
+    while (dir != null && !dir.equals(root)) {
+      if (isNoRecur() || !DIR_FILTER.accept(dir)) {
+        return false;
+      }
+      dir = dir.getParentFile();
+    }
+    return dir != null;
+  }
+
+  private void walk(File dirRoot) {
     // Start crawling.
     Stack<File> stack = new Stack<File>();
     stack.push(dirRoot.isDirectory() ? dirRoot : dirRoot.getParentFile());
     while (!stack.isEmpty()) {
       File dir = (File) stack.pop();
       LOG.log(Level.FINE, "Crawling " + dir);
+      for (File subdir : crawlDirectory(dir)) {
+        stack.push(subdir);
+      }
+    }
+  }
+
+  /**
+   * Reads a directory once, handing each product to the crawl as soon as it
+   * is read. Files and subdirectories are told apart by the attributes read
+   * with the entry, so that the filters only have to look at the names.
+   *
+   * @param dir The directory.
+   *
+   * @return The subdirectories to crawl next, in the order they were read.
+   */
+  private List<File> crawlDirectory(File dir) {
+    List<File> subdirs = new ArrayList<File>();
+    DirectoryStream<Path> entries = null;
+    try {
+      entries = Files.newDirectoryStream(dir.toPath());
+      for (Path entry : entries) {
+        BasicFileAttributes attrs;
+        try {
+          attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+          // Such as a broken link, which is neither a file nor a directory
+          LOG.log(Level.FINE, "Skipping " + entry + ": " + e.getMessage());
+          continue;
+        }
+        File file = entry.toFile();
+        if (attrs.isDirectory()) {
+          if (DIR_NAME_FILTER.accept(file)) {
+            if (isCrawlForDirs()) {
+              dispatch(file);
+            }
+            if (!isNoRecur()) {
+              subdirs.add(file);
+            }
+          }
+        } else if (attrs.isRegularFile()) {
+          if (!isCrawlForDirs() && FILE_NAME_FILTER.accept(file)) {
+            dispatch(file);
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Cannot read directory " + dir + ": " + e.getMessage());
+    } catch (DirectoryIteratorException e) {
+      LOG.log(Level.WARNING, "Cannot read directory " + dir + ": "
+          + e.getCause().getMessage());
+    } finally {
+      if (entries != null) {
+        try {
+          entries.close();
+        } catch (IOException e) {
+          // Nothing left to read
+        }
+      }
+    }
+    return subdirs;
+  }
+
+  private void startWorkers(int numThreads) {
+    LOG.log(Level.INFO, "Crawling with " + numThreads + " threads");
+    workers = Executors.newFixedThreadPool(numThreads);
+    inFlight = new Semaphore(numThreads * 4);
+    sequencer = new CrawlSequencer();
+    nextTicket = 0;
+  }
 
-      File[] productFiles;
-      productFiles = isCrawlForDirs() ? dir.listFiles(DIR_FILTER) : dir.listFiles(FILE_FILTER);
+  private void stopWorkers() {
+    if (workers == null) {
+      return;
+    }
+    workers.shutdown();
+    try {
+      while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.log(Level.FINE, "Waiting for crawler threads to finish");
+      }
+    } catch (InterruptedException e) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+    } finally {
+      workers = null;
+      inFlight = null;
+      sequencer = null;
+    }
+  }
+
+  /**
+   * Handles the given product on the calling thread, or hands it to a worker
+   * when crawling with more than one thread.
+   *
+   * @param product The product file.
+   */
+  private void dispatch(final File product) {
+    if (workers == null) {
+      record(product, handleFile(product));
+      return;
+    }
+    inFlight.acquireUninterruptibly();
+    final long seq = nextTicket++;
+    workers.execute(new Runnable() {
+      public void run() {
+        ticket.set(seq);
+        try {
+          record(product, handleFile(product));
+        } catch (Throwable t) {
+          LOG.log(Level.SEVERE, "Unexpected error while handling product ["
+              + product + "]: " + t.getMessage(), t);
+          ingestStatus.add(createIngestStatus(product, IngestStatus.Result.FAILURE,
+              "Unexpected error: " + t.getMessage()));
+        } finally {
+          ticket.remove();
+          sequencer.release(seq);
+          inFlight.release();
+        }
+      }
+    });
+  }
 
-      if (productFiles != null) {
-        for (File productFile : productFiles) {
-          ingestStatus.add(handleFile(productFile));
+  /**
+   * Takes the ingest status of a product once it is final.
+   *
+   * @param product The product file.
+   * @param status The ingest status, which may not be known yet.
+   */
+  private void record(final File product, CompletableFuture<IngestStatus> status) {
+    synchronized (statusLock) {
+      pendingStatuses++;
+    }
+    status.whenComplete(new BiConsumer<IngestStatus, Throwable>() {
+      public void accept(IngestStatus result, Throwable t) {
+        try {
+          if (t == null) {
+            ingestStatus.add(result);
+          } else {
+            LOG.log(Level.SEVERE, "Unexpected error while handling product ["
+                + product + "]: " + t.getMessage(), t);
+            ingestStatus.add(createIngestStatus(product, IngestStatus.Result.FAILURE,
+                "Unexpected error: " + t.getMessage()));
+          }
+        } finally {
+          synchronized (statusLock) {
+            pendingStatuses--;
+            statusLock.notifyAll();
+          }
         }
       }
+    });
+  }
 
-      if (!isNoRecur()) {
-        File[] subdirs = dir.listFiles(DIR_FILTER);
-        if (subdirs != null) {
-          for (File subdir : subdirs) {
-            stack.push(subdir);
+  /**
+   * Waits until the ingest status of every product of the crawl is final,
+   * sending the products the ingester still holds right away. Gives up once
+   * no status has become final for a while, so that a stuck ingester does
+   * not hang the harvest.
+   */
+  private void awaitStatuses() {
+    synchronized (statusLock) {
+      if (pendingStatuses == 0) {
+        return;
+      }
+    }
+    try {
+      ingester.flush();
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Failed to flush the ingester: " + e.getMessage());
+    }
+    synchronized (statusLock) {
+      try {
+        long pending = pendingStatuses;
+        long deadline = System.currentTimeMillis() + STATUS_TIMEOUT;
+        while (pendingStatuses > 0) {
+          if (pendingStatuses < pending) {
+            pending = pendingStatuses;
+            deadline = System.currentTimeMillis() + STATUS_TIMEOUT;
+          }
+          long timeLeft = deadline - System.currentTimeMillis();
+          if (timeLeft <= 0) {
+            LOG.log(Level.WARNING, "Gave up waiting for " + pendingStatuses
+                + " product(s) to be ingested");
+            break;
           }
+          statusLock.wait(timeLeft);
         }
+      } catch (InterruptedException e) {
+        LOG.log(Level.WARNING, pendingStatuses
+            + " product(s) have not been ingested yet");
+        Thread.currentThread().interrupt();
       }
     }
   }
 
-  public IngestStatus handleFile(File product) {
+  /**
+   * Waits until the product being handled by the current thread is next in
+   * crawl order. Does nothing when crawling on a single thread.
+   */
+  protected void awaitTurn() {
+    Long seq = ticket.get();
+    if (seq != null && sequencer != null) {
+      sequencer.await(seq);
+    }
+  }
+
+  /**
+   * Handles the given product. A product that is handed to the ingester
+   * only has its ingest status once the ingester has accepted it or failed
+   * to, which may be after this method returns.
+   *
+   * @param product The product file.
+   *
+   * @return The ingest status of the product.
+   */
+  public CompletableFuture<IngestStatus> handleFile(File product) {
     LOG.log(Level.FINE, "Handling file " + product);
 
+    // The label is parsed once and shared by every step below.
+    ParsedLabel label = new ParsedLabel(product);
+
     // Check preconditions.
-    if (!passesPreconditions(product)) {
+    if (!passesPreconditions(product, label)) {
       LOG.log(Level.WARNING, "Failed to pass preconditions for ingest of product: ["
           + product.getAbsolutePath() + "]");
-      return createIngestStatus(product, IngestStatus.Result.PRECONDS_FAILED,
-          "Failed to pass preconditions");
+      return CompletableFuture.completedFuture(createIngestStatus(product,
+          IngestStatus.Result.PRECONDS_FAILED, "Failed to pass preconditions"));
     }
 
     // Generate Metadata for product.
     Metadata productMetadata = new Metadata();
     productMetadata.addMetadata(getGlobalMetadata());
     try {
-      productMetadata.replaceMetadata(getMetadataForProduct(product));
+      productMetadata.replaceMetadata(getMetadataForProduct(product, label));
     } catch (Exception e) {
       LOG.log(Level.SEVERE, "Failed to get metadata for product : " + e.getMessage(), e);
-      performPostIngestOnFailActions(product, productMetadata);
-      return createIngestStatus(product, IngestStatus.Result.FAILURE,
-          "Failed to get metadata for product : " + e.getMessage());
+      performPostIngestOnFailActions(product, productMetadata, label);
+      return CompletableFuture.completedFuture(createIngestStatus(product,
+          IngestStatus.Result.FAILURE, "Failed to get metadata for product : "
+          + e.getMessage()));
     }
 
     // Set known metadata if not already specified.
@@ -135,48 +453,128 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
     // Check that metadata contains required metadata.
     // if (!containsRequiredMetadata(productMetadata)) {
     // LOG.log(Level.SEVERE, "Missing required metadata for product '" + product + "'");
-    // performPostIngestOnFailActions(product, productMetadata);
+    // performPostIngestOnFailActions(product, productMetadata, label);
     // return createIngestStatus(product, IngestStatus.Result.FAILURE, "Missing required metadata");
     // }
 
     // Run preIngest actions.
-    if (!performPreIngestActions(product, productMetadata)) {
-      performPostIngestOnFailActions(product, productMetadata);
-      return createIngestStatus(product, IngestStatus.Result.FAILURE,
-          "PreIngest actions failed to complete");
+    if (!performPreIngestActions(product, productMetadata, label)) {
+      performPostIngestOnFailActions(product, productMetadata, label);
+      return CompletableFuture.completedFuture(createIngestStatus(product,
+          IngestStatus.Result.FAILURE, "PreIngest actions failed to complete"));
     }
 
     // Check if ingest has been turned off.
     if (isSkipIngest()) {
       LOG.log(Level.FINE, "Skipping ingest of product: [" + product.getAbsolutePath() + "]");
-      return createIngestStatus(product, IngestStatus.Result.SKIPPED, "Crawler ingest turned OFF");
+      return CompletableFuture.completedFuture(createIngestStatus(product,
+          IngestStatus.Result.SKIPPED, "Crawler ingest turned OFF"));
     }
 
     // Ingest product.
-    boolean ingestSuccess = ingest(product, productMetadata);
+    CompletableFuture<String> productId = ingest(product, productMetadata, label);
 
-    // On Successful Ingest.
-    if (ingestSuccess) {
-      LOG.log(Level.FINE, "Successful ingest of product: [" + product.getAbsolutePath() + "]");
-      performPostIngestOnSuccessActions(product, productMetadata);
-      return createIngestStatus(product, IngestStatus.Result.SUCCESS, "Ingest was successful");
+    // On Successful hand-off to the ingester. The post-ingest actions need the
+    // label and the crawl order, so they run now rather than once the
+    // ingester has accepted the product.
+    if (productId != null) {
+      LOG.log(Level.FINE, "Queued ingest of product: [" + product.getAbsolutePath() + "]");
+      performPostIngestOnSuccessActions(product, productMetadata, label);
+      return productId.handle(new IngestOutcome(product));
 
       // On Failed Ingest.
     } else {
       LOG.log(Level.WARNING, "Failed to ingest product: [" + product.getAbsolutePath()
           + "]: performing postIngestFail actions");
-      performPostIngestOnFailActions(product, productMetadata);
-      return createIngestStatus(product, IngestStatus.Result.FAILURE, "Failed to ingest product");
+      performPostIngestOnFailActions(product, productMetadata, label);
+      return CompletableFuture.completedFuture(createIngestStatus(product,
+          IngestStatus.Result.FAILURE, "Failed to ingest product"));
     }
   }
 
-  public List<IngestStatus> getIngestStatus() {
-    return Collections.unmodifiableList(ingestStatus);
+  /**
+   * Turns the answer of the ingester into the ingest status of a product.
+   */
+  private class IngestOutcome implements BiFunction<String, Throwable, IngestStatus> {
+
+    private final File product;
+
+    IngestOutcome(File product) {
+      this.product = product;
+    }
+
+    public IngestStatus apply(String productId, Throwable t) {
+      if (t == null) {
+        LOG.log(Level.FINE,
+            "Successfully ingested product: [" + product + "]: product id: " + productId);
+        return createIngestStatus(product, IngestStatus.Result.SUCCESS, "Ingest was successful");
+      }
+      LOG.log(Level.WARNING, "Failed to ingest product: [" + product.getAbsolutePath()
+          + "]: " + t.getMessage());
+      return createIngestStatus(product, IngestStatus.Result.FAILURE,
+          "Failed to ingest product: " + t.getMessage());
+    }
   }
 
-  protected abstract boolean passesPreconditions(File product);
+  /**
+   * Gets the ingest status of the products of the last crawl. The statuses
+   * are only kept if the sink keeps them, such as a journal, and are read
+   * back from it as they are iterated.
+   * <p>
+   * A journal set with {@link #setIngestStatusSink} may be shared with
+   * other crawlers, so only the statuses written to it since the last crawl
+   * started are gone through. These include the statuses other crawlers
+   * wrote to it during that crawl, if they ran at the same time. Each
+   * iteration stops at the statuses written by the time it started.
+   *
+   * @return The ingest statuses.
+   */
+  public Iterable<IngestStatus> getIngestStatus() {
+    if (ingestStatus instanceof IngestStatusJournal) {
+      final IngestStatusJournal journal = (IngestStatusJournal) ingestStatus;
+      final long start = journalStart;
+      return new Iterable<IngestStatus>() {
+        public Iterator<IngestStatus> iterator() {
+          return journal.iterator(start);
+        }
+      };
+    }
+    return ingestStatus;
+  }
+
+  /**
+   * Gets the sink taking the ingest status of each product. A sink that was
+   * set keeps counting across crawls and crawlers.
+   *
+   * @return The sink.
+   */
+  public IngestStatusSink getIngestStatusSink() {
+    return ingestStatus;
+  }
+
+  /**
+   * Sets the sink taking the ingest status of each product. The sink is
+   * kept across crawls, so that it can be shared by several crawlers.
+   *
+   * @param sink The sink.
+   */
+  public void setIngestStatusSink(IngestStatusSink sink) {
+    this.ingestStatus = sink;
+    this.ingestStatusSet = true;
+  }
+
+  private void resetIngestStatus() {
+    if (!ingestStatusSet) {
+      ingestStatus = new IngestStatusCounter();
+    } else if (ingestStatus instanceof IngestStatusJournal) {
+      journalStart = ((IngestStatusJournal) ingestStatus).getPosition();
+    }
+  }
+
+  protected abstract boolean passesPreconditions(File product, ParsedLabel label);
 
-  protected abstract Metadata getMetadataForProduct(File product) throws Exception;
+  protected abstract Metadata getMetadataForProduct(File product, ParsedLabel label)
+      throws Exception;
 
   // @VisibleForTesting
   // void setupIngester() {
@@ -259,44 +657,45 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
   }
 
   @VisibleForTesting
-  boolean ingest(File product, Metadata productMetdata) {
+  CompletableFuture<String> ingest(File product, Metadata productMetdata, ParsedLabel label) {
     try {
-      String productId = ingester.ingest(new URL(getFilemgrUrl()), product, productMetdata);
-      LOG.log(Level.FINE,
-          "Successfully ingested product: [" + product + "]: product id: " + productId);
+      return ingester.ingestAsync(new URL(getFilemgrUrl()), product, productMetdata, label);
     } catch (Exception e) {
       LOG.log(Level.WARNING, "ProductCrawler: Exception ingesting product: [" + product
           + "]: Message: " + e.getMessage() + ": attempting to continue crawling", e);
-      return false;
+      return null;
     }
-    return true;
   }
 
   @VisibleForTesting
-  boolean performPreIngestActions(File product, Metadata productMetadata) {
+  boolean performPreIngestActions(File product, Metadata productMetadata, ParsedLabel label) {
     if (actionRepo != null) {
       return performProductCrawlerActions(actionRepo.getPreIngestActions(), product,
-          productMetadata);
+          productMetadata, label);
     } else {
       return true;
     }
   }
 
   @VisibleForTesting
-  boolean performPostIngestOnSuccessActions(File product, Metadata productMetadata) {
+  boolean performPostIngestOnSuccessActions(File product, Metadata productMetadata,
+      ParsedLabel label) {
+    awaitTurn();
     if (actionRepo != null) {
       return performProductCrawlerActions(actionRepo.getPostIngestOnSuccessActions(), product,
-          productMetadata);
+          productMetadata, label);
     } else {
       return true;
     }
   }
 
   @VisibleForTesting
-  boolean performPostIngestOnFailActions(File product, Metadata productMetadata) {
+  boolean performPostIngestOnFailActions(File product, Metadata productMetadata,
+      ParsedLabel label) {
+    awaitTurn();
     if (actionRepo != null) {
       return performProductCrawlerActions(actionRepo.getPostIngestOnFailActions(), product,
-          productMetadata);
+          productMetadata, label);
     } else {
       return true;
     }
@@ -304,13 +703,13 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
 
   @VisibleForTesting
   boolean performProductCrawlerActions(List<CrawlerAction> actions, File product,
-      Metadata productMetadata) {
+      Metadata productMetadata, ParsedLabel label) {
     boolean allSucceeded = true;
     for (CrawlerAction action : actions) {
       try {
         LOG.fine("Performing action (id = " + action.getId() + " : description = "
             + action.getDescription() + ")");
-        if (!action.performAction(product, productMetadata)) {
+        if (!action.performAction(product, productMetadata, label)) {
           throw new Exception("Action (id = " + action.getId() + " : description = "
               + action.getDescription() + ") returned false");
         }
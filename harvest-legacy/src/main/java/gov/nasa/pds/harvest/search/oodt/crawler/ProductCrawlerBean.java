@@ -43,6 +43,8 @@ public abstract class ProductCrawlerBean implements PDSCoreMetKeys {
 
   private int daemonWait, daemonPort;
 
+  private int numThreads;
+
   private String productPath;
 
   private ApplicationContext applicationContext;
@@ -62,6 +64,7 @@ public abstract class ProductCrawlerBean implements PDSCoreMetKeys {
     this.skipIngest = false;
     this.daemonPort = -1;
     this.daemonWait = -1;
+    this.numThreads = 1;
     this.globalMetadata = new Metadata();
   }
 
@@ -153,6 +156,14 @@ public abstract class ProductCrawlerBean implements PDSCoreMetKeys {
     return this.daemonPort;
   }
 
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  public int getNumThreads() {
+    return this.numThreads;
+  }
+
   public void setProductPath(String productPath) {
     this.productPath = productPath;
   }
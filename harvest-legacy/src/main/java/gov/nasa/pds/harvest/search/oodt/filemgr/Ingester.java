@@ -19,10 +19,12 @@ package gov.nasa.pds.harvest.search.oodt.filemgr;
 import java.io.File;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.CatalogException;
 import gov.nasa.pds.harvest.search.oodt.filemgr.exceptions.IngestException;
 import gov.nasa.pds.harvest.search.oodt.metadata.MetExtractor;
 import gov.nasa.pds.harvest.search.oodt.metadata.Metadata;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
 
 /**
  * @author mattmann
@@ -64,6 +66,43 @@ public interface Ingester {
    */
   String ingest(URL fmUrl, File prodFile, Metadata met) throws IngestException;
 
+  /**
+   * Ingests a {@link Product} to the file manager service object identified by the given
+   * {@link URL} parameter, reusing a label that has already been parsed.
+   * 
+   * @param fmUrl The {@link URL} pointer to the file manager service.
+   * @param prodFile The {@link File} pointer to the product file.
+   * @param met The given {@link Metadata} object already extracted from the {@link Product}.
+   * @param label The parsed label of the {@link Product}.
+   * @return The ID returned by the file manager for the newly ingested product.
+   * @throws IngestException If there is an error ingesting the {@link Product}
+   */
+  String ingest(URL fmUrl, File prodFile, Metadata met, ParsedLabel label)
+      throws IngestException;
+
+  /**
+   * Hands a {@link Product} to the file manager service object identified by the given
+   * {@link URL} parameter, without waiting for the file manager to accept it.
+   * 
+   * @param fmUrl The {@link URL} pointer to the file manager service.
+   * @param prodFile The {@link File} pointer to the product file.
+   * @param met The given {@link Metadata} object already extracted from the {@link Product}.
+   * @param label The parsed label of the {@link Product}.
+   * @return Completes with the ID returned by the file manager once it has accepted the
+   *         {@link Product}, or exceptionally if it did not.
+   * @throws IngestException If the {@link Product} could not be handed to the file manager.
+   */
+  CompletableFuture<String> ingestAsync(URL fmUrl, File prodFile, Metadata met,
+      ParsedLabel label) throws IngestException;
+
+  /**
+   * Sends the {@link Product}s handed over by {@link #ingestAsync} so far to the file manager,
+   * instead of waiting for more of them.
+   * 
+   * @throws IngestException If the {@link Product}s could not be sent.
+   */
+  void flush() throws IngestException;
+
   /**
    * 
    * @param fmUrl The {@link URL} pointer to the file manager service.
@@ -16,12 +16,14 @@
 package gov.nasa.pds.harvest.search.oodt.metadata;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
@@ -32,6 +34,14 @@ import gov.nasa.pds.registry.model.Slot;
  * 
  * Metadata is a {@link Map} of <code>String</code> keys mapped to Object values. So, each key can
  * map to potentially many values, but also can map to null, or to a single value.
+ * <p>
+ * Keys are "/" separated paths, where the leading parts name the groups a key is in. The keys and
+ * their groups are held in a flat map, in the order they were added, rather than in a tree of
+ * groups. Each distinct key is parsed once and shared by all metadata, so adding and getting values
+ * does not split the key again, and {@link #getEntries()} gives the group and name of each key as
+ * they are.
+ * <p>
+ * A metadata is filled by one thread, and may then be read by several.
  * 
  * @author mattmann
  * @author bfoster
@@ -42,10 +52,23 @@ public class Metadata {
 
   private static Logger log = Logger.getLogger(Metadata.class.getName());
 
-  private Group root;
+  /** Most distinct keys to share between metadata. */
+  private static final int MAX_SHARED_KEYS = 65536;
+
+  /** The parsed keys, by the key as given and as normalized. */
+  private static final ConcurrentHashMap<String, Key> KEYS = new ConcurrentHashMap<String, Key>();
+
+  /** The key of the root group. */
+  private static final Key ROOT = new Key("", null, "");
+
+  /**
+   * The entries, by normalized key, in the order they were added. A group has an entry of its own,
+   * which has no values unless the group is also a key.
+   */
+  private Map<String, Entry> entries;
 
   public Metadata() {
-    this.root = this.createNewRoot();
+    this.entries = new LinkedHashMap<String, Entry>();
   }
 
   public Metadata(Metadata metadata) {
@@ -59,8 +82,10 @@ public class Metadata {
    * @param metadata Metadata to add metadata from
    */
   public void addMetadata(Metadata metadata) {
-    for (String key : metadata.getAllKeys()) {
-      this.addMetadata(key, metadata.getAllMetadata(key));
+    for (Entry entry : metadata.snapshot(this)) {
+      if (entry.hasValues()) {
+        this.getEntry(entry.key, true).values.addAll(entry.values);
+      }
     }
   }
 
@@ -68,8 +93,10 @@ public class Metadata {
     if (group == null) {
       this.addMetadata(metadata);
     } else {
-      for (String key : metadata.getAllKeys()) {
-        this.addMetadata(group + "/" + key, metadata.getAllMetadata(key));
+      for (Entry entry : metadata.snapshot(this)) {
+        if (entry.hasValues()) {
+          this.addMetadata(group + "/" + entry.getKey(), entry.values);
+        }
       }
     }
   }
@@ -80,8 +107,10 @@ public class Metadata {
    * @param metadata
    */
   public void replaceMetadata(Metadata metadata) {
-    for (String key : metadata.getAllKeys()) {
-      this.replaceMetadata(key, metadata.getAllMetadata(key));
+    for (Entry entry : metadata.snapshot(this)) {
+      if (entry.hasValues()) {
+        this.getEntry(entry.key, true).setValues(entry.values);
+      }
     }
   }
 
@@ -89,8 +118,10 @@ public class Metadata {
     if (group == null) {
       this.replaceMetadata(metadata);
     } else {
-      for (String key : metadata.getAllKeys()) {
-        this.replaceMetadata(group + "/" + key, metadata.getAllMetadata(key));
+      for (Entry entry : metadata.snapshot(this)) {
+        if (entry.hasValues()) {
+          this.replaceMetadata(group + "/" + entry.getKey(), entry.values);
+        }
       }
     }
   }
@@ -102,7 +133,7 @@ public class Metadata {
    * @param value Value of key to be added
    */
   public void addMetadata(String key, String value) {
-    this.getGroup(key).addValue(value);
+    this.getEntry(key, true).values.add(value);
   }
 
   /**
@@ -112,27 +143,37 @@ public class Metadata {
    * @param value Value of key to be added
    */
   public void replaceMetadata(String key, String value) {
-    this.getGroup(key).setValue(value);
+    Entry entry = this.getEntry(key, true);
+    entry.values.clear();
+    entry.values.add(value);
   }
 
   /**
-   * Adds key (Appends if key exists)
+   * Adds key (Appends if key exists). The values of a {@link Slot} are added under the name of
+   * the slot, within the given key, and the slots of an {@link ExtrinsicObject} likewise.
    * 
    * @param key Key to be added
    * @param values Values of key to be added
    */
   public void addMetadata(String key, List<?> values) {
+    this.addMetadata(parseKey(key), values);
+  }
+
+  private void addMetadata(Key key, List<?> values) {
+    Entry entry = null;
     for (Object value : values) {
       if (value instanceof Slot) {
         Slot slot = (Slot) value;
-        this.addMetadata(key + "/" + slot.getName(), slot.getValues());
+        this.addMetadata(key.getChild(slot.getName()), slot.getValues());
       } else if (value instanceof String) {
-        this.getGroup(key).addValue((String) value);
+        if (entry == null) {
+          entry = this.getEntry(key, true);
+        }
+        entry.values.add((String) value);
       } else if (value instanceof ExtrinsicObject) {
         this.addMetadata(key, new ArrayList<Slot>(((ExtrinsicObject) value).getSlots()));
       }
     }
-    
   }
 
   /**
@@ -142,7 +183,7 @@ public class Metadata {
    * @param values Values of key to be added
    */
   public void replaceMetadata(String key, List<String> values) {
-    this.getGroup(key).setValues(values);
+    this.getEntry(key, true).setValues(values);
   }
 
   /**
@@ -151,12 +192,12 @@ public class Metadata {
    * @param key Key to remove
    */
   public void removeMetadata(String key) {
-    Group removeGroup = this.getGroup(key, false);
-    if (removeGroup != null && removeGroup.hasValues()) {
-      if (removeGroup.getChildren().size() > 0) {
-        removeGroup.clearValues();
+    Entry entry = this.getEntry(key, false);
+    if (entry != null && entry.hasValues()) {
+      if (this.hasChildren(entry.key)) {
+        entry.values.clear();
       } else {
-        removeGroup.getParent().removeChild(removeGroup.getName());
+        this.entries.remove(entry.getKey());
       }
     }
   }
@@ -166,9 +207,15 @@ public class Metadata {
    *
    */
   public void removeMetadataGroup(String group) {
-    Group removeGroup = this.getGroup(group, false);
-    if (removeGroup != null && removeGroup.getChildren().size() > 0) {
-      removeGroup.getParent().removeChild(removeGroup.getName());
+    Key key = parseKey(group);
+    if (this.hasChildren(key)) {
+      Iterator<Entry> i = this.entries.values().iterator();
+      while (i.hasNext()) {
+        Key entryKey = i.next().key;
+        if (entryKey.getPath().equals(key.getPath()) || entryKey.isIn(key)) {
+          i.remove();
+        }
+      }
     }
   }
 
@@ -179,8 +226,8 @@ public class Metadata {
    * @return True if key exists, false otherwise
    */
   public boolean containsKey(String key) {
-    Group group = this.getGroup(key, false);
-    return group != null && group.hasValues();
+    Entry entry = this.getEntry(key, false);
+    return entry != null && entry.hasValues();
   }
 
   /**
@@ -190,8 +237,8 @@ public class Metadata {
    * @return True is key exists and has more than one value, false otherwise
    */
   public boolean isMultiValued(String key) {
-    Group group = this.getGroup(key, false);
-    return group != null && group.getValues().size() > 1;
+    Entry entry = this.getEntry(key, false);
+    return entry != null && entry.values.size() > 1;
   }
 
   /**
@@ -202,9 +249,12 @@ public class Metadata {
    */
   public Metadata getSubMetadata(String group) {
     Metadata m = new Metadata();
-    Group newRoot = this.getGroup(group, false);
-    if (newRoot != null) {
-      m.root.addChildren(newRoot.clone().getChildren());
+    Key key = parseKey(group);
+    int start = key.getPath().isEmpty() ? 0 : key.getPath().length() + 1;
+    for (Entry entry : this.entries.values()) {
+      if (entry.key.isIn(key)) {
+        m.getEntry(entry.getKey().substring(start), true).values.addAll(entry.values);
+      }
     }
     return m;
   }
@@ -216,9 +266,9 @@ public class Metadata {
    * @return First value for given key, or null if key does not exist
    */
   public String getMetadata(String key) {
-    Group group = this.getGroup(key, false);
-    if (group != null) {
-      return group.getValue();
+    Entry entry = this.getEntry(key, false);
+    if (entry != null) {
+      return entry.getValue();
     } else {
       return null;
     }
@@ -231,14 +281,33 @@ public class Metadata {
    * @return All values for given key, or null if key does not exist
    */
   public List getAllMetadata(String key) {
-    Group group = this.getGroup(key, false);
-    if (group != null) {
-      return new Vector<String>(group.getValues());
+    Key parsed = parseKey(key);
+    Entry entry = this.getEntry(parsed, false);
+    if (entry != null) {
+      return new ArrayList<String>(entry.values);
+    } else if (parsed == ROOT) {
+      return new ArrayList<String>();
     } else {
       return null;
     }
   }
 
+  /**
+   * Gets the entries of this Metadata that have values, in the order they were added. Going
+   * through the entries gives the group and name of each key without parsing it.
+   * 
+   * @return The entries, which cannot be changed
+   */
+  public List<Entry> getEntries() {
+    List<Entry> found = new ArrayList<Entry>(this.entries.size());
+    for (Entry entry : this.entries.values()) {
+      if (entry.hasValues() && entry.key != ROOT) {
+        found.add(entry);
+      }
+    }
+    return found;
+  }
+
   /**
    * Gets All key in and below given group
    * 
@@ -246,12 +315,7 @@ public class Metadata {
    * @return All keys for the given group and below
    */
   public List<String> getKeys(String group) {
-    Group foundGroup = this.getGroup(group);
-    if (foundGroup != null) {
-      return this.getKeys(foundGroup);
-    } else {
-      return new Vector<String>();
-    }
+    return this.getKeys(parseKey(group));
   }
 
   /**
@@ -260,14 +324,14 @@ public class Metadata {
    * @return All keys in this Metadata
    */
   public List<String> getKeys() {
-    return this.getKeys(this.root);
+    return this.getKeys(ROOT);
   }
 
-  protected List<String> getKeys(Group group) {
+  private List<String> getKeys(Key group) {
     Vector<String> keys = new Vector<String>();
-    for (Group child : group.getChildren()) {
-      if (child.hasValues()) {
-        keys.add(child.getFullPath());
+    for (Entry entry : this.entries.values()) {
+      if (entry.hasValues() && entry.key.isChildOf(group)) {
+        keys.add(entry.getKey());
       }
     }
     return keys;
@@ -280,12 +344,7 @@ public class Metadata {
    * @return All keys for the given group and below
    */
   public List<String> getAllKeys(String group) {
-    Group foundGroup = this.getGroup(group);
-    if (foundGroup != null) {
-      return this.getAllKeys(foundGroup);
-    } else {
-      return new Vector<String>();
-    }
+    return this.getAllKeys(parseKey(group));
   }
 
   /**
@@ -294,16 +353,15 @@ public class Metadata {
    * @return All keys in this Metadata
    */
   public List<String> getAllKeys() {
-    return this.getAllKeys(this.root);
+    return this.getAllKeys(ROOT);
   }
 
-  protected List<String> getAllKeys(Group group) {
+  private List<String> getAllKeys(Key group) {
     Vector<String> keys = new Vector<String>();
-    for (Group child : group.getChildren()) {
-      if (child.hasValues()) {
-        keys.add(child.getFullPath());
+    for (Entry entry : this.entries.values()) {
+      if (entry.hasValues() && entry.key.isIn(group)) {
+        keys.add(entry.getKey());
       }
-      keys.addAll(this.getAllKeys(child));
     }
     return keys;
   }
@@ -315,14 +373,10 @@ public class Metadata {
    */
   public List<String> getAllKeysWithName(String key) {
     List<String> keys = new Vector<String>();
-    Stack<Group> stack = new Stack<Group>();
-    stack.add(this.root);
-    while (!stack.empty()) {
-      Group curGroup = stack.pop();
-      if (curGroup.getName().equals(key) && curGroup.hasValues()) {
-        keys.add(curGroup.getFullPath());
+    for (Entry entry : this.entries.values()) {
+      if (entry.hasValues() && entry.key != ROOT && entry.getName().equals(key)) {
+        keys.add(entry.getKey());
       }
-      stack.addAll(curGroup.getChildren());
     }
     return keys;
   }
@@ -333,11 +387,7 @@ public class Metadata {
    * @return All Values in root group
    */
   public List<String> getValues() {
-    Vector<String> values = new Vector<String>();
-    for (String key : this.getKeys()) {
-      values.addAll(this.getAllMetadata(key));
-    }
-    return values;
+    return this.getValues(this.getKeys());
   }
 
   /**
@@ -347,11 +397,7 @@ public class Metadata {
    * @return Values in given group
    */
   public List<String> getValues(String group) {
-    Vector<String> values = new Vector<String>();
-    for (String key : this.getKeys(group)) {
-      values.addAll(this.getAllMetadata(key));
-    }
-    return values;
+    return this.getValues(this.getKeys(group));
   }
 
   /**
@@ -360,11 +406,7 @@ public class Metadata {
    * @return All values in this Metadata
    */
   public List<String> getAllValues() {
-    Vector<String> values = new Vector<String>();
-    for (String key : this.getAllKeys()) {
-      values.addAll(this.getAllMetadata(key));
-    }
-    return values;
+    return this.getValues(this.getAllKeys());
   }
 
   /**
@@ -374,9 +416,13 @@ public class Metadata {
    * @return All values in and below given group
    */
   public List<String> getAllValues(String group) {
+    return this.getValues(this.getAllKeys(group));
+  }
+
+  private List<String> getValues(List<String> keys) {
     Vector<String> values = new Vector<String>();
-    for (String key : this.getAllKeys(group)) {
-      values.addAll(this.getAllMetadata(key));
+    for (String key : keys) {
+      values.addAll(this.entries.get(key).values);
     }
     return values;
   }
@@ -414,198 +460,288 @@ public class Metadata {
 
 
   public void replaceMetadata(Map<String, Object> metadata) {
-    this.root = this.createNewRoot();
+    this.entries = new LinkedHashMap<String, Entry>();
     this.addMetadata(metadata);
   }
 
   public boolean containsGroup(String group) {
-    return this.getGroup(group, false) != null;
+    Key key = parseKey(group);
+    return key == ROOT || this.entries.containsKey(key.getPath());
   }
 
   public List<String> getGroups() {
-    return this.getGroups(this.root);
+    return this.getGroups(ROOT);
   }
 
   public List<String> getGroups(String group) {
-    return this.getGroups(this.getGroup(group));
+    return this.getGroups(parseKey(group));
   }
 
-  protected List<String> getGroups(Group group) {
+  private List<String> getGroups(Key group) {
     Vector<String> groupNames = new Vector<String>();
-    for (Group child : group.getChildren()) {
-      groupNames.add(child.getName());
+    for (Entry entry : this.entries.values()) {
+      if (entry.key.isChildOf(group)) {
+        groupNames.add(entry.getName());
+      }
     }
     return groupNames;
   }
 
-  protected Group getGroup(String key) {
-    return getGroup(key, true);
+  private boolean hasChildren(Key group) {
+    for (Entry entry : this.entries.values()) {
+      if (entry.key.isIn(group)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Entry getEntry(String key, boolean create) {
+    return this.getEntry(parseKey(key), create);
+  }
+
+  private Entry getEntry(Key key, boolean create) {
+    Entry entry = this.entries.get(key.getPath());
+    if (entry == null && create) {
+      if (key.getParent() != ROOT && key != ROOT) {
+        this.getEntry(key.getParent(), true);
+      }
+      entry = new Entry(key);
+      this.entries.put(key.getPath(), entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Gets the entries of this metadata, copied if they are about to be added to this metadata.
+   */
+  private Collection<Entry> snapshot(Metadata target) {
+    if (target == this) {
+      return new ArrayList<Entry>(this.entries.values());
+    }
+    return this.entries.values();
   }
 
-  protected Group getGroup(String key, boolean create) {
+  /**
+   * Gets the parsed form of a key. Empty parts of the key are left out, so "a//b/" is the same
+   * key as "a/b", and a null or empty key is the root group.
+   * 
+   * @param key The key
+   * @return The parsed key
+   */
+  private static Key parseKey(String key) {
     if (key == null) {
-      return this.root;
-    }
-    StringTokenizer tokenizer = new StringTokenizer(key, "/");
-    Group curGroup = this.root;
-    while (tokenizer.hasMoreTokens()) {
-      String groupName = tokenizer.nextToken();
-      Group childGroup = curGroup.getChild(groupName);
-      if (childGroup == null) {
-        if (!create) {
-          return null;
-        }
-        childGroup = new Group(groupName);
-        curGroup.addChild(childGroup);
+      return ROOT;
+    }
+    Key parsed = KEYS.get(key);
+    if (parsed != null) {
+      return parsed;
+    }
+    String path = normalize(key);
+    if (path.isEmpty()) {
+      return ROOT;
+    }
+    parsed = path.equals(key) ? null : KEYS.get(path);
+    if (parsed == null) {
+      int slash = path.lastIndexOf('/');
+      parsed = slash == -1 ? new Key(path, ROOT, path)
+          : new Key(path, parseKey(path.substring(0, slash)), path.substring(slash + 1));
+    }
+    if (KEYS.size() < MAX_SHARED_KEYS) {
+      Key existing = KEYS.putIfAbsent(path, parsed);
+      if (existing != null) {
+        parsed = existing;
       }
-      curGroup = childGroup;
+      if (!path.equals(key)) {
+        KEYS.put(key, parsed);
+      }
+    } else {
+      log.fine("Too many distinct metadata keys to share, parsing " + key + " each time");
     }
-    return curGroup;
+    return parsed;
   }
 
-  protected Group createNewRoot() {
-    return new Group(Group.ROOT_GROUP_NAME);
+  private static String normalize(String key) {
+    if (key.isEmpty() || (key.charAt(0) != '/' && key.charAt(key.length() - 1) != '/'
+        && !key.contains("//"))) {
+      return key;
+    }
+    StringBuilder path = new StringBuilder(key.length());
+    for (String part : key.split("/")) {
+      if (!part.isEmpty()) {
+        if (path.length() != 0) {
+          path.append('/');
+        }
+        path.append(part);
+      }
+    }
+    return path.toString();
   }
 
-  protected class Group {
+  /**
+   * A key, parsed into the group it is in and its name within the group. Keys are shared between
+   * metadata, and so never change.
+   */
+  private static final class Key {
+
+    private final String path;
 
-    private static final String ROOT_GROUP_NAME = "root";
+    private final Key parent;
 
-    private String name;
-    private List<String> values;
-    private Group parent;
-    private Map<String, Group> children;
+    private final String name;
 
-    public Group(String name) {
+    /** The keys within this one, by name. */
+    private final Map<String, Key> children;
+
+    Key(String path, Key parent, String name) {
+      this.path = path;
+      this.parent = parent;
       this.name = name;
-      this.values = new Vector<String>();
-      this.children = new Hashtable<String, Group>();
+      this.children = new ConcurrentHashMap<String, Key>();
     }
 
-    /**
-     * Create Metadata Group. By default we create a group using a Hashtable for XMLRPC support.
-     * Once this has been superceeded by the Avro Impl we should make the HashMap implementation the
-     * default.
-     * 
-     * @param name
-     * @param legacy
-     */
-    public Group(String name, boolean legacy) {
-      this.name = name;
-      this.values = new Vector<String>();
-      this.children =
-          legacy ? new Hashtable<String, Group>() : new ConcurrentHashMap<String, Group>();
+    String getPath() {
+      return this.path;
+    }
 
+    Key getParent() {
+      return this.parent;
     }
 
-    public String getName() {
+    String getName() {
       return this.name;
     }
 
-    public String getFullPath() {
-      if (this.parent != null && !this.parent.getName().equals(ROOT_GROUP_NAME)) {
-        return this.parent.getFullPath() + "/" + this.name;
-      } else {
-        return this.name;
+    /**
+     * Gets the key of the given name within this one, without building its path again once it is
+     * known.
+     */
+    Key getChild(String name) {
+      Key child = this.children.get(name);
+      if (child == null) {
+        child = parseKey(this == ROOT ? name : this.path + "/" + name);
+        if (this.children.size() < MAX_SHARED_KEYS) {
+          this.children.put(name, child);
+        }
       }
+      return child;
     }
 
-    public Group getParent() {
-      return this.parent;
-    }
-
-    public void setValue(String value) {
-      this.values.clear();
-      this.values.add(value);
+    /**
+     * Checks if this key is right within the given group.
+     */
+    boolean isChildOf(Key group) {
+      return this.parent == group
+          || (this.parent != null && this.parent.path.equals(group.path));
     }
 
-    public void setValues(List<String> values) {
-      this.values.clear();
-      this.values.addAll(values);
+    /**
+     * Checks if this key is within the given group, at any depth.
+     */
+    boolean isIn(Key group) {
+      if (group.path.isEmpty()) {
+        return !this.path.isEmpty();
+      }
+      return this.path.length() > group.path.length() && this.path.startsWith(group.path)
+          && this.path.charAt(group.path.length()) == '/';
     }
 
-    public void clearValues() {
-      this.values.clear();
+    @Override
+    public String toString() {
+      return this.path;
     }
+  }
 
-    public void addValue(String value) {
-      this.values.add(value);
-    }
+  /**
+   * The values of a key, along with the group the key is in and its name within the group.
+   */
+  public static final class Entry {
 
-    public void addValues(List<String> value) {
-      this.values.addAll(value);
-    }
+    private final Key key;
 
-    public boolean hasValues() {
-      return this.values.size() > 0;
-    }
+    private final List<String> values;
 
-    public String getValue() {
-      if (this.hasValues()) {
-        return this.values.get(0);
-      } else {
-        return null;
-      }
+    Entry(Key key) {
+      this.key = key;
+      this.values = new ArrayList<String>(1);
     }
 
-    public List<String> getValues() {
-      return this.values;
+    /**
+     * Gets the key, as a "/" separated path.
+     * 
+     * @return The key
+     */
+    public String getKey() {
+      return this.key.getPath();
     }
 
-    public void addChild(Group child) {
-      this.children.put(child.getName(), child);
-      child.parent = this;
+    /**
+     * Gets the group the key is in.
+     * 
+     * @return The group, or null if the key is not in a group
+     */
+    public String getGroup() {
+      return this.key.getParent() == ROOT ? null : this.key.getParent().getPath();
     }
 
-    public void addChildren(List<Group> children) {
-      for (Group child : children) {
-        this.addChild(child);
-      }
+    /**
+     * Gets the name of the key within its group, which is the last part of its path.
+     * 
+     * @return The name
+     */
+    public String getName() {
+      return this.key.getName();
     }
 
-    public List<Group> getChildren() {
-      return new Vector<Group>(this.children.values());
+    /**
+     * Gets the first value.
+     * 
+     * @return The first value, or null if there are none
+     */
+    public String getValue() {
+      return this.values.isEmpty() ? null : this.values.get(0);
     }
 
-    public void removeChild(String name) {
-      this.children.remove(name);
+    /**
+     * Gets the values.
+     * 
+     * @return The values, which cannot be changed
+     */
+    public List<String> getValues() {
+      return Collections.unmodifiableList(this.values);
     }
 
-    public Group getChild(String name) {
-      return this.children.get(name);
+    boolean hasValues() {
+      return !this.values.isEmpty();
     }
 
-    @Override
-    public Group clone() {
-      Group clone = new Group(this.name);
-      clone.setValues(this.values);
-      for (Group child : this.children.values()) {
-        clone.addChild(child.clone());
+    void setValues(List<String> values) {
+      if (values != this.values) {
+        this.values.clear();
+        this.values.addAll(values);
       }
-      return clone;
     }
 
     @Override
     public String toString() {
-      return this.getFullPath();
+      return this.getKey();
     }
-
   }
 
 
   @Deprecated
   public Hashtable<String, Object> getHashTable() {
     Hashtable<String, Object> table = new Hashtable<String, Object>();
-    for (String key : this.getAllKeys()) {
-      table.put(key, this.getAllMetadata(key));
+    for (Entry entry : this.getEntries()) {
+      table.put(entry.getKey(), new Vector<String>(entry.values));
     }
     return table;
   }
 
   public Map<String, Object> getMap() {
     Map<String, Object> table = new ConcurrentHashMap<String, Object>();
-    for (String key : this.getAllKeys()) {
-      table.put(key, this.getAllMetadata(key));
+    for (Entry entry : this.getEntries()) {
+      table.put(entry.getKey(), new Vector<String>(entry.values));
     }
     return table;
   }
@@ -613,9 +749,10 @@ public class Metadata {
   public boolean equals(Object obj) {
     if (obj instanceof Metadata) {
       Metadata compMet = (Metadata) obj;
-      if (this.getKeys().equals(compMet.getKeys())) {
-        for (String key : this.getKeys()) {
-          if (!this.getAllMetadata(key).equals(compMet.getAllMetadata(key))) {
+      List<String> keys = this.getKeys();
+      if (new HashSet<String>(keys).equals(new HashSet<String>(compMet.getKeys()))) {
+        for (String key : keys) {
+          if (!this.entries.get(key).values.equals(compMet.entries.get(key).values)) {
             return false;
           }
         }
@@ -631,6 +768,10 @@ public class Metadata {
 
   @Override
   public int hashCode() {
-    return root != null ? root.hashCode() : 0;
+    int hash = 0;
+    for (String key : this.getKeys()) {
+      hash += key.hashCode() ^ this.entries.get(key).values.hashCode();
+    }
+    return hash;
   }
-}
\ No newline at end of file
+}
@@ -22,12 +22,12 @@ import java.io.FileInputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 //OODT imports
-import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.mime.MimeType;
 import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
 import org.apache.tika.mime.MimeTypesFactory;
+import gov.nasa.pds.harvest.search.util.MimeDetector;
 import gov.nasa.pds.harvest.search.util.PathUtils;
 
 //JDK imports
@@ -115,7 +115,7 @@ public class Reference {
         // ourselves to determine the which MimeType class to associate
         // with this reference.
         try {
-            this.mimeType = mimeTypeRepository.forName(new Tika().detect(origRef));
+            this.mimeType = mimeTypeRepository.forName(MimeDetector.detect(origRef));
         } catch (MimeTypeException e) {
             LOG.log(Level.SEVERE, e.getMessage());
         }
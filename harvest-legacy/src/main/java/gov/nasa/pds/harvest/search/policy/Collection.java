@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 
@@ -28,6 +29,7 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;sequence>
  *         &lt;element ref="{https://pds.nasa.gov/software/pds4/harvest/v1}file" maxOccurs="unbounded"/>
  *       &lt;/sequence>
+ *       &lt;attribute ref="{https://pds.nasa.gov/software/pds4/harvest/v1}expandBundles"/>
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -43,6 +45,8 @@ public class Collection {
 
     @XmlElement(required = true)
     protected List<String> file;
+    @XmlAttribute(name = "expandBundles", namespace = "https://pds.nasa.gov/software/pds4/harvest/v1")
+    protected Boolean expandBundles;
 
     /**
      * Gets the value of the file property.
@@ -73,4 +77,32 @@ public class Collection {
         return this.file;
     }
 
+    /**
+     * Gets the value of the expandBundles property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Boolean }
+     *     
+     */
+    public boolean isExpandBundles() {
+        if (expandBundles == null) {
+            return false;
+        } else {
+            return expandBundles;
+        }
+    }
+
+    /**
+     * Sets the value of the expandBundles property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Boolean }
+     *     
+     */
+    public void setExpandBundles(Boolean value) {
+        this.expandBundles = value;
+    }
+
 }
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 
@@ -30,6 +31,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element ref="{https://pds.nasa.gov/software/pds4/harvest/v1}fileFilter" minOccurs="0"/>
  *         &lt;element ref="{https://pds.nasa.gov/software/pds4/harvest/v1}directoryFilter" minOccurs="0"/>
  *       &lt;/sequence>
+ *       &lt;attribute ref="{https://pds.nasa.gov/software/pds4/harvest/v1}threads"/>
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -49,6 +51,8 @@ public class Directory {
     protected List<String> path;
     protected FileFilter fileFilter;
     protected DirectoryFilter directoryFilter;
+    @XmlAttribute(name = "threads", namespace = "https://pds.nasa.gov/software/pds4/harvest/v1")
+    protected Integer threads;
 
     /**
      * Gets the value of the path property.
@@ -133,4 +137,32 @@ public class Directory {
         this.directoryFilter = value;
     }
 
+    /**
+     * Gets the value of the threads property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public int getThreads() {
+        if (threads == null) {
+            return 1;
+        } else {
+            return threads;
+        }
+    }
+
+    /**
+     * Sets the value of the threads property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setThreads(Integer value) {
+        this.threads = value;
+    }
+
 }
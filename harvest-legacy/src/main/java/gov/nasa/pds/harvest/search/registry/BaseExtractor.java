@@ -1,35 +1,42 @@
 package gov.nasa.pds.harvest.search.registry;
 
-import javax.xml.xpath.XPathExpression;
-import org.w3c.dom.Document;
-import gov.nasa.pds.harvest.search.util.XPathUtils;
+import java.util.List;
+import gov.nasa.pds.harvest.search.util.XMLExtractor;
 
 public class BaseExtractor
 {
-    protected XPathExpression xInvestigation;
-    protected XPathExpression xInstrument;
-    protected XPathExpression xInstrumentHost;
-    protected XPathExpression xTarget;
+    protected String xInvestigation;
+    protected String xInstrument;
+    protected String xInstrumentHost;
+    protected String xTarget;
     
-    public String getInvestigation(Document doc) throws Exception
+    public String getInvestigation(XMLExtractor doc) throws Exception
     {
-        String str = XPathUtils.getStringValue(doc, xInvestigation);
+        String str = doc.getValueFromDoc(xInvestigation);
         return (str == null || str.isEmpty()) ? null : str;
     }
     
-    public String[] getInstrument(Document doc) throws Exception
+    public String[] getInstrument(XMLExtractor doc) throws Exception
     {
-        return XPathUtils.getStringArray(doc, xInstrument);
+        return getStringArray(doc, xInstrument);
     }
 
-    public String[] getInstrumentHost(Document doc) throws Exception
+    public String[] getInstrumentHost(XMLExtractor doc) throws Exception
     {
-        return XPathUtils.getStringArray(doc, xInstrumentHost);
+        return getStringArray(doc, xInstrumentHost);
     }
     
-    public String[] getTarget(Document doc) throws Exception
+    public String[] getTarget(XMLExtractor doc) throws Exception
     {
-        return XPathUtils.getStringArray(doc, xTarget);
+        return getStringArray(doc, xTarget);
+    }
+
+    private static String[] getStringArray(XMLExtractor doc, String expression) throws Exception
+    {
+        List<String> vals = doc.getValuesFromDoc(expression);
+        if(vals.isEmpty()) return null;
+        
+        return vals.toArray(new String[vals.size()]);
     }
 
 }
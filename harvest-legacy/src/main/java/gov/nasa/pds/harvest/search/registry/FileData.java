@@ -6,6 +6,9 @@ public class FileData
     public String mimeType;
     public long size;
     
-    public String contentBase64;
+    /** File content, or null if the file is too large to store inline. */
+    public byte[] content;
+    /** Location of the file if its content is not stored inline. */
+    public String contentRef;
     public String md5Base64;
 }
@@ -1,19 +1,33 @@
 package gov.nasa.pds.harvest.search.registry;
 
 import java.io.File;
-import java.nio.file.Files;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Base64;
 
-import org.apache.tika.Tika;
+import gov.nasa.pds.harvest.search.file.ChecksumCache;
+import gov.nasa.pds.harvest.search.util.MimeDetector;
 
 public class FileDataLoader
 {
-    private Tika tika;
+    /** 
+     * Java property to set the largest file size, in bytes, stored inline. Inline content
+     * is held until Solr has it, within the limit set by SolrManager.MAX_PENDING_SIZE_PROP.
+     */
+    public static final String MAX_CONTENT_SIZE_PROP = "pds.search.content.max.size";
+    
+    private static final long DEFAULT_MAX_CONTENT_SIZE = 10 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private long maxContentSize;
     
     public FileDataLoader()
     {
-        tika = new Tika();
+        // Inline content has to fit in a single array
+        maxContentSize = Math.min(Long.getLong(MAX_CONTENT_SIZE_PROP, DEFAULT_MAX_CONTENT_SIZE), 
+                Integer.MAX_VALUE - 8);
     }
     
     public FileData load(File file) throws Exception
@@ -21,18 +35,75 @@ public class FileDataLoader
         FileData data = new FileData();
 
         data.name = file.getName();
-        data.mimeType = tika.detect(file);
-        data.size = file.length();
-
-        // Read the file content in memory
-        byte[] fileContent = Files.readAllBytes(file.toPath());
+        data.mimeType = MimeDetector.detect(file);
+        
+        long size = file.length();
+        
+        // Large files are not loaded, so there is no need to read them
+        // at all if their checksum is known.
+        ChecksumCache cache = ChecksumCache.getInstance();
+        ChecksumCache.Key key = cache.getKey(file);
+        if(size > maxContentSize && key != null)
+        {
+            byte[] digest = cache.get(key);
+            if(digest != null)
+            {
+                data.contentRef = file.toURI().toString();
+                data.size = size;
+                data.md5Base64 = Base64.getEncoder().encodeToString(digest);
+                return data;
+            }
+        }
+        
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
         
-        // Calculate MD5 hash
-        byte[] md5hash = MessageDigest.getInstance("MD5").digest(fileContent);
-        data.md5Base64 = Base64.getEncoder().encodeToString(md5hash);
+        InputStream is = new FileInputStream(file);
+        try
+        {
+            if(size <= maxContentSize)
+            {
+                // Read straight into the content array. The content goes to Solr as
+                // binary, so there is no need for a Base64 copy of it.
+                byte[] content = new byte[(int)size];
+                int off = 0;
+                int n;
+                while(off < content.length && (n = is.read(content, off, content.length - off)) != -1)
+                {
+                    md5.update(content, off, n);
+                    off += n;
+                }
+                
+                // The file shrank while reading it
+                data.content = (off == content.length) ? content : Arrays.copyOf(content, off);
+                data.size = off;
+            }
+            else
+            {
+                // Too large to keep in memory. Only hash it and store the location.
+                byte[] buf = new byte[BUFFER_SIZE];
+                long total = 0;
+                int n;
+                while((n = is.read(buf)) != -1)
+                {
+                    md5.update(buf, 0, n);
+                    total += n;
+                }
+                
+                data.contentRef = file.toURI().toString();
+                data.size = total;
+            }
+        }
+        finally
+        {
+            is.close();
+        }
         
-        // Base64 encode file content to store in Solr binary field
-        data.contentBase64 = Base64.getEncoder().encodeToString(fileContent);
+        byte[] digest = md5.digest();
+        if(key != null)
+        {
+            cache.put(key, digest);
+        }
+        data.md5Base64 = Base64.getEncoder().encodeToString(digest);
         
         return data;        
     }
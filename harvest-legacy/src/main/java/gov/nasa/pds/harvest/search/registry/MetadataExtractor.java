@@ -1,75 +1,72 @@
 package gov.nasa.pds.harvest.search.registry;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
+import java.io.File;
 
-import org.w3c.dom.Document;
-
-import gov.nasa.pds.harvest.search.util.XPathUtils;
-import gov.nasa.pds.harvest.search.util.XmlDomUtils;
+import gov.nasa.pds.harvest.search.util.ParsedLabel;
+import gov.nasa.pds.harvest.search.util.XMLExtractor;
 
 
 public class MetadataExtractor
 {
-    private XPathExpression xLid;
-    private XPathExpression xVid;    
+    private static final String xProductClass = "name(/*)";
+    private static final String xLid = "//Identification_Area/logical_identifier";
+    private static final String xVid = "//Identification_Area/version_id";
     
     private ContextExtractor ctxExtractor;
     private DefaultExtractor defaultExtractor;
     
-    private DocumentBuilderFactory dbf;
-    
 
     private static class ContextExtractor extends BaseExtractor
     {
-        public ContextExtractor(XPathFactory xpf) throws Exception
+        public ContextExtractor()
         {
-            xInvestigation = XPathUtils.compileXPath(xpf, "/Product_Context/Investigation/name");
-            xInstrument = XPathUtils.compileXPath(xpf, "/Product_Context/Instrument/name");
-            xInstrumentHost = XPathUtils.compileXPath(xpf, "/Product_Context/Instrument_Host/name");
-            xTarget = XPathUtils.compileXPath(xpf, "/Product_Context/Target/name");
+            xInvestigation = "/Product_Context/Investigation/name";
+            xInstrument = "/Product_Context/Instrument/name";
+            xInstrumentHost = "/Product_Context/Instrument_Host/name";
+            xTarget = "/Product_Context/Target/name";
         }
     }
     
     
     private static final class DefaultExtractor extends BaseExtractor
     {
-        public DefaultExtractor(XPathFactory xpf) throws Exception
+        public DefaultExtractor()
         {
-            xInvestigation = XPathUtils.compileXPath(xpf, "//Investigation_Area/name");
-            xInstrument = XPathUtils.compileXPath(xpf, "//Observing_System/Observing_System_Component[type='Instrument']/name");
-            xInstrumentHost = XPathUtils.compileXPath(xpf, "//Observing_System/Observing_System_Component[type='Spacecraft']/name");
-            xTarget = XPathUtils.compileXPath(xpf, "//Target_Identification/name");
+            xInvestigation = "//Investigation_Area/name";
+            xInstrument = "//Observing_System/Observing_System_Component[type='Instrument']/name";
+            xInstrumentHost = "//Observing_System/Observing_System_Component[type='Spacecraft']/name";
+            xTarget = "//Target_Identification/name";
         }
     }
     
     
     public MetadataExtractor() throws Exception
     {
-        dbf = DocumentBuilderFactory.newInstance();
-        
-        XPathFactory xpf = XPathFactory.newInstance(XPathFactory.DEFAULT_OBJECT_MODEL_URI, 
-                "com.sun.org.apache.xpath.internal.jaxp.XPathFactoryImpl", null);
-
-        xLid = XPathUtils.compileXPath(xpf, "//Identification_Area/logical_identifier");
-        xVid = XPathUtils.compileXPath(xpf, "//Identification_Area/version_id");
-
-        ctxExtractor = new ContextExtractor(xpf);
-        defaultExtractor = new DefaultExtractor(xpf);
+        ctxExtractor = new ContextExtractor();
+        defaultExtractor = new DefaultExtractor();
     }
     
     
     public RegistryMetadata extract(String path) throws Exception
     {
-        Document doc = XmlDomUtils.readXml(dbf, path);        
+        return extract(new ParsedLabel(new File(path)));
+    }
+    
+    
+    /**
+     * Extracts registry metadata from a label that may already have been
+     * parsed by an earlier step of the crawl.
+     */
+    public RegistryMetadata extract(ParsedLabel label) throws Exception
+    {
+        XMLExtractor doc = label.getExtractor();
         
         RegistryMetadata md = new RegistryMetadata();        
-        md.productClass = doc.getDocumentElement().getNodeName();
+        md.productClass = doc.getValueFromDoc(xProductClass);
         
         // IDs
-        md.lid = XPathUtils.getStringValue(doc, xLid);
-        md.vid = XPathUtils.getStringValue(doc, xVid);
+        md.lid = doc.getValueFromDoc(xLid);
+        md.vid = doc.getValueFromDoc(xVid);
         
         BaseExtractor ext = defaultExtractor;
         
@@ -1,6 +1,7 @@
 package gov.nasa.pds.harvest.search.registry;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -38,7 +39,14 @@ public class RegistryDAO
     }
 
     
-    public void saveProduct(RegistryMetadata meta, File file) throws Exception
+    /**
+     * Queues a product to be saved in the registry collection.
+     * @param meta product metadata
+     * @param file product label
+     * @return future completed once Solr has accepted the product
+     * @throws Exception if the product could not be queued
+     */
+    public CompletableFuture<Void> saveProduct(RegistryMetadata meta, File file) throws Exception
     {
         String lidvid = meta.lid + "::" + meta.vid;
         FileData fileData = fileLoader.load(file);
@@ -56,7 +64,8 @@ public class RegistryDAO
         doc.addField("file_size", fileData.size);
 
         // File content
-        doc.addField("content", fileData.contentBase64);
+        addField(doc, "content", fileData.content);
+        addField(doc, "content_ref", fileData.contentRef);
         doc.addField("md5", fileData.md5Base64);
         
         // Transaction ID
@@ -69,10 +78,18 @@ public class RegistryDAO
         addField(doc, "instrument_host_name", meta.instrumentHost);
         addField(doc, "target_name", meta.target);
         
-        // Save the document
-        SolrClient client = SolrManager.getInstance().getSolrClient();
-        client.add(SOLR_REGISTRY, doc);
-        client.commit(SOLR_REGISTRY);
+        // Queue the document. It is committed within the flush interval
+        // and for good when the SolrManager is destroyed.
+        return SolrManager.getInstance().getSubmitter(SOLR_REGISTRY, "lidvid").add(doc);
+    }
+    
+    
+    /**
+     * Sends the products queued so far without waiting for a full batch.
+     */
+    public void flush()
+    {
+        SolrManager.getInstance().getSubmitter(SOLR_REGISTRY, "lidvid").flush();
     }
         
     
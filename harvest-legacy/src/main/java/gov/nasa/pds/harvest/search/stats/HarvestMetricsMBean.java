@@ -0,0 +1,108 @@
+package gov.nasa.pds.harvest.search.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the harvest counters and latencies as read-only MBean
+ * attributes.
+ * <p>
+ * Each counter is an attribute of its own. Each latency gives a count,
+ * mean, 50th and 99th percentile attribute, with the percentiles in
+ * milliseconds.
+ */
+class HarvestMetricsMBean implements DynamicMBean {
+  private static final String COUNT = "_count";
+  private static final String MEAN = "_mean_ms";
+  private static final String P50 = "_p50_ms";
+  private static final String P99 = "_p99_ms";
+
+  public Object getAttribute(String attribute)
+      throws AttributeNotFoundException {
+    LongAdder counter = HarvestSolrStats.getCounters().get(attribute);
+    if (counter != null) {
+      return counter.sum();
+    }
+    for (Map.Entry<String, LatencyHistogram> entry
+        : HarvestSolrStats.getLatencies().entrySet()) {
+      String name = entry.getKey();
+      LatencyHistogram latency = entry.getValue();
+      if (attribute.equals(name + COUNT)) {
+        return latency.getCount();
+      } else if (attribute.equals(name + MEAN)) {
+        return latency.getMean();
+      } else if (attribute.equals(name + P50)) {
+        return latency.getPercentile(50);
+      } else if (attribute.equals(name + P99)) {
+        return latency.getPercentile(99);
+      }
+    }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      try {
+        list.add(new Attribute(attribute, getAttribute(attribute)));
+      } catch (AttributeNotFoundException e) {
+        // Leave it out of the list, as the interface requires
+      }
+    }
+    return list;
+  }
+
+  public void setAttribute(Attribute attribute)
+      throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(attribute.getName()
+        + " is read-only");
+  }
+
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  public Object invoke(String actionName, Object[] params,
+      String[] signature) throws MBeanException, ReflectionException {
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+    for (String name : HarvestSolrStats.getCounters().keySet()) {
+      attributes.add(new MBeanAttributeInfo(name, Long.class.getName(),
+          HarvestSolrStats.getDescription(name), true, false, false));
+    }
+    for (String name : HarvestSolrStats.getLatencies().keySet()) {
+      String description = HarvestSolrStats.getDescription(name);
+      attributes.add(new MBeanAttributeInfo(name + COUNT,
+          Long.class.getName(), description + " (count)", true, false,
+          false));
+      attributes.add(new MBeanAttributeInfo(name + MEAN,
+          Double.class.getName(), description + " (mean)", true, false,
+          false));
+      attributes.add(new MBeanAttributeInfo(name + P50,
+          Double.class.getName(), description + " (50th percentile)", true,
+          false, false));
+      attributes.add(new MBeanAttributeInfo(name + P99,
+          Double.class.getName(), description + " (99th percentile)", true,
+          false, false));
+    }
+    return new MBeanInfo(getClass().getName(),
+        "Counters and latencies of the harvest",
+        attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+        null, new MBeanOperationInfo[0], null);
+  }
+}
@@ -1,61 +1,131 @@
 package gov.nasa.pds.harvest.search.stats;
 
-import java.io.File;
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies gathered during a harvest run. The counters may be
+ * updated from several crawler threads at once, so they are kept in
+ * LongAdders.
+ * <p>
+ * Every counter and latency is registered under a name, so that
+ * {@link MetricsExporter} can publish them while the harvest is running.
+ */
 public class HarvestSolrStats {
-  public static int numGoodFiles = 0;
+  /** The counters by name. Declared first so the fields can register. */
+  private static final Map<String, LongAdder> counters =
+      new LinkedHashMap<String, LongAdder>();
+
+  /** The latencies by name. */
+  private static final Map<String, LatencyHistogram> latencies =
+      new LinkedHashMap<String, LatencyHistogram>();
+
+  /** Descriptions of the counters and latencies by name. */
+  private static final Map<String, String> descriptions =
+      new HashMap<String, String>();
+
+  public static final LongAdder numGoodFiles = counter("good_files",
+      "Files that passed the pre-conditions");
+
+  public static final LongAdder numBadFiles = counter("bad_files",
+      "Files that failed the pre-conditions");
+
+  public static final LongAdder numFilesSkipped = counter("skipped_files",
+      "Files that were skipped");
+
+  public static final LongAdder numProductsRegistered = counter(
+      "products_registered", "Products that were registered");
+
+  public static final LongAdder numProductsNotRegistered = counter(
+      "products_not_registered", "Products that failed to get registered");
+
+  public static final LongAdder numDocumentsCreated = counter(
+      "documents_created", "Search documents that were created");
+
+  public static final LongAdder numDocumentsNotCreated = counter(
+      "documents_not_created", "Search documents that failed to get created");
+
+  public static final LongAdder numXPathDocsRegistered = counter(
+      "xpath_docs_registered", "XPath documents that were registered");
+
+  public static final LongAdder numXPathDocsNotRegistered = counter(
+      "xpath_docs_not_registered",
+      "XPath documents that failed to get registered");
 
-  public static int numBadFiles = 0;
+  public static final LongAdder numAncillaryProductsRegistered = counter(
+      "ancillary_products_registered",
+      "Ancillary products that were registered");
 
-  public static int numFilesSkipped = 0;
-  
-  public static int numProductsRegistered = 0;
+  public static final LongAdder numAncillaryProductsNotRegistered = counter(
+      "ancillary_products_not_registered",
+      "Ancillary products that failed to get registered");
 
-  public static int numProductsNotRegistered = 0;
+  public static final LongAdder numErrors = counter("errors",
+      "Errors that were logged");
 
-  public static int numDocumentsCreated = 0;
+  public static final LongAdder numWarnings = counter("warnings",
+      "Warnings that were logged");
 
-  public static int numDocumentsNotCreated = 0;
+  public static final LongAdder numGeneratedChecksumsSameInManifest = counter(
+      "generated_checksums_same_in_manifest",
+      "Generated checksums that matched the manifest");
 
-  public static int numXPathDocsRegistered = 0;
+  public static final LongAdder numGeneratedChecksumsDiffInManifest = counter(
+      "generated_checksums_diff_in_manifest",
+      "Generated checksums that did not match the manifest");
 
-  public static int numXPathDocsNotRegistered = 0;
-  
-  public static int numAncillaryProductsRegistered = 0;
+  public static final LongAdder numGeneratedChecksumsNotCheckedInManifest =
+      counter("generated_checksums_not_checked_in_manifest",
+      "Generated checksums that were not in the manifest");
 
-  public static int numAncillaryProductsNotRegistered = 0;
+  public static final LongAdder numGeneratedChecksumsSameInLabel = counter(
+      "generated_checksums_same_in_label",
+      "Generated checksums that matched the label");
 
-  public static int numErrors = 0;
+  public static final LongAdder numGeneratedChecksumsDiffInLabel = counter(
+      "generated_checksums_diff_in_label",
+      "Generated checksums that did not match the label");
 
-  public static int numWarnings = 0;
+  public static final LongAdder numGeneratedChecksumsNotCheckedInLabel =
+      counter("generated_checksums_not_checked_in_label",
+      "Generated checksums that were not in the label");
 
-  public static int numGeneratedChecksumsSameInManifest = 0;
+  public static final LongAdder numManifestChecksumsSameInLabel = counter(
+      "manifest_checksums_same_in_label",
+      "Manifest checksums that matched the label");
 
-  public static int numGeneratedChecksumsDiffInManifest = 0;
+  public static final LongAdder numManifestChecksumsDiffInLabel = counter(
+      "manifest_checksums_diff_in_label",
+      "Manifest checksums that did not match the label");
 
-  public static int numGeneratedChecksumsNotCheckedInManifest = 0;
+  public static final LongAdder numManifestChecksumsNotCheckedInLabel =
+      counter("manifest_checksums_not_checked_in_label",
+      "Manifest checksums that were not in the label");
 
-  public static int numGeneratedChecksumsSameInLabel = 0;
+  public static final LatencyHistogram parseTime = latency("label_parse",
+      "Time spent parsing labels");
 
-  public static int numGeneratedChecksumsDiffInLabel = 0;
+  public static final LatencyHistogram extractTime = latency(
+      "metadata_extract", "Time spent extracting metadata from labels");
 
-  public static int numGeneratedChecksumsNotCheckedInLabel = 0;
+  public static final LatencyHistogram checksumTime = latency(
+      "checksum", "Time spent computing checksums of file objects");
 
-  public static int numManifestChecksumsSameInLabel = 0;
+  public static final LatencyHistogram docWriteTime = latency("doc_write",
+      "Time spent writing search documents");
 
-  public static int numManifestChecksumsDiffInLabel = 0;
+  public static final LatencyHistogram solrSubmitTime = latency(
+      "solr_submit", "Time spent sending batches of documents to Solr");
 
-  public static int numManifestChecksumsNotCheckedInLabel = 0;
-  
-  public static String packageId = "N/A";
+  public static volatile String packageId = "N/A";
 
   public static HashMap<String, BigInteger> registeredProductTypes = new HashMap<String, BigInteger>();
 
-  public static void addProductType(String type) {
+  public static synchronized void addProductType(String type) {
     if (registeredProductTypes.containsKey(type)) {
       BigInteger count = registeredProductTypes.get(type);
       count = count.add(BigInteger.ONE);
@@ -64,4 +134,56 @@ public class HarvestSolrStats {
       registeredProductTypes.put(type, BigInteger.ONE);
     }
   }
+
+  /**
+   * Gets a copy of the number of registered products of each type.
+   *
+   * @return The counts by product type.
+   */
+  public static synchronized Map<String, BigInteger> getProductTypes() {
+    return new HashMap<String, BigInteger>(registeredProductTypes);
+  }
+
+  /**
+   * Gets the counters.
+   *
+   * @return The counters by name.
+   */
+  public static Map<String, LongAdder> getCounters() {
+    return Collections.unmodifiableMap(counters);
+  }
+
+  /**
+   * Gets the latencies.
+   *
+   * @return The latencies by name.
+   */
+  public static Map<String, LatencyHistogram> getLatencies() {
+    return Collections.unmodifiableMap(latencies);
+  }
+
+  /**
+   * Gets the description of a counter or latency.
+   *
+   * @param name The name of the counter or latency.
+   *
+   * @return The description.
+   */
+  public static String getDescription(String name) {
+    return descriptions.get(name);
+  }
+
+  private static LongAdder counter(String name, String description) {
+    LongAdder counter = new LongAdder();
+    counters.put(name, counter);
+    descriptions.put(name, description);
+    return counter;
+  }
+
+  private static LatencyHistogram latency(String name, String description) {
+    LatencyHistogram latency = new LatencyHistogram();
+    latencies.put(name, latency);
+    descriptions.put(name, description);
+    return latency;
+  }
 }
@@ -0,0 +1,149 @@
+package gov.nasa.pds.harvest.search.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with fixed bucket bounds, from 100 microseconds
+ * up to a minute. Recording is lock free, so it can be done from any
+ * number of threads.
+ */
+public class LatencyHistogram {
+  /** Upper bounds of the buckets in seconds. */
+  private static final double[] BOUNDS = {0.0001, 0.00025, 0.0005, 0.001,
+      0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+  /** Upper bounds of the buckets in nanoseconds. */
+  private static final long[] NANO_BOUNDS = new long[BOUNDS.length];
+
+  static {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      NANO_BOUNDS[i] = (long) (BOUNDS[i] * 1.0e9);
+    }
+  }
+
+  /** Counts of each bucket, with a last bucket for anything longer. */
+  private final LongAdder[] buckets;
+
+  /** Number of latencies recorded. */
+  private final LongAdder count;
+
+  /** Sum of the latencies in nanoseconds. */
+  private final LongAdder sum;
+
+  /**
+   * Constructor.
+   */
+  public LatencyHistogram() {
+    buckets = new LongAdder[BOUNDS.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+    count = new LongAdder();
+    sum = new LongAdder();
+  }
+
+  /**
+   * Records the time elapsed since the given start.
+   *
+   * @param start The start as given by {@link System#nanoTime()}.
+   */
+  public void recordSince(long start) {
+    record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    int i = 0;
+    while (i < NANO_BOUNDS.length && nanos > NANO_BOUNDS[i]) {
+      i++;
+    }
+    buckets[i].increment();
+    count.increment();
+    sum.add(nanos);
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return The count.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the sum of the latencies recorded.
+   *
+   * @return The sum in seconds.
+   */
+  public double getSum() {
+    return sum.sum() / 1.0e9;
+  }
+
+  /**
+   * Gets the mean of the latencies recorded.
+   *
+   * @return The mean in milliseconds, or 0 if nothing has been recorded.
+   */
+  public double getMean() {
+    long n = count.sum();
+    if (n == 0) {
+      return 0;
+    }
+    return (double) sum.sum() / n / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * Estimates a percentile of the latencies recorded as the upper bound of
+   * the bucket it falls in.
+   *
+   * @param percentile The percentile, between 0 and 100.
+   *
+   * @return The percentile in milliseconds, or 0 if nothing has been
+   * recorded. Latencies longer than the last bound give infinity.
+   */
+  public double getPercentile(double percentile) {
+    long[] counts = getBucketCounts();
+    long n = counts[counts.length - 1];
+    if (n == 0) {
+      return 0;
+    }
+    double rank = Math.ceil(n * percentile / 100.0);
+    for (int i = 0; i < BOUNDS.length; i++) {
+      if (counts[i] >= rank) {
+        return BOUNDS[i] * 1000;
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Gets the upper bounds of the buckets.
+   *
+   * @return The bounds in seconds.
+   */
+  public static double[] getBounds() {
+    return BOUNDS.clone();
+  }
+
+  /**
+   * Gets the cumulative count of each bucket. The last element is the
+   * count of all latencies.
+   *
+   * @return The counts, one more than the number of bounds.
+   */
+  public long[] getBucketCounts() {
+    long[] counts = new long[buckets.length];
+    long total = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      total += buckets[i].sum();
+      counts[i] = total;
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,232 @@
+package gov.nasa.pds.harvest.search.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import gov.nasa.pds.harvest.search.logging.ToolsLevel;
+import gov.nasa.pds.harvest.search.logging.ToolsLogRecord;
+
+/**
+ * Publishes the harvest counters and latencies while a harvest is running.
+ * <p>
+ * The metrics are registered with the platform MBean server under
+ * {@value #OBJECT_NAME}, where they can be watched with JConsole or any
+ * other JMX client.
+ * <p>
+ * When the {@value #FILE_PROP} Java property is set, the metrics are also
+ * written to that file in the Prometheus text format, every
+ * {@value #INTERVAL_PROP} seconds (15 by default). The file is replaced
+ * atomically, so it can be read by the textfile collector of the
+ * Prometheus node exporter, which requires a ".prom" extension.
+ */
+public class MetricsExporter {
+  /** Java property to set the Prometheus textfile. */
+  public static final String FILE_PROP = "pds.harvest.metrics.file";
+
+  /** Java property to set the seconds between writes of the textfile. */
+  public static final String INTERVAL_PROP = "pds.harvest.metrics.interval";
+
+  /** Name of the MBean. */
+  public static final String OBJECT_NAME =
+      "gov.nasa.pds.harvest:type=HarvestMetrics";
+
+  /** Prefix of the Prometheus metric names. */
+  private static final String PREFIX = "pds_harvest_";
+
+  /** Logger object. */
+  private static Logger log = Logger.getLogger(
+      MetricsExporter.class.getName());
+
+  /** The registered MBean, or null if not registered. */
+  private static ObjectName mbean = null;
+
+  /** The Prometheus textfile, or null if not written. */
+  private static File textfile = null;
+
+  /** Writes the textfile. */
+  private static ScheduledExecutorService scheduler = null;
+
+  private MetricsExporter() {
+  }
+
+  /**
+   * Starts publishing the metrics.
+   */
+  public static synchronized void start() {
+    if (mbean == null) {
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+          server.registerMBean(new HarvestMetricsMBean(), name);
+        }
+        mbean = name;
+      } catch (JMException e) {
+        log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+            "Cannot register the harvest metrics with JMX: "
+            + e.getMessage()));
+      }
+    }
+    String path = System.getProperty(FILE_PROP);
+    if (path != null && scheduler == null) {
+      textfile = new File(path);
+      int interval = Math.max(1, Integer.getInteger(INTERVAL_PROP, 15));
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "metrics-exporter");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      scheduler.scheduleWithFixedDelay(new Runnable() {
+        public void run() {
+          write();
+        }
+      }, 0, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Stops publishing the metrics. The textfile is written one last time so
+   * that it holds the final counts.
+   */
+  public static void stop() {
+    ScheduledExecutorService writer;
+    synchronized (MetricsExporter.class) {
+      writer = scheduler;
+      scheduler = null;
+    }
+    // Wait for a write in progress without holding the lock it needs
+    if (writer != null) {
+      writer.shutdown();
+      try {
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (MetricsExporter.class) {
+      write();
+      textfile = null;
+      unregister();
+    }
+  }
+
+  private static void unregister() {
+    if (mbean != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+      } catch (JMException e) {
+        // Already gone
+      }
+      mbean = null;
+    }
+  }
+
+  /**
+   * Formats the metrics in the Prometheus text format.
+   *
+   * @return The metrics.
+   */
+  public static String format() {
+    StringBuilder text = new StringBuilder();
+    for (Map.Entry<String, LongAdder> entry
+        : HarvestSolrStats.getCounters().entrySet()) {
+      String name = PREFIX + entry.getKey() + "_total";
+      appendHeader(text, name, "counter",
+          HarvestSolrStats.getDescription(entry.getKey()));
+      text.append(name).append(' ').append(entry.getValue().sum())
+          .append('\n');
+    }
+
+    String name = PREFIX + "products_by_type_total";
+    appendHeader(text, name, "counter", "Products handled by product type");
+    for (Map.Entry<String, BigInteger> entry
+        : HarvestSolrStats.getProductTypes().entrySet()) {
+      text.append(name).append("{type=\"").append(escape(entry.getKey()))
+          .append("\"} ").append(entry.getValue()).append('\n');
+    }
+
+    double[] bounds = LatencyHistogram.getBounds();
+    for (Map.Entry<String, LatencyHistogram> entry
+        : HarvestSolrStats.getLatencies().entrySet()) {
+      name = PREFIX + entry.getKey() + "_seconds";
+      appendHeader(text, name, "histogram",
+          HarvestSolrStats.getDescription(entry.getKey()));
+      LatencyHistogram latency = entry.getValue();
+      double sum = latency.getSum();
+      long[] counts = latency.getBucketCounts();
+      for (int i = 0; i < bounds.length; i++) {
+        text.append(name).append("_bucket{le=\"")
+            .append(BigDecimal.valueOf(bounds[i]).stripTrailingZeros()
+                .toPlainString())
+            .append("\"} ").append(counts[i]).append('\n');
+      }
+      long count = counts[counts.length - 1];
+      text.append(name).append("_bucket{le=\"+Inf\"} ").append(count)
+          .append('\n');
+      text.append(name).append("_sum ").append(sum).append('\n');
+      text.append(name).append("_count ").append(count).append('\n');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes the textfile, replacing the previous one.
+   */
+  private static synchronized void write() {
+    if (textfile == null) {
+      return;
+    }
+    File temp = new File(textfile.getPath() + ".tmp");
+    try {
+      Writer writer = new OutputStreamWriter(
+          Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8);
+      try {
+        writer.write(format());
+      } finally {
+        writer.close();
+      }
+      Files.move(temp.toPath(), textfile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+          "Cannot write the harvest metrics: " + e.getMessage(),
+          textfile));
+    }
+  }
+
+  private static void appendHeader(StringBuilder text, String name,
+      String type, String description) {
+    text.append("# HELP ").append(name).append(' ').append(description)
+        .append('\n');
+    text.append("# TYPE ").append(name).append(' ').append(type)
+        .append('\n');
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"")
+        .replace("\n", "\\n");
+  }
+}
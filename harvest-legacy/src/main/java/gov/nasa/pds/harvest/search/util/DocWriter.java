@@ -1,71 +1,87 @@
 package gov.nasa.pds.harvest.search.util;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringEscapeUtils;
+import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
 import gov.nasa.pds.search.core.exception.InvalidDatetimeException;
 import gov.nasa.pds.search.core.exception.SearchCoreFatalException;
 import gov.nasa.pds.search.core.logging.ToolsLevel;
 import gov.nasa.pds.search.core.logging.ToolsLogRecord;
 import gov.nasa.pds.search.core.util.PDSDateConvert;
 
-public class DocWriter 
+/**
+ * Writes Solr documents to the solr_doc_N.xml segment files.
+ *
+ * The current segment stays open between documents. Moving on to another
+ * segment, or closing the writer, finishes the current segment with the
+ * closing add tag.
+ */
+public class DocWriter
 {
-	private FileWriter solrDoc;
-	private Map<String, List<String>> map;
-	private Map<String, String> typeMap;
-	private String classname;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private Writer solrDoc;
+	private File basedir;
+	private int seq = -1;
 	private String fnameprefix = "solr_doc";
 	private String fnameext = "xml";
     private String filepath = "";
 
 	private Logger log = Logger.getLogger(this.getClass().getName());
-	
-
-	public DocWriter(Map<String, List<String>> map, File basedir, int seq, 
-			String productTitle, Map<String, String> typeMap) 
-	{
-		try 
-		{
-			this.map = map;
-			this.typeMap = typeMap;
-			this.classname = productTitle;
 
-			// Get the filepath
-            this.filepath = getFilename(basedir.getAbsolutePath(), seq);
 
-			// Open a new file writer
-            open(this.filepath);
-		} 
-		catch (Exception ex) 
-		{
-			ex.printStackTrace();
-		}
+	/**
+	 * Constructor
+	 *
+	 * @param basedir Directory to write the segment files to
+	 */
+	public DocWriter(File basedir)
+	{
+		this.basedir = basedir;
 	}
 
-	
-    public void write() throws SearchCoreFatalException 
+
+	/**
+	 * Write a document to the given segment
+	 *
+	 * @param map Field values of the document
+	 * @param seq Segment number
+	 * @param productTitle Value of the resclass field
+	 * @param typeMap Field types
+	 * @throws SearchCoreFatalException
+	 */
+    public synchronized void write(Map<String, List<String>> map, int seq,
+    		String productTitle, Map<String, String> typeMap) throws SearchCoreFatalException
 	{
+		long start = System.nanoTime();
+
+		// Build the whole document first so that a failure never leaves
+		// half a document in the segment
+		StringBuilder doc = new StringBuilder();
 		try 
 		{
-			this.solrDoc.write("<doc>\n");
+			doc.append("<doc>\n");
 
-			Set<String> set = this.map.keySet();
+			Set<String> set = map.keySet();
 			
 			for(String fieldName: set) 
 			{
-				List<String> valArray = this.map.get(fieldName);
+				List<String> valArray = map.get(fieldName);
 				if(valArray != null) 
 				{
 					for(String value: valArray) 
 					{
-						if(this.typeMap.get(fieldName).equalsIgnoreCase("date")) 
+						if(typeMap.get(fieldName).equalsIgnoreCase("date")) 
 						{
 							try 
 							{
@@ -79,61 +95,93 @@ public class DocWriter
 						} 
 						else if(fieldName.equalsIgnoreCase("resclass")) 
 						{
-							value = this.classname;
+							value = productTitle;
 						} 
 
 						String escValue = StringEscapeUtils.escapeXml(value);
-						this.solrDoc.write("<field name=\"" + fieldName + "\">" + escValue + "</field>\n");
+						doc.append("<field name=\"").append(fieldName).append("\">")
+							.append(escValue).append("</field>\n");
 					}
 				}
 			}
 
-			this.solrDoc.write("</doc>\n</add>\n");
-			this.solrDoc.close();
+			doc.append("</doc>\n");
           } catch (NullPointerException e) {
-            e.printStackTrace();
+            log.log(Level.FINE, "Failed to build Solr Doc for " + this.filepath, e);
             throw new SearchCoreFatalException(
                 "Solr Doc was not opened properly prior to attempting to write: " + this.filepath);
-          } catch (Exception ex) {
-			ex.printStackTrace();
 		} 
-		finally 
+
+		try 
 		{
-			try 
+			if(seq != this.seq) 
 			{
-				this.solrDoc.close();
-			} 
-			catch(Exception e) 
-			{
-				// do nothing
+				close();
+				open(seq);
 			}
+			this.solrDoc.write(doc.toString());
+		} 
+		catch (IOException ex) 
+		{
+			log.log(Level.FINE, "Failed to write Solr Doc " + this.filepath, ex);
+			throw new SearchCoreFatalException("Could not write Solr Doc "
+					+ this.filepath + ": " + ex.getMessage());
+		} 
+		finally 
+		{
+			HarvestSolrStats.docWriteTime.recordSince(start);
 		}
 	}
 
-	
+
 	/**
-	 * Open a new Filewriter object
-	 * 
-	 * If the file already exists, simply open and append. If the file does not
-	 * exist, open and write initial <add> tag
-	 * 
-	 * @param filepath
+	 * Finish the current segment with the closing add tag and close it
+	 *
 	 * @throws IOException
 	 */
-	private void open(String filepath) throws IOException {
+	public synchronized void close() throws IOException
+	{
+		if(this.solrDoc == null) return;
+
+		try
+		{
+			this.solrDoc.write("</add>\n");
+		}
+		finally
+		{
+			this.solrDoc.close();
+			this.solrDoc = null;
+			this.seq = -1;
+		}
+	}
+
+
+	/**
+	 * Open the given segment
+	 *
+	 * If the file already exists, remove the closing add tag and append to it.
+	 * If the file does not exist, or holds nothing to append to, open and
+	 * write initial <add> tag
+	 *
+	 * @param seq Segment number
+	 * @throws IOException
+	 */
+	private void open(int seq) throws IOException {
+		this.filepath = getFilename(basedir.getAbsolutePath(), seq);
+
 		// Check if file exists
 		File f = new File(filepath);
 
 		// If it exists, just open and append to it
-        if (f.exists() && f.length() != 0) {
-			// Remove last line of file since it has an </add> closing tag
-			removeLastLine(filepath);
-			this.solrDoc = new FileWriter(filepath, true);
+        if (f.exists() && f.length() != 0 && trimSegment(filepath)) {
+			// The closing </add> tag has been removed
+			this.solrDoc = new BufferedWriter(new FileWriter(filepath, true), BUFFER_SIZE);
 		} else {
 			// If it doesn't exist, lets open and write the initial <add> tag
-			this.solrDoc = new FileWriter(filepath, true);
+			this.solrDoc = new BufferedWriter(new FileWriter(filepath, true), BUFFER_SIZE);
 			this.solrDoc.write("<add>\n");
 		}
+		this.seq = seq;
 	}
 
 	private String getFilename(String path, int seq) {
@@ -147,21 +195,73 @@ public class DocWriter
 		return fname;
 	}
 
-	private void removeLastLine(String filepath) throws IOException {
-		// Remove the last line
+	/**
+	 * Prepare an existing segment for appending
+	 *
+	 * The closing add tag is removed. A segment left without it, by a harvest
+	 * that was stopped while writing, is cut back to its last complete
+	 * document instead, so that the segment stays well-formed.
+	 *
+	 * @param filepath Segment file
+	 * @return false if the segment has no add tag to append to, in which case
+	 * it has been emptied
+	 * @throws IOException
+	 */
+	private boolean trimSegment(String filepath) throws IOException {
 		RandomAccessFile raf = new RandomAccessFile(filepath, "rw");
-		byte b;
-		long length = raf.length() - 1;
-		do {
-			length -= 1;
-			raf.seek(length);
-			b = raf.readByte();
-		} while (b != 10 && length > 0);
-		if (length == 0) {
-			raf.setLength(length);
-		} else {
-			raf.setLength(length + 1);
+		try {
+			long end = raf.length();
+			while (end > 0) {
+				// Find the start of the line ending at end
+				long start = end - 1;
+				while (start > 0) {
+					raf.seek(start - 1);
+					if (raf.readByte() == 10) {
+						break;
+					}
+					start -= 1;
+				}
+
+				String line = readTag(raf, start, end);
+				if ("</add>".equals(line)) {
+					raf.setLength(start);
+					return true;
+				}
+				if ("</doc>".equals(line) || "<add>".equals(line)) {
+					log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+							"Segment was not closed. Dropping anything after its last complete document.",
+							filepath));
+					raf.setLength(end);
+					raf.seek(end - 1);
+					if (raf.readByte() != 10) {
+						raf.write(10);
+					}
+					return true;
+				}
+				end = start;
+			}
+
+			log.log(new ToolsLogRecord(ToolsLevel.WARNING,
+					"Segment holds no documents. Starting it over.", filepath));
+			raf.setLength(0);
+			return false;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read a line that may be one of the tags of a segment
+	 *
+	 * @return the trimmed line, or null if it is too long to be a tag
+	 */
+	private String readTag(RandomAccessFile raf, long start, long end) throws IOException {
+		if (end - start > 16) {
+			return null;
 		}
-		raf.close();
+		byte[] buf = new byte[(int) (end - start)];
+		raf.seek(start);
+		raf.readFully(buf);
+		return new String(buf, "US-ASCII").trim();
 	}
 }
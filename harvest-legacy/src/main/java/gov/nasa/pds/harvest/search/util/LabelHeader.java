@@ -0,0 +1,207 @@
+package gov.nasa.pds.harvest.search.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import gov.nasa.pds.harvest.search.constants.Constants;
+
+/**
+ * The identification of a product label, read by streaming the head of the
+ * label rather than building its whole tree.
+ * <p>
+ * The scan stops at the product_class of the Identification_Area, which
+ * comes after the logical_identifier and version_id in a PDS4 label. It
+ * gives up, leaving the product class unknown, as soon as it meets
+ * anything the XPath over the full tree could see differently, such as an
+ * XInclude or a prefixed Identification_Area. A known product class is
+ * therefore the same value the full parse would give.
+ */
+public class LabelHeader {
+  /** The XInclude namespace. */
+  private static final String XINCLUDE_NAMESPACE =
+      "http://www.w3.org/2001/XInclude";
+
+  /** Size of the buffer over the head of the label. */
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  /** Creates the stream readers. */
+  private static final XMLInputFactory factory = createFactory();
+
+  /** Local name of the root element. */
+  private String rootElement;
+
+  /** The logical identifier, or null if not found. */
+  private String logicalIdentifier;
+
+  /** The version ID, or null if not found. */
+  private String versionId;
+
+  /** The product class, or null if not known from the head. */
+  private String productClass;
+
+  private LabelHeader() {
+    rootElement = null;
+    logicalIdentifier = null;
+    versionId = null;
+    productClass = null;
+  }
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    inputFactory.setProperty(
+        XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return inputFactory;
+  }
+
+  /**
+   * Scans the head of a label.
+   *
+   * @param label The label file.
+   *
+   * @return The header.
+   *
+   * @throws IOException If the label could not be read.
+   * @throws XMLStreamException If the head of the label is not well-formed
+   * or uses a DTD.
+   */
+  public static LabelHeader scan(File label)
+      throws IOException, XMLStreamException {
+    LabelHeader header = new LabelHeader();
+    InputStream in = new BufferedInputStream(
+        Files.newInputStream(label.toPath()), BUFFER_SIZE);
+    try {
+      XMLStreamReader reader = factory.createXMLStreamReader(
+          label.toURI().toString(), in);
+      try {
+        header.read(reader);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      in.close();
+    }
+    return header;
+  }
+
+  private void read(XMLStreamReader reader) throws XMLStreamException {
+    String namespace = XMLExtractor.getDefaultNamespace();
+    // Depth of the Identification_Area being read, or 0 if outside of one
+    int areaDepth = 0;
+    int depth = 0;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        if (depth == areaDepth) {
+          areaDepth = 0;
+        }
+        depth--;
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        String name = reader.getLocalName();
+        String prefix = reader.getPrefix();
+        if (depth == 1) {
+          rootElement = name;
+        }
+        if (XINCLUDE_NAMESPACE.equals(reader.getNamespaceURI())) {
+          // Included content could hold an earlier Identification_Area
+          return;
+        }
+        if (areaDepth != 0 && depth == areaDepth + 1
+            && namespace.equals(nullToEmpty(reader.getNamespaceURI()))) {
+          if (Constants.LOGICAL_ID.equals(name)) {
+            logicalIdentifier = readText(reader);
+            depth--;
+          } else if (Constants.PRODUCT_VERSION.equals(name)) {
+            versionId = readText(reader);
+            depth--;
+          } else if (Constants.PRODUCT_CLASS.equals(name)) {
+            productClass = readText(reader);
+            return;
+          }
+        } else if (name.startsWith("Identification_Area")
+            && (prefix == null || prefix.isEmpty())) {
+          areaDepth = depth;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the string value of the current element, the way XPath gives it,
+   * leaving the reader on its end tag.
+   */
+  private static String readText(XMLStreamReader reader)
+      throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      } else if (event == XMLStreamConstants.CHARACTERS
+          || event == XMLStreamConstants.CDATA
+          || event == XMLStreamConstants.SPACE) {
+        text.append(reader.getText());
+      } else if (event == XMLStreamConstants.ENTITY_REFERENCE) {
+        throw new XMLStreamException("Unresolved entity in label head: "
+            + reader.getLocalName());
+      }
+    }
+    return text.toString();
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Gets the local name of the root element.
+   *
+   * @return The name, or null if the label has no root element.
+   */
+  public String getRootElement() {
+    return rootElement;
+  }
+
+  /**
+   * Gets the logical identifier.
+   *
+   * @return The logical identifier, or null if it was not found before the
+   * product class.
+   */
+  public String getLogicalIdentifier() {
+    return logicalIdentifier;
+  }
+
+  /**
+   * Gets the version ID.
+   *
+   * @return The version ID, or null if it was not found before the product
+   * class.
+   */
+  public String getVersionId() {
+    return versionId;
+  }
+
+  /**
+   * Gets the product class.
+   *
+   * @return The product class, or null if it could not be told from the
+   * head of the label.
+   */
+  public String getProductClass() {
+    return productClass;
+  }
+}
@@ -70,4 +70,35 @@ public class LidVid {
     }
     return isEqual;
   }
+
+  /**
+   * Compares two version IDs of the form major.minor. A part that is not a
+   * number counts as 0.
+   *
+   * @param first A version ID.
+   * @param second Another version ID.
+   *
+   * @return a negative number, zero or a positive number if the first
+   * version is lower than, equal to or higher than the second.
+   */
+  public static int compareVersions(String first, String second) {
+    String[] a = first.split("\\.");
+    String[] b = second.split("\\.");
+    for (int i = 0; i < Math.max(a.length, b.length); i++) {
+      int x = i < a.length ? parseVersionPart(a[i]) : 0;
+      int y = i < b.length ? parseVersionPart(b[i]) : 0;
+      if (x != y) {
+        return x < y ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  private static int parseVersionPart(String part) {
+    try {
+      return Integer.parseInt(part.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
 }
@@ -0,0 +1,99 @@
+package gov.nasa.pds.harvest.search.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Detects the MIME type of files for the whole tool.
+ * <p>
+ * Creating a Tika instance loads the entire MIME type registry, so a single
+ * instance is shared. Since most files are typed by their extension alone,
+ * the type found for each extension is kept in a small LRU cache.
+ */
+public class MimeDetector {
+  /** Maximum number of extensions to remember. */
+  private static final int CACHE_SIZE = 1024;
+
+  /** The shared detector. Tika is thread safe. */
+  private static final Tika tika = new Tika();
+
+  /** Maps a lowercase file extension to its MIME type. */
+  private static final Map<String, String> cache =
+      new LinkedHashMap<String, String>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> e) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  private MimeDetector() {
+  }
+
+  /**
+   * Detects the MIME type of a file from its name.
+   *
+   * @param name A file name, path or URL.
+   *
+   * @return The MIME type.
+   */
+  public static String detect(String name) {
+    String extension = getExtension(name);
+    if (extension == null) {
+      return tika.detect(name);
+    }
+    String type;
+    synchronized (cache) {
+      type = cache.get(extension);
+    }
+    if (type == null) {
+      type = tika.detect(name);
+      synchronized (cache) {
+        cache.put(extension, type);
+      }
+    }
+    return type;
+  }
+
+  /**
+   * Detects the MIME type of a file. The type is taken from the file name
+   * when its extension is known. Otherwise the content of the file is
+   * examined.
+   *
+   * @param file The file.
+   *
+   * @return The MIME type.
+   *
+   * @throws IOException If the file could not be read.
+   */
+  public static String detect(File file) throws IOException {
+    String type = detect(file.getName());
+    if (MediaType.OCTET_STREAM.toString().equals(type)) {
+      type = tika.detect(file);
+    }
+    return type;
+  }
+
+  /**
+   * Gets the lowercase extension of a file name.
+   *
+   * @param name A file name, path or URL.
+   *
+   * @return The extension, or null if the name doesn't have one.
+   */
+  private static String getExtension(String name) {
+    int start = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1;
+    int dot = name.lastIndexOf('.');
+    if (dot <= start || dot == name.length() - 1) {
+      return null;
+    }
+    return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+  }
+}
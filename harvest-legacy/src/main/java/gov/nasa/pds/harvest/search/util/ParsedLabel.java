@@ -0,0 +1,122 @@
+package gov.nasa.pds.harvest.search.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
+import net.sf.saxon.trans.XPathException;
+
+/**
+ * Holds the parsed form of a product label while the crawler is handling
+ * the product, so that the label is only parsed once no matter how many
+ * steps of the crawl need to look at it.
+ * <p>
+ * The label is parsed on the first call to {@link #getExtractor()}. A label
+ * that fails to parse is not parsed again; the same error is thrown to
+ * every caller.
+ * <p>
+ * The head of the label can be scanned on its own with
+ * {@link #getHeader()}, to decide whether the label is worth parsing.
+ * <p>
+ * This class is not thread safe. An instance belongs to the thread that is
+ * handling the product.
+ */
+public class ParsedLabel {
+  /** The label file. */
+  private File label;
+
+  /** The extractor holding the parsed label. */
+  private XMLExtractor extractor;
+
+  /** The error that occurred while parsing the label, if any. */
+  private XPathException error;
+
+  /** The header of the label, once scanned. */
+  private LabelHeader header;
+
+  /** Whether the header has been scanned. */
+  private boolean scanned;
+
+  /**
+   * Constructor.
+   *
+   * @param label The label file.
+   */
+  public ParsedLabel(File label) {
+    this.label = label;
+    this.extractor = null;
+    this.error = null;
+    this.header = null;
+    this.scanned = false;
+  }
+
+  /**
+   * Gets the label file.
+   *
+   * @return The label file.
+   */
+  public File getFile() {
+    return label;
+  }
+
+  /**
+   * Gets an extractor over the parsed label, parsing the label first if
+   * that hasn't been done yet.
+   *
+   * @return The extractor.
+   *
+   * @throws XPathException If an error occurred while parsing the label.
+   */
+  public XMLExtractor getExtractor() throws XPathException {
+    if (error != null) {
+      throw error;
+    }
+    if (extractor == null) {
+      XMLExtractor xmlExtractor = new XMLExtractor();
+      long start = System.nanoTime();
+      try {
+        xmlExtractor.parse(label);
+      } catch (XPathException e) {
+        error = e;
+        throw e;
+      } finally {
+        HarvestSolrStats.parseTime.recordSince(start);
+      }
+      extractor = xmlExtractor;
+    }
+    return extractor;
+  }
+
+  /**
+   * Gets the header of the label, scanning the head of the label first if
+   * that hasn't been done yet.
+   *
+   * @return The header, or null if the head of the label could not be
+   * scanned. The label may still parse, so the caller should fall back to
+   * {@link #getExtractor()}.
+   */
+  public LabelHeader getHeader() {
+    if (!scanned) {
+      scanned = true;
+      try {
+        header = LabelHeader.scan(label);
+      } catch (IOException e) {
+        header = null;
+      } catch (XMLStreamException e) {
+        header = null;
+      }
+    }
+    return header;
+  }
+
+  /**
+   * Determines whether the label has been parsed successfully.
+   *
+   * @return true if the label has been parsed.
+   */
+  public boolean isParsed() {
+    return extractor != null;
+  }
+}
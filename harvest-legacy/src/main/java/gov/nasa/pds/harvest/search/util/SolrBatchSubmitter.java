@@ -0,0 +1,511 @@
+package gov.nasa.pds.harvest.search.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+import gov.nasa.pds.harvest.search.stats.HarvestSolrStats;
+
+
+/**
+ * Sends documents to a Solr collection in batches from a background thread.
+ *
+ * Documents are grouped into batches of a fixed size. A partial batch is sent
+ * once the flush interval has passed without a full batch. At most a fixed
+ * number of batches wait to be sent; callers adding documents block while the
+ * queue is full, so the crawl is never more than that far ahead of Solr.
+ *
+ * The documents held by the submitter are also limited by their size, since
+ * a document may carry the content of a file. A batch is sent early once it
+ * holds its share of the size limit, and callers block while the documents
+ * waiting to be sent, or being sent, add up to more than the limit. A single
+ * document larger than the limit is let through once nothing else is held.
+ *
+ * Batches are sent with commitWithin instead of an explicit commit. A single
+ * hard commit is done when the submitter is closed. Each document added gets a
+ * future that completes once Solr has accepted its batch, or completes
+ * exceptionally if the batch could not be sent. The futures are completed on
+ * the sender thread, so anything waiting on them must not add documents.
+ *
+ * If the sender thread dies, every document still held is failed and the
+ * submitter refuses new ones, so no caller is left waiting on it.
+ */
+public class SolrBatchSubmitter
+{
+    private static Logger log = Logger.getLogger(SolrBatchSubmitter.class.getName());
+
+    private SolrClient client;
+    private String collection;
+    private String idField;
+
+    private int batchSize;
+    private long flushInterval;
+    private int maxPending;
+    private long maxPendingSize;
+    private long maxBatchSize;
+    private long pendingSize;
+
+    // Callers waiting for room are let in in the order they came, so that a
+    // large document is not kept out by a stream of small ones.
+    private long nextTicket;
+    private long nowServing;
+
+    // Batches are handed to the sender under the lock of the submitter, so
+    // that the sender only stops once every batch taken before close() has
+    // been queued.
+    private Batch batch;
+    private Deque<Batch> queue;
+    private int numQueuing;
+    private Batch sending;
+    private Thread sender;
+    private boolean closed;
+    private Throwable failure;
+
+    private int numFailed;
+
+
+    /**
+     * Constructor. Starts the sender thread.
+     *
+     * @param client Solr client
+     * @param collection Solr collection to send documents to
+     * @param idField Field identifying a document in error messages
+     * @param batchSize Number of documents per batch
+     * @param flushInterval Maximum time in seconds a document waits before it is sent.
+     * Also used as the commitWithin time.
+     * @param maxPending Maximum number of batches waiting to be sent
+     * @param maxPendingSize Maximum size in bytes of the documents held by the submitter
+     */
+    public SolrBatchSubmitter(SolrClient client, String collection, String idField,
+            int batchSize, int flushInterval, int maxPending, long maxPendingSize)
+    {
+        if(batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        if(flushInterval < 1) throw new IllegalArgumentException("Invalid flush interval: " + flushInterval);
+        if(maxPendingSize < 1) throw new IllegalArgumentException("Invalid pending size: " + maxPendingSize);
+
+        this.client = client;
+        this.collection = collection;
+        this.idField = idField;
+        this.batchSize = batchSize;
+        this.flushInterval = TimeUnit.SECONDS.toMillis(flushInterval);
+        this.maxPending = Math.max(1, maxPending);
+        this.maxPendingSize = maxPendingSize;
+        // The batch being built, the batches in the queue and the batch being sent
+        this.maxBatchSize = Math.max(1, maxPendingSize / (this.maxPending + 2));
+
+        batch = new Batch(batchSize);
+        queue = new ArrayDeque<Batch>(this.maxPending);
+
+        sender = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                send();
+            }
+        }, "solr-submitter-" + collection);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+
+    /**
+     * Queues a document to be sent. Blocks while the maximum number of
+     * batches, or of bytes, are waiting to be sent.
+     *
+     * @param doc Solr document
+     * @return future completed once Solr has accepted the document
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public CompletableFuture<Void> add(SolrInputDocument doc) throws InterruptedException
+    {
+        CompletableFuture<Void> ack = new CompletableFuture<Void>();
+        long size = sizeOf(doc);
+        Batch rejected = null;
+
+        synchronized(this)
+        {
+            // Only documents already handed to the sender free up room
+            long ticket = nextTicket++;
+            try
+            {
+                while(!closed && failure == null && (ticket > nowServing 
+                        || (pendingSize + size > maxPendingSize && pendingSize > batch.bytes)))
+                {
+                    wait();
+                }
+            }
+            finally
+            {
+                // An interrupted caller lets the ones before it in without
+                // regard to order, rather than leaving them waiting
+                nowServing = Math.max(nowServing, ticket + 1);
+                notifyAll();
+            }
+            if(failure != null) throw new IllegalStateException("Submitter for '" + collection + "' has stopped.", failure);
+            if(closed) throw new IllegalStateException("Submitter for '" + collection + "' is closed.");
+
+            batch.add(doc, ack, size);
+            pendingSize += size;
+            if(batch.size() >= batchSize || batch.bytes >= maxBatchSize || pendingSize >= maxPendingSize)
+            {
+                Batch full = takeBatch();
+                if(!enqueue(full)) rejected = full;
+            }
+        }
+
+        if(rejected != null)
+        {
+            fail(rejected, failure());
+        }
+        return ack;
+    }
+
+
+    /**
+     * Queues the documents added so far to be sent now, instead of waiting
+     * for a full batch or the flush interval.
+     */
+    public void flush()
+    {
+        Batch rejected = null;
+
+        synchronized(this)
+        {
+            if(closed || failure != null) return;
+
+            Batch rest = takeBatch();
+            if(rest.size() > 0 && !enqueue(rest)) rejected = rest;
+        }
+
+        if(rejected != null)
+        {
+            fail(rejected, failure());
+        }
+    }
+
+
+    /**
+     * Sends all queued documents, stops the sender thread and commits.
+     *
+     * @throws Exception if the sender thread died or the final commit failed
+     */
+    public void close() throws Exception
+    {
+        Batch rejected = null;
+
+        synchronized(this)
+        {
+            if(closed) return;
+            closed = true;
+
+            Batch rest = takeBatch();
+            if(rest.size() > 0 && !enqueue(rest)) rejected = rest;
+            notifyAll();
+        }
+
+        if(rejected != null)
+        {
+            fail(rejected, failure());
+        }
+        sender.join();
+
+        Throwable error = failure();
+        if(error != null)
+        {
+            throw new Exception("Submitter for '" + collection + "' has stopped.", error);
+        }
+        client.commit(collection);
+    }
+
+
+    /**
+     * @return number of documents that could not be sent
+     */
+    public synchronized int getNumFailed()
+    {
+        return numFailed;
+    }
+
+
+    private synchronized Throwable failure()
+    {
+        return failure;
+    }
+
+
+    private synchronized Batch takeBatch()
+    {
+        Batch docs = batch;
+        batch = new Batch(batchSize);
+        return docs;
+    }
+
+
+    /**
+     * Hands a batch to the sender, waiting while the queue is full. Must be
+     * called holding the lock of the submitter.
+     *
+     * @return false if the sender has died, in which case the caller must
+     * fail the documents once it has let go of the lock
+     */
+    private boolean enqueue(Batch docs)
+    {
+        // The documents have already been taken from the caller, so the wait
+        // is not interruptible. The sender makes progress or fails them all.
+        boolean interrupted = false;
+        numQueuing++;
+        try
+        {
+            while(queue.size() >= maxPending && failure == null)
+            {
+                try
+                {
+                    wait();
+                }
+                catch(InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            numQueuing--;
+        }
+
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if(failure != null)
+        {
+            // The sender has already failed everything else it held
+            numFailed += docs.size();
+            pendingSize = 0;
+            return false;
+        }
+
+        queue.addLast(docs);
+        notifyAll();
+        return true;
+    }
+
+
+    private void send()
+    {
+        try
+        {
+            Batch docs;
+            while((docs = nextBatch()) != null)
+            {
+                send(docs);
+            }
+        }
+        catch(Throwable ex)
+        {
+            log.log(Level.SEVERE, "Submitter for '" + collection + "' has stopped.", ex);
+            stop(ex);
+        }
+    }
+
+
+    /**
+     * Waits for the next batch to send. A partial batch is taken once the
+     * flush interval has passed without a full one.
+     *
+     * @return the batch, or null once the submitter is closed and every
+     * batch has been sent
+     */
+    private synchronized Batch nextBatch()
+    {
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while(queue.isEmpty())
+        {
+            if(closed && numQueuing == 0) return null;
+
+            long timeLeft = deadline - System.currentTimeMillis();
+            if(timeLeft <= 0)
+            {
+                if(batch.size() > 0)
+                {
+                    queue.addLast(takeBatch());
+                    break;
+                }
+                deadline = System.currentTimeMillis() + flushInterval;
+                timeLeft = flushInterval;
+            }
+
+            try
+            {
+                wait(timeLeft);
+            }
+            catch(InterruptedException ex)
+            {
+                // Only close() stops the sender
+            }
+        }
+
+        sending = queue.pollFirst();
+        notifyAll();
+        return sending;
+    }
+
+
+    private void send(Batch docs)
+    {
+        long start = System.nanoTime();
+        Exception error = null;
+        try
+        {
+            UpdateRequest req = new UpdateRequest();
+            req.add(docs.docs);
+            req.setCommitWithin((int)flushInterval);
+            req.process(client, collection);
+        }
+        catch(Exception ex)
+        {
+            error = ex;
+            synchronized(this)
+            {
+                numFailed += docs.size();
+            }
+        }
+        finally
+        {
+            HarvestSolrStats.solrSubmitTime.recordSince(start);
+        }
+
+        synchronized(this)
+        {
+            pendingSize -= docs.bytes;
+            sending = null;
+            notifyAll();
+        }
+
+        // Waiters are told how their batch went only after it has been timed
+        if(error == null)
+        {
+            for(CompletableFuture<Void> ack: docs.acks)
+            {
+                ack.complete(null);
+            }
+        }
+        else
+        {
+            fail(docs, error);
+        }
+    }
+
+
+    /**
+     * Fails every document still held once the sender thread has died, and
+     * wakes up all callers waiting for room.
+     */
+    private void stop(Throwable error)
+    {
+        List<Batch> held = new ArrayList<Batch>();
+
+        synchronized(this)
+        {
+            failure = error;
+            if(sending != null) held.add(sending);
+            held.addAll(queue);
+            held.add(takeBatch());
+            sending = null;
+            queue.clear();
+
+            for(Batch docs: held)
+            {
+                numFailed += docs.size();
+            }
+            pendingSize = 0;
+            notifyAll();
+        }
+
+        for(Batch docs: held)
+        {
+            fail(docs, error);
+        }
+    }
+
+
+    private void fail(Batch docs, Throwable error)
+    {
+        for(int i = 0; i < docs.size(); i++)
+        {
+            log.log(Level.FINE, "Failed to send " + docs.docs.get(i).getFieldValue(idField) 
+                    + " to '" + collection + "'", error);
+            docs.acks.get(i).completeExceptionally(error);
+        }
+    }
+
+
+    /**
+     * Estimates the memory held by a document, counting the bytes of binary
+     * values and two bytes per character of text.
+     */
+    private static long sizeOf(SolrInputDocument doc)
+    {
+        long size = 0;
+        for(SolrInputField field: doc)
+        {
+            for(Object value: field.getValues())
+            {
+                if(value instanceof byte[])
+                {
+                    size += ((byte[])value).length;
+                }
+                else if(value instanceof CharSequence)
+                {
+                    size += 2L * ((CharSequence)value).length();
+                }
+                else
+                {
+                    size += 16;
+                }
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Documents sent together, along with the futures of the callers that
+     * added them.
+     */
+    private static class Batch
+    {
+        private List<SolrInputDocument> docs;
+        private List<CompletableFuture<Void>> acks;
+        private long bytes;
+
+        public Batch(int capacity)
+        {
+            docs = new ArrayList<SolrInputDocument>(capacity);
+            acks = new ArrayList<CompletableFuture<Void>>(capacity);
+        }
+
+        public void add(SolrInputDocument doc, CompletableFuture<Void> ack, long size)
+        {
+            docs.add(doc);
+            acks.add(ack);
+            bytes += size;
+        }
+
+        public int size()
+        {
+            return docs.size();
+        }
+    }
+}
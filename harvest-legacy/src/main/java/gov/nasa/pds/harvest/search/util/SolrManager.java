@@ -1,18 +1,48 @@
 package gov.nasa.pds.harvest.search.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 
 
 public class SolrManager
 {
+    /** Java property to set the number of documents sent to Solr at once. */
+    public static final String BATCH_SIZE_PROP = "pds.search.batch.size";
+    
+    /** Java property to set the maximum number of seconds before queued documents are sent. */
+    public static final String FLUSH_INTERVAL_PROP = "pds.search.flush.interval";
+    
+    /** 
+     * Java property to set the maximum size, in bytes, of the documents queued for a collection.
+     * Inline file content counts toward it, so with the default content cap a collection
+     * holds at most this much plus one file.
+     */
+    public static final String MAX_PENDING_SIZE_PROP = "pds.search.pending.max.size";
+    
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_FLUSH_INTERVAL = 10;
+    private static final long DEFAULT_MAX_PENDING_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_PENDING_BATCHES = 4;
+    
     private static SolrManager instance;
     private SolrClient solrClient;
     
+    private int batchSize;
+    private int flushInterval;
+    private long maxPendingSize;
+    private Map<String, SolrBatchSubmitter> submitters;
+    
     
     private SolrManager(String url)
     {
         solrClient = new HttpSolrClient.Builder(url).build();
+        batchSize = Integer.getInteger(BATCH_SIZE_PROP, DEFAULT_BATCH_SIZE);
+        flushInterval = Integer.getInteger(FLUSH_INTERVAL_PROP, DEFAULT_FLUSH_INTERVAL);
+        maxPendingSize = Long.getLong(MAX_PENDING_SIZE_PROP, DEFAULT_MAX_PENDING_SIZE);
+        submitters = new LinkedHashMap<String, SolrBatchSubmitter>();
     }
 
     
@@ -23,17 +53,28 @@ public class SolrManager
     }
     
     
-    public static void destroy()
+    /**
+     * Sends any queued documents, commits them and closes the Solr client.
+     * @throws Exception if queued documents could not be committed
+     */
+    public static void destroy() throws Exception
     {
         if(instance == null) return;
         
         try
         {
-            instance.getSolrClient().close();
+            instance.closeSubmitters();
         }
-        catch(Exception ex)
+        finally
         {
-            // Ignore
+            try
+            {
+                instance.getSolrClient().close();
+            }
+            catch(Exception ex)
+            {
+                // Ignore
+            }
         }
     }
 
@@ -49,4 +90,54 @@ public class SolrManager
         return solrClient;
     }
 
+    
+    /**
+     * @return Maximum number of seconds before a document sent to Solr is committed.
+     */
+    public int getFlushInterval()
+    {
+        return flushInterval;
+    }
+    
+    
+    /**
+     * Get the batch submitter for the given collection, creating it on first use.
+     * @param collection Solr collection
+     * @param idField Field identifying a document in error messages
+     * @return batch submitter
+     */
+    public synchronized SolrBatchSubmitter getSubmitter(String collection, String idField)
+    {
+        SolrBatchSubmitter submitter = submitters.get(collection);
+        if(submitter == null)
+        {
+            submitter = new SolrBatchSubmitter(solrClient, collection, idField, 
+                    batchSize, flushInterval, MAX_PENDING_BATCHES, maxPendingSize);
+            submitters.put(collection, submitter);
+        }
+        
+        return submitter;
+    }
+    
+    
+    private synchronized void closeSubmitters() throws Exception
+    {
+        Exception error = null;
+        
+        for(SolrBatchSubmitter submitter: submitters.values())
+        {
+            try
+            {
+                submitter.close();
+            }
+            catch(Exception ex)
+            {
+                if(error == null) error = ex;
+            }
+        }
+        
+        submitters.clear();
+        if(error != null) throw error;
+    }
+
 }
@@ -3,9 +3,11 @@ package gov.nasa.pds.harvest.search.util;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
 import net.sf.saxon.Configuration;
@@ -20,31 +22,105 @@ import org.xml.sax.InputSource;
 
 /**
  * Class to extract data from an XML file.
+ * <p>
+ * All instances share one Saxon configuration and one cache of compiled
+ * XPath expressions, so an expression is only compiled once per run no
+ * matter how many files are parsed.
 */
 public class XMLExtractor {
     /** The DOM source. */
     private DocumentInfo xml = null;
 
-    /** The XPath evaluator object. */
-    private XPathEvaluator xpath = null;
-
     /** Default namespace uri */
     private static String defaultNamespaceUri = "";
 
     /** Namespace Context */
     private static PDSNamespaceContext namespaceContext = null;
 
+    /**
+     * The configuration used to parse every document. Documents must be
+     * built with the same configuration that compiled the expressions
+     * evaluated against them.
+     */
+    private static final Configuration configuration = createConfiguration();
+
+    /** The compiled expressions for the current namespace settings. */
+    private static volatile ExpressionCache expressions =
+        new ExpressionCache(defaultNamespaceUri, namespaceContext);
+
+    /**
+     * A cache of compiled XPath expressions for one set of namespace
+     * settings.
+     */
+    private static class ExpressionCache {
+        /** Compiles the expressions. */
+        private final XPathEvaluator evaluator;
+
+        /** Compiled expressions, keyed by the expression string. */
+        private final ConcurrentHashMap<String, XPathExpression> compiled;
+
+        /**
+         * Constructor.
+         *
+         * @param defaultNamespace The default element namespace.
+         * @param context The namespace context, or null if there is none.
+         */
+        ExpressionCache(String defaultNamespace, PDSNamespaceContext context) {
+            evaluator = new XPathEvaluator(configuration);
+            evaluator.getStaticContext().setDefaultElementNamespace(
+                    defaultNamespace);
+            if (context != null) {
+                evaluator.getStaticContext().setNamespaceContext(context);
+            }
+            compiled = new ConcurrentHashMap<String, XPathExpression>();
+        }
+
+        /**
+         * Gets the compiled form of the given expression, compiling it on
+         * first use.
+         *
+         * @param expression An XPath expression.
+         *
+         * @return The compiled expression.
+         *
+         * @throws XPathExpressionException If the given expression was
+         * malformed.
+         */
+        XPathExpression get(String expression)
+        throws XPathExpressionException {
+            XPathExpression expr = compiled.get(expression);
+            if (expr == null) {
+                // The evaluator's static context is not safe to compile
+                // with from several threads at once.
+                synchronized (this) {
+                    expr = compiled.get(expression);
+                    if (expr == null) {
+                        expr = evaluator.compile(expression);
+                        compiled.put(expression, expr);
+                    }
+                }
+            }
+            return expr;
+        }
+    }
+
     /**
      * Constructor.
      *
      */
     public XMLExtractor() {
-        xpath = new XPathEvaluator();
-        xpath.getStaticContext().setDefaultElementNamespace(
-                defaultNamespaceUri);
-        if(namespaceContext != null) {
-            xpath.getStaticContext().setNamespaceContext(namespaceContext);
-        }
+    }
+
+    /**
+     * Creates the configuration shared by every parsed document.
+     *
+     * @return The configuration.
+     */
+    private static Configuration createConfiguration() {
+        Configuration config = new Configuration();
+        config.setLineNumbering(true);
+        config.setXIncludeAware(true);
+        return config;
     }
 
     /**
@@ -56,9 +132,6 @@ public class XMLExtractor {
      */
     public void parse(File src) throws XPathException {
       String uri = src.toURI().toString();
-      Configuration configuration = xpath.getConfiguration();
-      configuration.setLineNumbering(true);
-      configuration.setXIncludeAware(true);
       ParseOptions options = new ParseOptions();
       options.setErrorListener(new XMLErrorListener());
       xml = configuration.buildDocument(new SAXSource(new InputSource(uri)),
@@ -81,9 +154,10 @@ public class XMLExtractor {
      *
      * @param uri A URI.
      */
-    public static void setDefaultNamespace(String uri) {
-        //xpath.getStaticContext().setDefaultElementNamespace(uri);
+    public static synchronized void setDefaultNamespace(String uri) {
         defaultNamespaceUri = uri;
+        expressions = new ExpressionCache(defaultNamespaceUri,
+            namespaceContext);
     }
 
     /**
@@ -101,9 +175,11 @@ public class XMLExtractor {
      *
      * @param context The NamespaceContext object.
      */
-    public static void setNamespaceContext(PDSNamespaceContext context) {
-        //xpath.getStaticContext().setNamespaceContext(context);
+    public static synchronized void setNamespaceContext(
+        PDSNamespaceContext context) {
         namespaceContext = context;
+        expressions = new ExpressionCache(defaultNamespaceUri,
+            namespaceContext);
     }
 
     /**
@@ -118,7 +194,7 @@ public class XMLExtractor {
      */
     public String getValueFromDoc(String expression)
     throws XPathExpressionException, XPathException {
-        return getValueFromItem(expression, xpath.setSource(xml));
+        return getValueFromItem(expression, xml);
     }
 
     /**
@@ -134,7 +210,7 @@ public class XMLExtractor {
      */
     public String getValueFromItem(String expression, Object item)
     throws XPathExpressionException {
-        return xpath.evaluate(expression, item);
+        return expressions.get(expression).evaluate(item);
     }
 
     /**
@@ -164,7 +240,7 @@ public class XMLExtractor {
      */
     public TinyElementImpl getNodeFromItem(String expression, Object item)
     throws XPathExpressionException {
-        return (TinyElementImpl) xpath.evaluate(expression, item,
+        return (TinyElementImpl) expressions.get(expression).evaluate(item,
             XPathConstants.NODE);
     }
 
@@ -196,8 +272,8 @@ public class XMLExtractor {
     public List<String> getValuesFromItem(String expression, Object item)
     throws XPathExpressionException {
         List<String> vals = new ArrayList<String>();
-        List<TinyElementImpl> nList = (List<TinyElementImpl>) xpath.evaluate(
-            expression, item, XPathConstants.NODESET);
+        List<TinyElementImpl> nList = (List<TinyElementImpl>)
+            expressions.get(expression).evaluate(item, XPathConstants.NODESET);
         if (nList != null) {
             for (int i = 0, sz = nList.size(); i < sz; i++) {
                 TinyElementImpl aNode = nList.get(i);
@@ -214,7 +290,7 @@ public class XMLExtractor {
      * @throws XPathException
      */
     public DocumentInfo getDocNode() throws XPathException {
-        return xpath.setSource(xml).getDocumentRoot();
+        return xml.getDocumentRoot();
     }
 
     /**
@@ -244,8 +320,8 @@ public class XMLExtractor {
      */
     public List<TinyElementImpl> getNodesFromItem(String expression, Object item)
     throws XPathExpressionException {
-        return (List<TinyElementImpl>) xpath.evaluate(
-                expression, item, XPathConstants.NODESET);
+        return (List<TinyElementImpl>) expressions.get(expression).evaluate(
+                item, XPathConstants.NODESET);
     }
 
     /**
@@ -276,8 +352,8 @@ public class XMLExtractor {
     public List<String> getAttributeValuesFromItem(String expression, Object item)
     throws XPathExpressionException {
         List<String> vals = new ArrayList<String>();
-        List<TinyNodeImpl> nList = (List<TinyNodeImpl>) xpath.evaluate(
-            expression, item, XPathConstants.NODESET);
+        List<TinyNodeImpl> nList = (List<TinyNodeImpl>)
+            expressions.get(expression).evaluate(item, XPathConstants.NODESET);
         if (nList != null) {
             for (int i = 0, sz = nList.size(); i < sz; i++) {
                 TinyNodeImpl aNode = nList.get(i);
@@ -3,9 +3,18 @@ package gov.nasa.pds.search.core.util;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import gov.nasa.pds.search.core.constants.Constants;
 import gov.nasa.pds.search.core.exception.InvalidDatetimeException;
 import gov.nasa.pds.search.core.logging.ToolsLevel;
@@ -18,6 +27,12 @@ import gov.nasa.pds.search.core.logging.ToolsLogRecord;
  * The Solr DateField, which is necessary for performing time queries, is ISO 8601
  * standard-compliant format, while PDS4 uses a variable number of ASCII date/time formats.
  * 
+ * The common formats are classified by their length and the positions of their separators, and
+ * converted with java.time without trying each format in turn. Anything else, including values
+ * that are out of range or fall in a daylight saving gap of the default time zone, goes through
+ * the lenient SimpleDateFormat parsing so that the output stays the same. Recent conversions are
+ * remembered, as the same start and stop times tend to repeat across a collection.
+ * 
  * @author jpadams
  * 
  */
@@ -45,6 +60,29 @@ public class PDSDateConvert {
   /** Maximum number of milliseconds for ISO-8601 */
   private static final int MAX_NUM_MS = 3;
 
+  /** Solr Date Time Format, without the fraction of seconds. **/
+  private static final DateTimeFormatter SOLR_FORMAT =
+      DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+
+  /** First year of the Gregorian calendar in which every date is valid. **/
+  private static final int FIRST_GREGORIAN_YEAR = 1583;
+
+  /** Longest value that is tried on the fast path. **/
+  private static final int MAX_FAST_LENGTH = 40;
+
+  /** Number of conversions remembered, a power of 2. **/
+  private static final int MEMO_SIZE = 512;
+
+  /** Valid unknown values. **/
+  private static final List<String> UNKNOWN_VALUES =
+      Collections.unmodifiableList(Arrays.asList(Constants.VALID_UNK_VALUES));
+
+  /** Values that are only letters. **/
+  private static final Pattern LETTERS = Pattern.compile("[A-Z]*");
+
+  /** Recent conversions, indexed by the hash of their input. **/
+  private static final Conversion[] memo = new Conversion[MEMO_SIZE];
+
   /** Logger. **/
   private static Logger log = Logger.getLogger(PDSDateConvert.class.getName());
 
@@ -56,10 +94,177 @@ public class PDSDateConvert {
    * @throws ParseException
    */
   public static String convert(String name, String input) throws InvalidDatetimeException {
+    int slot = (input.hashCode() ^ (input.hashCode() >>> 16)) & (MEMO_SIZE - 1);
+    Conversion conversion = memo[slot];
+    if (conversion != null && conversion.input.equals(input)) {
+      return conversion.output;
+    }
+    String output = convertCommon(input);
+    if (output == null) {
+      return convertAny(name, input);
+    }
+    memo[slot] = new Conversion(input, output);
+    return output;
+  }
+
+  /**
+   * Converts a datetime in one of the common formats, without allocating a parser or throwing.
+   * 
+   * @param input The datetime.
+   * @return The Solr datetime, or null if the value is not in a common format or is out of range.
+   */
+  private static String convertCommon(String input) {
+    int start = 0;
+    int end = input.length();
+    if (end == 0 || end > MAX_FAST_LENGTH) {
+      return null;
+    }
+    boolean negative = input.charAt(0) == '-';
+    if (negative) {
+      start = 1;
+    }
+    char last = input.charAt(end - 1);
+    if (last == 'Z' || last == 'z') {
+      end--;
+    }
+
+    // Fraction of seconds
+    int dot = input.indexOf('.', start);
+    int fractionDigits = 0;
+    if (dot >= 0 && dot < end) {
+      if (dot == end - 1) {
+        return null;
+      }
+      for (int i = dot + 1; i < end; i++) {
+        if (!isDigit(input.charAt(i))) {
+          return null;
+        }
+      }
+      fractionDigits = Math.min(end - dot - 1, MAX_NUM_MS);
+      end = dot;
+    } else if (dot >= 0) {
+      return null;
+    }
+
+    if (end - start < 4) {
+      return null;
+    }
+    int year = digits(input, start, 4);
+    int month = 1;
+    int day = 1;
+    int dayOfYear = -1;
+    boolean ordinal = false;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int p = start;
+    switch (end - start) {
+      case 4: // yyyy
+        break;
+      case 7: // yyyy-MM
+        month = separated(input, p + 4, '-', 2);
+        break;
+      case 8: // yyyy-DDD
+        ordinal = true;
+        dayOfYear = separated(input, p + 4, '-', 3);
+        break;
+      case 10: // yyyy-MM-dd
+        month = separated(input, p + 4, '-', 2);
+        day = separated(input, p + 7, '-', 2);
+        break;
+      case 13: // yyyy-MM-dd'T'HH
+        month = separated(input, p + 4, '-', 2);
+        day = separated(input, p + 7, '-', 2);
+        hour = hour(input, p + 10);
+        break;
+      case 14: // yyyyMMddHHmmss
+        month = digits(input, p + 4, 2);
+        day = digits(input, p + 6, 2);
+        hour = digits(input, p + 8, 2);
+        minute = digits(input, p + 10, 2);
+        second = digits(input, p + 12, 2);
+        break;
+      case 16: // yyyy-MM-dd'T'HH:mm
+        month = separated(input, p + 4, '-', 2);
+        day = separated(input, p + 7, '-', 2);
+        hour = hour(input, p + 10);
+        minute = separated(input, p + 13, ':', 2);
+        break;
+      case 17: // yyyy-DDD'T'HH:mm:ss
+        ordinal = true;
+        dayOfYear = separated(input, p + 4, '-', 3);
+        hour = hour(input, p + 8);
+        minute = separated(input, p + 11, ':', 2);
+        second = separated(input, p + 14, ':', 2);
+        break;
+      case 19: // yyyy-MM-dd'T'HH:mm:ss
+        month = separated(input, p + 4, '-', 2);
+        day = separated(input, p + 7, '-', 2);
+        hour = hour(input, p + 10);
+        minute = separated(input, p + 13, ':', 2);
+        second = separated(input, p + 16, ':', 2);
+        break;
+      default:
+        return null;
+    }
+
+    // Leave anything the lenient parsing would roll over to the slow path
+    if (year < FIRST_GREGORIAN_YEAR || hour < 0 || hour > 23 || minute < 0 || minute > 59
+        || second < 0 || second > 59) {
+      return null;
+    }
+    boolean leap = Year.isLeap(year);
+    if (ordinal) {
+      if (dayOfYear < 1 || dayOfYear > (leap ? 366 : 365)) {
+        return null;
+      }
+    } else if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(leap)) {
+      return null;
+    }
+    LocalDateTime dateTime;
+    if (ordinal) {
+      dateTime = LocalDateTime.of(year, Month.JANUARY, 1, hour, minute, second)
+          .withDayOfYear(dayOfYear);
+    } else {
+      dateTime = LocalDateTime.of(year, month, day, hour, minute, second);
+    }
+
+    // SimpleDateFormat moves a time in a gap of the default time zone past the gap
+    ZoneOffsetTransition transition = ZoneId.systemDefault().getRules().getTransition(dateTime);
+    if (transition != null && transition.isGap()) {
+      return null;
+    }
+
+    StringBuilder output = new StringBuilder(30);
+    if (negative) {
+      output.append('-');
+    }
+    SOLR_FORMAT.formatTo(dateTime, output);
+    output.append('.');
+    if (fractionDigits == 0) {
+      output.append("000");
+    } else {
+      output.append(input, dot + 1, dot + 1 + fractionDigits);
+      for (int i = fractionDigits; i < MAX_NUM_MS; i++) {
+        output.append('0');
+      }
+    }
+    return output.append('Z').toString();
+  }
+
+  /**
+   * Converts a datetime in any of the supported formats.
+   * 
+   * @param name The name of the field.
+   * @param input The datetime.
+   * @return The Solr datetime.
+   * @throws InvalidDatetimeException If the datetime is not in a supported format.
+   */
+  private static String convertAny(String name, String input) throws InvalidDatetimeException {
     SimpleDateFormat newFrmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
     // newFrmt.setTimeZone(TimeZone.getTimeZone("GMT"));
     newFrmt.setLenient(false);
-    String datetime = input.toUpperCase().replaceAll("Z", ""); // .replace("PROCESSING__", "");
+    String datetime = input.toUpperCase().replace("Z", ""); // .replace("PROCESSING__", "");
 
 
     // String to hold negative sign if datetime starts with a "-" ,
@@ -72,9 +277,9 @@ public class PDSDateConvert {
 
     // Before doing anything, check if date/time value is
     // a valid unknown, in which case return default
-    if (Arrays.asList(Constants.VALID_UNK_VALUES).contains(datetime)) {
+    if (UNKNOWN_VALUES.contains(datetime)) {
       return getDefaultTime(name);
-    } else if (datetime.matches("[A-Z]*")) {
+    } else if (LETTERS.matcher(datetime).matches()) {
       log.log(new ToolsLogRecord(ToolsLevel.WARNING,
           "Potentially invalid datetime value: " + datetime));
       return datetime;
@@ -136,6 +341,53 @@ public class PDSDateConvert {
     throw new InvalidDatetimeException("Unknown date format for datetime: " + datetime);
   }
 
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Parse a number of decimal digits.
+   * 
+   * @return The value, or -1 if a character is not a digit.
+   */
+  private static int digits(String value, int offset, int count) {
+    int result = 0;
+    for (int i = offset; i < offset + count; i++) {
+      char c = value.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  /**
+   * Parse a number of decimal digits that follows a separator.
+   * 
+   * @return The value, or -1 if the separator or a digit is missing.
+   */
+  private static int separated(String value, int offset, char separator, int count) {
+    if (value.charAt(offset) != separator) {
+      return -1;
+    }
+    return digits(value, offset + 1, count);
+  }
+
+  /**
+   * Parse the hour that follows the 'T' of a datetime, which PDS labels may also write as a 't'
+   * or an '_'.
+   * 
+   * @return The hour, or -1 if the separator or a digit is missing.
+   */
+  private static int hour(String value, int offset) {
+    char c = value.charAt(offset);
+    if (c != 'T' && c != 't' && c != '_') {
+      return -1;
+    }
+    return digits(value, offset + 1, 2);
+  }
+
   /**
    * Fix too many values after decimal. When there are > 3 values after decimal for time value
    * SimpleDateFormat adds the value in the tenths place to seconds and moves the other values to
@@ -190,4 +442,17 @@ public class PDSDateConvert {
       return Constants.DEFAULT_STOPTIME;
     }
   }
+
+  /**
+   * A datetime and its conversion.
+   */
+  private static class Conversion {
+    private final String input;
+    private final String output;
+
+    Conversion(String input, String output) {
+      this.input = input;
+      this.output = output;
+    }
+  }
 }